@@ -0,0 +1,64 @@
+package game.astar;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures the throughput of batch path queries on a shared map, with one
+ * thread and with pools of up to as many threads as there are cores.
+ * <p>
+ * Usage: <code>BatchBenchmark [size] [queries]</code>
+ */
+public class BatchBenchmark
+{
+
+	public static void main(String[] args)
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		Random random = new Random(42);
+		int[][] grid = new int[size][size];
+		for (int y = 0; y < size; y++)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				grid[y][x] = random.nextInt(100) < 25 ? 1 : 0;
+			}
+		}
+		Map map = new Map(grid);
+
+		PathQuery[] batch = new PathQuery[queries];
+		for (int i = 0; i < queries; i++)
+		{
+			int sx = random.nextInt(size);
+			int sy = random.nextInt(size);
+			int gx = random.nextInt(size);
+			int gy = random.nextInt(size);
+			if (!map.isReachable(sx, sy, gx, gy))
+			{
+				i--;
+				continue;
+			}
+			batch[i] = new PathQuery(sx, sy, gx, gy);
+		}
+
+		System.out.println("Map " + size + "x" + size + ", " + queries + " queries per batch");
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			BatchPathfinder pathfinder = new BatchPathfinder(map, pool);
+			pathfinder.findPaths(batch);
+			long begin = System.nanoTime();
+			for (int round = 0; round < 3; round++)
+			{
+				pathfinder.findPaths(batch);
+			}
+			double seconds = (System.nanoTime() - begin) / 1e9;
+			System.out.printf("  %3d threads: %10.0f queries/s%n", threads, 3 * queries / seconds);
+			pool.shutdown();
+		}
+	}
+
+}
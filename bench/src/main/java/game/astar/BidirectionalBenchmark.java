@@ -0,0 +1,163 @@
+package game.astar;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how many nodes each search mode expands, and how long it takes, on
+ * maze-like maps: the demo's m0 maze with every node blown up into a square
+ * block, and a generated maze with corridors one node wide.
+ * <p>
+ * Usage: <code>BidirectionalBenchmark [scale] [mazeSize] [queries]</code>
+ */
+public class BidirectionalBenchmark
+{
+
+	static final int[][] M0 = { //
+			{ 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }, //
+			{ 1, 0, 1, 0, 1, 0, 1, 0, 0, 0, 0, 0, 1 }, //
+			{ 1, 0, 1, 0, 0, 0, 1, 0, 1, 1, 1, 0, 1 }, //
+			{ 1, 0, 0, 0, 1, 1, 1, 0, 0, 0, 0, 0, 1 }, //
+			{ 1, 0, 1, 0, 0, 0, 0, 0, 1, 1, 1, 0, 1 }, //
+			{ 1, 0, 1, 0, 1, 1, 1, 0, 1, 0, 0, 0, 1 }, //
+			{ 1, 0, 1, 0, 1, 0, 0, 0, 1, 1, 1, 0, 1 }, //
+			{ 1, 0, 1, 0, 1, 1, 1, 0, 1, 0, 1, 0, 1 }, //
+			{ 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 1 }, //
+			{ 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 } };
+
+	public static void main(String[] args)
+	{
+		int scale = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		int mazeSize = args.length > 1 ? Integer.parseInt(args[1]) : 501;
+		int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		Random random = new Random(42);
+		measure("m0 x" + scale, scale(M0, scale), queries, random);
+		measure("maze " + mazeSize + "x" + mazeSize, maze(mazeSize | 1, random), queries, random);
+	}
+
+	private static void measure(String name, int[][] grid, int queries, Random random)
+	{
+		Map map = new Map(grid);
+		int width = map.getWidth();
+		int height = map.getHeight();
+
+		// Pick reachable pairs at least half the map apart.
+		int[] points = new int[queries * 4];
+		for (int i = 0; i < queries; i++)
+		{
+			int sx = random.nextInt(width);
+			int sy = random.nextInt(height);
+			int gx = random.nextInt(width);
+			int gy = random.nextInt(height);
+			if (Math.abs(sx - gx) + Math.abs(sy - gy) < (width + height) / 4 || !map.isReachable(sx, sy, gx, gy))
+			{
+				i--;
+				continue;
+			}
+			points[i * 4] = sx;
+			points[i * 4 + 1] = sy;
+			points[i * 4 + 2] = gx;
+			points[i * 4 + 3] = gy;
+		}
+
+		System.out.println(name + ", " + queries + " queries");
+		SearchContext context = new SearchContext(map);
+		for (SearchMode mode : SearchMode.values())
+		{
+			// Warm up first, then measure.
+			run(map, context, points, mode);
+			long[] result = run(map, context, points, mode);
+			System.out.printf("  %-13s %10.1f expanded/query %10.1f path/query %8.3f ms/query%n", mode,
+					result[0] / (double) queries, result[1] / (double) queries, result[2] / 1e6 / queries);
+		}
+	}
+
+	/**
+	 * @return The total number of expanded nodes, path length and time in
+	 *         nanoseconds.
+	 */
+	private static long[] run(Map map, SearchContext context, int[] points, SearchMode mode)
+	{
+		long expanded = 0;
+		long length = 0;
+		long begin = System.nanoTime();
+		for (int i = 0; i < points.length; i += 4)
+		{
+			List<Node> path = map.findPath(context, points[i], points[i + 1], points[i + 2], points[i + 3], mode);
+			expanded += context.getExpandedNodes();
+			length += path.size();
+		}
+		return new long[] { expanded, length, System.nanoTime() - begin };
+	}
+
+	/**
+	 * @return The grid with every node turned into a square block of nodes.
+	 */
+	static int[][] scale(int[][] grid, int scale)
+	{
+		int[][] scaled = new int[grid.length * scale][grid[0].length * scale];
+		for (int y = 0; y < scaled.length; y++)
+		{
+			for (int x = 0; x < scaled[0].length; x++)
+			{
+				scaled[y][x] = grid[y / scale][x / scale];
+			}
+		}
+		return scaled;
+	}
+
+	/**
+	 * @return A perfect maze, carved by a randomized depth first search, with
+	 *         corridors and walls one node wide.
+	 */
+	static int[][] maze(int size, Random random)
+	{
+		int[][] grid = new int[size][size];
+		for (int[] row : grid)
+		{
+			Arrays.fill(row, 1);
+		}
+		int cells = size / 2;
+		int[] stack = new int[cells * cells];
+		int top = 0;
+		grid[1][1] = 0;
+		stack[top++] = 0;
+		int[] order = { 0, 1, 2, 3 };
+		while (top > 0)
+		{
+			int cell = stack[top - 1];
+			int cx = cell % cells;
+			int cy = cell / cells;
+			for (int i = 3; i > 0; i--)
+			{
+				int j = random.nextInt(i + 1);
+				int swap = order[i];
+				order[i] = order[j];
+				order[j] = swap;
+			}
+			boolean carved = false;
+			for (int direction : order)
+			{
+				int nx = cx + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+				int ny = cy + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+				if (nx < 0 || nx >= cells || ny < 0 || ny >= cells || grid[ny * 2 + 1][nx * 2 + 1] == 0)
+				{
+					continue;
+				}
+				grid[cy + ny + 1][cx + nx + 1] = 0;
+				grid[ny * 2 + 1][nx * 2 + 1] = 0;
+				stack[top++] = ny * cells + nx;
+				carved = true;
+				break;
+			}
+			if (!carved)
+			{
+				top--;
+			}
+		}
+		return grid;
+	}
+
+}
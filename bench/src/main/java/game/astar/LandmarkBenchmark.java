@@ -0,0 +1,107 @@
+package game.astar;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how long landmark tables take to build, and how many nodes plain A*
+ * expands with and without them, on the demo's m0 maze blown up into square
+ * blocks and on a generated maze. Half of the queries are short ones, between
+ * nodes close to each other that may well be on opposite sides of a wall.
+ * <p>
+ * Usage: <code>LandmarkBenchmark [scale] [mazeSize] [queries]</code>
+ */
+public class LandmarkBenchmark
+{
+
+	private static final int[] LANDMARK_COUNTS = { 4, 8, 16 };
+
+	public static void main(String[] args)
+	{
+		int scale = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		int mazeSize = args.length > 1 ? Integer.parseInt(args[1]) : 501;
+		int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		Random random = new Random(42);
+		measure("m0 x" + scale, BidirectionalBenchmark.scale(BidirectionalBenchmark.M0, scale), queries, random);
+		measure("maze " + mazeSize + "x" + mazeSize, BidirectionalBenchmark.maze(mazeSize | 1, random), queries, random);
+	}
+
+	private static void measure(String name, int[][] grid, int queries, Random random)
+	{
+		Map map = new Map(grid);
+		int width = map.getWidth();
+		int height = map.getHeight();
+
+		int[] points = new int[queries * 4];
+		for (int i = 0; i < queries; i++)
+		{
+			int sx = random.nextInt(width);
+			int sy = random.nextInt(height);
+			int gx;
+			int gy;
+			if (i % 2 == 0)
+			{
+				gx = Math.min(width - 1, Math.max(0, sx + random.nextInt(9) - 4));
+				gy = Math.min(height - 1, Math.max(0, sy + random.nextInt(9) - 4));
+			}
+			else
+			{
+				gx = random.nextInt(width);
+				gy = random.nextInt(height);
+			}
+			if ((sx == gx && sy == gy) || !map.isReachable(sx, sy, gx, gy))
+			{
+				i--;
+				continue;
+			}
+			points[i * 4] = sx;
+			points[i * 4 + 1] = sy;
+			points[i * 4 + 2] = gx;
+			points[i * 4 + 3] = gy;
+		}
+
+		System.out.println(name + ", " + queries + " queries");
+		SearchContext context = new SearchContext(map);
+		report("manhattan", map, context, points);
+		for (int count : LANDMARK_COUNTS)
+		{
+			LandmarkHeuristic landmarks = new LandmarkHeuristic(map, count, true);
+			System.out.printf("  %2d landmarks: selection %7.1f ms, tables %7.1f ms, %6d KiB%n", count,
+					landmarks.getSelectionTime() / 1e6, landmarks.getBuildTime() / 1e6,
+					landmarks.getTableBytes() / 1024);
+			map.setHeuristic(landmarks);
+			report(count + " landmarks", map, context, points);
+			map.setHeuristic(null);
+		}
+	}
+
+	private static void report(String name, Map map, SearchContext context, int[] points)
+	{
+		// Warm up first, then measure.
+		run(map, context, points);
+		long[] result = run(map, context, points);
+		int queries = points.length / 4;
+		System.out.printf("  %-13s %10.1f expanded/query %10.1f path/query %8.3f ms/query%n", name,
+				result[0] / (double) queries, result[1] / (double) queries, result[2] / 1e6 / queries);
+	}
+
+	/**
+	 * @return The total number of expanded nodes, path length and time in
+	 *         nanoseconds.
+	 */
+	private static long[] run(Map map, SearchContext context, int[] points)
+	{
+		long expanded = 0;
+		long length = 0;
+		long begin = System.nanoTime();
+		for (int i = 0; i < points.length; i += 4)
+		{
+			List<Node> path = map.findPath(context, points[i], points[i + 1], points[i + 2], points[i + 3]);
+			expanded += context.getExpandedNodes();
+			length += path.size();
+		}
+		return new long[] { expanded, length, System.nanoTime() - begin };
+	}
+
+}
@@ -0,0 +1,180 @@
+package game.astar;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates the maps benchmarks run on, always the same for the same kind,
+ * size and seed.
+ * <p>
+ * Kinds:
+ * <ul>
+ * <li><code>maze</code>: a perfect maze with corridors one node wide;</li>
+ * <li><code>m0</code>: the demo's m0 maze, every node blown up into a square
+ * block;</li>
+ * <li><code>rooms</code>: square rooms in a grid, joined by doors in their
+ * walls;</li>
+ * <li><code>caves</code>: cellular automaton caves;</li>
+ * <li><code>random-N</code>: obstacles scattered at random, N percent of the
+ * nodes.</li>
+ * </ul>
+ */
+public final class MapGenerator
+{
+
+	/**
+	 * The width and height of a room, walls included.
+	 */
+	private static final int ROOM_SIZE = 16;
+
+	private MapGenerator()
+	{
+	}
+
+	/**
+	 * @param kind
+	 *            The kind of map, as listed above.
+	 * @param size
+	 *            The width and height of the map. Mazes with an even size are
+	 *            one node smaller, m0 is rounded down to whole blocks.
+	 * @param seed
+	 *            The seed of the random numbers.
+	 * @return The map array, where each zero is a walkable node.
+	 */
+	public static int[][] generate(String kind, int size, long seed)
+	{
+		Random random = new Random(seed);
+		if (kind.equals("maze"))
+		{
+			return BidirectionalBenchmark.maze((size - 1) | 1, random);
+		}
+		if (kind.equals("m0"))
+		{
+			return BidirectionalBenchmark.scale(BidirectionalBenchmark.M0, Math.max(1, size / 13));
+		}
+		if (kind.equals("rooms"))
+		{
+			return rooms(size, random);
+		}
+		if (kind.equals("caves"))
+		{
+			return caves(size, random);
+		}
+		if (kind.startsWith("random-"))
+		{
+			return obstacles(size, Integer.parseInt(kind.substring("random-".length())), random);
+		}
+		throw new IllegalArgumentException("Unknown kind of map: " + kind);
+	}
+
+	/**
+	 * @return Rooms in a grid, each wall between two rooms having a door at a
+	 *         random place.
+	 */
+	private static int[][] rooms(int size, Random random)
+	{
+		int[][] grid = new int[size][size];
+		for (int y = 0; y < size; y++)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				if (x % ROOM_SIZE == 0 || y % ROOM_SIZE == 0)
+				{
+					grid[y][x] = 1;
+				}
+			}
+		}
+		for (int top = 0; top < size; top += ROOM_SIZE)
+		{
+			for (int left = 0; left < size; left += ROOM_SIZE)
+			{
+				// A door in the room's left wall and one in its top wall, two
+				// nodes wide.
+				int door = 1 + random.nextInt(ROOM_SIZE - 3);
+				if (left > 0)
+				{
+					for (int y = top + door; y < Math.min(size, top + door + 2); y++)
+					{
+						grid[y][left] = 0;
+					}
+				}
+				door = 1 + random.nextInt(ROOM_SIZE - 3);
+				if (top > 0)
+				{
+					for (int x = left + door; x < Math.min(size, left + door + 2); x++)
+					{
+						grid[top][x] = 0;
+					}
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * @return Caves grown from random noise: a node turns into a wall if most
+	 *         of its neighbors are walls, and into floor otherwise.
+	 */
+	private static int[][] caves(int size, Random random)
+	{
+		int[][] grid = new int[size][size];
+		for (int[] row : grid)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				row[x] = random.nextInt(100) < 45 ? 1 : 0;
+			}
+		}
+		int[][] next = new int[size][size];
+		for (int step = 0; step < 4; step++)
+		{
+			for (int y = 0; y < size; y++)
+			{
+				for (int x = 0; x < size; x++)
+				{
+					int walls = 0;
+					for (int dy = -1; dy <= 1; dy++)
+					{
+						for (int dx = -1; dx <= 1; dx++)
+						{
+							int nx = x + dx;
+							int ny = y + dy;
+							// Outside of the map counts as wall.
+							if (nx < 0 || nx >= size || ny < 0 || ny >= size || grid[ny][nx] != 0)
+							{
+								walls++;
+							}
+						}
+					}
+					next[y][x] = walls >= 5 ? 1 : 0;
+				}
+			}
+			int[][] swap = grid;
+			grid = next;
+			next = swap;
+		}
+		return grid;
+	}
+
+	/**
+	 * @return An open map with the given percentage of nodes turned into
+	 *         walls at random.
+	 */
+	private static int[][] obstacles(int size, int percent, Random random)
+	{
+		int[][] grid = new int[size][size];
+		for (int[] row : grid)
+		{
+			Arrays.fill(row, 0);
+			for (int x = 0; x < size; x++)
+			{
+				if (random.nextInt(100) < percent)
+				{
+					row[x] = 1;
+				}
+			}
+		}
+		return grid;
+	}
+
+}
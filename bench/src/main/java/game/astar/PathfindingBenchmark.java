@@ -0,0 +1,127 @@
+package game.astar;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures path queries on generated maps: queries per second, and the
+ * latency distribution of single queries. Every invocation answers the next
+ * one of a fixed, seeded set of queries between reachable positions at least
+ * a quarter of the map apart, so runs are comparable between versions.
+ * <p>
+ * Allocations per query are reported by the GC profiler as
+ * <code>gc.alloc.rate.norm</code>:
+ *
+ * <pre>
+ * java -jar bench/target/benchmarks.jar PathfindingBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PathfindingBenchmark
+{
+
+	/**
+	 * The seed of the maps and queries.
+	 */
+	private static final long SEED = 42;
+
+	/**
+	 * The number of different queries cycled through.
+	 */
+	private static final int QUERIES = 256;
+
+	@Param({ "maze", "m0", "rooms", "caves", "random-10", "random-25", "random-40" })
+	public String kind;
+
+	@Param({ "256", "1024", "4096" })
+	public int size;
+
+	@Param({ "ASTAR" })
+	public SearchMode mode;
+
+	private Map map;
+	private SearchContext context;
+	private Path path;
+
+	/**
+	 * The queries, as start x, start y, goal x and goal y.
+	 */
+	private int[] queries;
+
+	/**
+	 * The position of the next query in {@link #queries}.
+	 */
+	private int next;
+
+	@Setup
+	public void setUp()
+	{
+		map = new Map(MapGenerator.generate(kind, size, SEED));
+		context = new SearchContext(map);
+		path = new Path();
+		queries = new int[QUERIES * 4];
+
+		Random random = new Random(SEED);
+		int width = map.getWidth();
+		int height = map.getHeight();
+		int minDistance = (width + height) / 8;
+		for (int i = 0; i < QUERIES; i++)
+		{
+			int sx;
+			int sy;
+			int gx;
+			int gy;
+			do
+			{
+				sx = random.nextInt(width);
+				sy = random.nextInt(height);
+				gx = random.nextInt(width);
+				gy = random.nextInt(height);
+			}
+			while (Math.abs(sx - gx) + Math.abs(sy - gy) < minDistance || !map.isReachable(sx, sy, gx, gy));
+			queries[i * 4] = sx;
+			queries[i * 4 + 1] = sy;
+			queries[i * 4 + 2] = gx;
+			queries[i * 4 + 3] = gy;
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Path throughput()
+	{
+		return query();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Path latency()
+	{
+		return query();
+	}
+
+	private Path query()
+	{
+		int i = next;
+		next = (i + 4) % queries.length;
+		return map.findPath(context, queries[i], queries[i + 1], queries[i + 2], queries[i + 3], mode, path);
+	}
+
+}
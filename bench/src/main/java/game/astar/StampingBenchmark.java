@@ -0,0 +1,88 @@
+package game.astar;
+
+import java.util.Random;
+
+/**
+ * Compares the latency of short path queries, like the click-to-move queries
+ * of the demo, when a search context is reset by moving on to the next
+ * generation and when it is wiped completely before every query.
+ * <p>
+ * Usage: <code>StampingBenchmark [size] [radius] [queries]</code>
+ */
+public class StampingBenchmark
+{
+
+	public static void main(String[] args)
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int radius = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int queries = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+		Random random = new Random(42);
+		int[][] grid = new int[size][size];
+		for (int y = 0; y < size; y++)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				grid[y][x] = random.nextInt(100) < 20 ? 1 : 0;
+			}
+		}
+		Map map = new Map(grid);
+
+		// Only keep reachable goals, so a few walled off goals exploring the
+		// whole map do not drown out the cost of starting a search.
+		SearchContext context = new SearchContext(map);
+		int[] points = new int[queries * 4];
+		for (int i = 0; i < queries; i++)
+		{
+			int sx = random.nextInt(size);
+			int sy = random.nextInt(size);
+			int gx = Math.min(size - 1, Math.max(0, sx + random.nextInt(2 * radius + 1) - radius));
+			int gy = Math.min(size - 1, Math.max(0, sy + random.nextInt(2 * radius + 1) - radius));
+			map.getNode(sx, sy).setWalkable(true);
+			map.getNode(gx, gy).setWalkable(true);
+			if (map.findPath(context, sx, sy, gx, gy).isEmpty())
+			{
+				i--;
+				continue;
+			}
+			points[i * 4] = sx;
+			points[i * 4 + 1] = sy;
+			points[i * 4 + 2] = gx;
+			points[i * 4 + 3] = gy;
+		}
+
+		System.out.println("Map " + size + "x" + size + ", " + queries + " queries within " + radius + " nodes");
+		for (int round = 0; round < 5; round++)
+		{
+			long wiped = run(map, context, points, true);
+			long stamped = run(map, context, points, false);
+			System.out.printf("round %d: wiped %8.2f us/query, stamped %8.2f us/query%n", round,
+					wiped / 1000.0 / queries, stamped / 1000.0 / queries);
+		}
+	}
+
+	/**
+	 * @return The total time taken by all queries, in nanoseconds.
+	 */
+	private static long run(Map map, SearchContext context, int[] points, boolean wipe)
+	{
+		long steps = 0;
+		long begin = System.nanoTime();
+		for (int i = 0; i < points.length; i += 4)
+		{
+			if (wipe)
+			{
+				context.clear();
+			}
+			steps += map.findPath(context, points[i], points[i + 1], points[i + 2], points[i + 3]).size();
+		}
+		long time = System.nanoTime() - begin;
+		if (steps < 0)
+		{
+			System.out.println(steps);
+		}
+		return time;
+	}
+
+}
@@ -0,0 +1,132 @@
+package game.astar;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Answers many path queries against the same map at once, spreading them over
+ * the threads of a {@link ForkJoinPool}.
+ * <p>
+ * The map is only read while searching, and every worker thread reuses its own
+ * search context from {@link Map#findPath(int, int, int, int, SearchMode)}, so
+ * no locking is needed and throughput grows with the number of cores. The map
+ * must not be changed while a batch is running.
+ */
+public class BatchPathfinder
+{
+
+	/**
+	 * Batches are split until a task holds at most this many queries.
+	 */
+	private static final int QUERIES_PER_TASK = 16;
+
+	/**
+	 * The map searched by every query.
+	 */
+	private final Map map;
+
+	/**
+	 * The pool running the searches.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a batch pathfinder running on the common pool.
+	 *
+	 * @param map
+	 *            The map searched by every query.
+	 */
+	public BatchPathfinder(Map map)
+	{
+		this(map, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param map
+	 *            The map searched by every query.
+	 * @param pool
+	 *            The pool running the searches.
+	 */
+	public BatchPathfinder(Map map, ForkJoinPool pool)
+	{
+		this.map = map;
+		this.pool = pool;
+	}
+
+	/**
+	 * Searches for the paths of every query with plain A*.
+	 *
+	 * @param queries
+	 *            The queries to be answered.
+	 * @return The path of each query, in the same order as the queries. Each
+	 *         path is the same as {@link Map#findPath(int, int, int, int)}
+	 *         would return.
+	 */
+	public List<List<Node>> findPaths(PathQuery[] queries)
+	{
+		return findPaths(queries, SearchMode.ASTAR);
+	}
+
+	/**
+	 * Searches for the paths of every query.
+	 *
+	 * @param queries
+	 *            The queries to be answered.
+	 * @param mode
+	 *            How to search for the paths.
+	 * @return The path of each query, in the same order as the queries.
+	 */
+	public List<List<Node>> findPaths(PathQuery[] queries, SearchMode mode)
+	{
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		List<Node>[] paths = new List[queries.length];
+		pool.invoke(new BatchTask(queries, paths, mode, 0, queries.length));
+		return Arrays.asList(paths);
+	}
+
+	/**
+	 * Answers a range of queries, splitting it in halves while it is big.
+	 */
+	private final class BatchTask extends RecursiveAction
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private final PathQuery[] queries;
+		private final List<Node>[] paths;
+		private final SearchMode mode;
+		private final int from;
+		private final int to;
+
+		BatchTask(PathQuery[] queries, List<Node>[] paths, SearchMode mode, int from, int to)
+		{
+			this.queries = queries;
+			this.paths = paths;
+			this.mode = mode;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > QUERIES_PER_TASK)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new BatchTask(queries, paths, mode, from, middle),
+						new BatchTask(queries, paths, mode, middle, to));
+				return;
+			}
+			for (int i = from; i < to; i++)
+			{
+				PathQuery query = queries[i];
+				paths[i] = map.findPath(query.getStartX(), query.getStartY(), query.getGoalX(), query.getGoalY(),
+						mode);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,122 @@
+package game.astar;
+
+/**
+ * Bidirectional A*: one A* search grows from the start towards the goal, a
+ * second one from the goal towards the start, always expanding the side with
+ * the smaller open list.
+ * <p>
+ * Both sides use the same, balanced, heuristic: half the difference between
+ * the estimated costs to the goal and to the start, with opposite signs. With
+ * it the two searches agree on how far along any path a node is, which gives
+ * a simple and exact stopping rule. Whenever a node is reached by both searches,
+ * the cost of the path through it becomes a candidate for the best path, and
+ * the search stops as soon as the lowest F scores of both open lists add up to
+ * at least the best candidate: every path not found yet would have to be at
+ * least that expensive. The path returned is therefore always a shortest one.
+ * <p>
+ * To keep the halved heuristic exact, G scores in both contexts are stored
+ * doubled.
+ */
+final class BidirectionalSearch
+{
+
+	private BidirectionalSearch()
+	{
+	}
+
+	/**
+	 * Runs a bidirectional search. The forward parents are left in the given
+	 * context, the backward ones in its {@link SearchContext#reverse()}
+	 * context, where they point towards the goal.
+	 *
+	 * @param map
+	 *            The map to search.
+	 * @param context
+	 *            The scratch state for this search.
+	 * @param start
+	 *            The index of the start node.
+	 * @param goal
+	 *            The index of the goal node.
+	 * @return The index of the node where the two halves of the shortest path
+	 *         meet, or -1 if no path exists.
+	 */
+	static int search(Map map, SearchContext context, int start, int goal)
+	{
+		SearchContext forward = context;
+		SearchContext backward = context.reverse();
+
+		// The balanced heuristic is consistent too, so both sides can use
+		// bucket queues.
+		forward.reset(2 * map.getCostSpan());
+		backward.reset(2 * map.getCostSpan());
+		forward.open(start, 0, balance(map, start, start, goal), -1);
+		backward.open(goal, 0, balance(map, goal, goal, start), -1);
+
+		// The doubled cost of the best path found so far, and where its
+		// halves meet.
+		int best = Integer.MAX_VALUE;
+		int meet = -1;
+
+		while (!forward.isOpenListEmpty() && !backward.isOpenListEmpty())
+		{
+			if ((long) forward.getLowestF() + backward.getLowestF() >= best)
+			{
+				break;
+			}
+
+			boolean forwards = forward.getOpenListSize() <= backward.getOpenListSize();
+			SearchContext side = forwards ? forward : backward;
+			SearchContext other = forwards ? backward : forward;
+			int from = forwards ? start : goal;
+			int target = forwards ? goal : start;
+
+			int current = side.close();
+			if (other.getState(current) == SearchContext.CLOSED)
+			{
+				// The best path through this node is already a candidate.
+				continue;
+			}
+			int[] adjacentNodes = side.adjacent;
+			int count = map.getAdjacent(current, side, adjacentNodes);
+			for (int i = 0; i < count; i++)
+			{
+				int adjacent = adjacentNodes[i];
+				// Backwards, the step is from the adjacent node onto the current
+				// one.
+				int g = side.getG(current) + 2 * map.cost(forwards ? adjacent : current);
+				if (side.getState(adjacent) == SearchContext.UNVISITED)
+				{
+					side.open(adjacent, g, balance(map, adjacent, from, target), current);
+				}
+				else if (g < side.getG(adjacent))
+				{
+					side.decrease(adjacent, g, current);
+				}
+				else
+				{
+					continue;
+				}
+
+				// Reached by both searches: a candidate for the best path.
+				if (other.getState(adjacent) != SearchContext.UNVISITED && g + other.getG(adjacent) < best)
+				{
+					best = g + other.getG(adjacent);
+					meet = adjacent;
+				}
+			}
+		}
+
+		forward.addCounts(backward);
+		return meet;
+	}
+
+	/**
+	 * @return The doubled balanced heuristic of a node, for the side searching
+	 *         from one node towards another.
+	 */
+	private static int balance(Map map, int node, int from, int target)
+	{
+		return map.manhattan(node, target) - map.manhattan(node, from);
+	}
+
+}
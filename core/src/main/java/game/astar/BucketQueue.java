@@ -0,0 +1,198 @@
+package game.astar;
+
+import java.util.Arrays;
+
+/**
+ * A bucket queue of node indices, ordered by their F score, for searches with
+ * small integer costs and a consistent heuristic.
+ * <p>
+ * With a consistent heuristic the F score of the node being expanded never
+ * decreases, and every node discovered from it has an F score at most one
+ * step cost plus one heuristic step higher. So only a small window of F scores
+ * is ever in use at once, and a circular array with one list of nodes per F
+ * score in that window is enough. Adding a node and moving it to a cheaper
+ * bucket take constant time; taking the cheapest node scans forward over
+ * empty buckets, which is amortized over the search as the lowest F score only
+ * moves forward. Nodes with equal F scores come out last in, first out, which
+ * favors the nodes discovered deepest into the search.
+ */
+final class BucketQueue extends OpenList
+{
+
+	/**
+	 * The first node of each bucket, or -1 if the bucket is empty. The bucket
+	 * of a node is its F score modulo the number of buckets.
+	 */
+	private final int[] heads;
+
+	/**
+	 * The number of buckets minus one. The number of buckets is a power of
+	 * two.
+	 */
+	private final int mask;
+
+	/**
+	 * The next and previous node in the bucket of each node, by node index, or
+	 * -1 at the ends of the bucket. Only valid for nodes that are currently in
+	 * the queue.
+	 */
+	private final int[] next;
+	private final int[] previous;
+
+	/**
+	 * The bucket each node was put in, by node index.
+	 */
+	private final int[] bucket;
+
+	/**
+	 * The G scores the queue is ordered by, by node index.
+	 */
+	private final int[] g;
+
+	/**
+	 * The H scores the queue is ordered by, by node index.
+	 */
+	private final int[] h;
+
+	/**
+	 * A lower bound of the F scores of the nodes in the queue.
+	 */
+	private int lowestF;
+
+	/**
+	 * How many nodes are currently stored in the queue.
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty queue.
+	 *
+	 * @param capacity
+	 *            The number of nodes on the map. Every node can be in the queue
+	 *            at most once.
+	 * @param g
+	 *            The G scores, by node index.
+	 * @param h
+	 *            The H scores, by node index.
+	 * @param span
+	 *            The largest difference between the F scores of two nodes in
+	 *            the queue at the same time.
+	 */
+	BucketQueue(int capacity, int[] g, int[] h, int span)
+	{
+		this.heads = new int[Integer.highestOneBit(span) << 1];
+		this.mask = heads.length - 1;
+		this.next = new int[capacity];
+		this.previous = new int[capacity];
+		this.bucket = new int[capacity];
+		this.g = g;
+		this.h = h;
+		Arrays.fill(heads, -1);
+	}
+
+	/**
+	 * @return The largest difference between the F scores of two nodes in the
+	 *         queue this queue can hold.
+	 */
+	int getSpan()
+	{
+		return mask;
+	}
+
+	@Override
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	int size()
+	{
+		return size;
+	}
+
+	@Override
+	int peek()
+	{
+		while (heads[lowestF & mask] < 0)
+		{
+			lowestF++;
+		}
+		return heads[lowestF & mask];
+	}
+
+	@Override
+	void add(int node)
+	{
+		int f = g[node] + h[node];
+		if (size == 0 || f < lowestF)
+		{
+			lowestF = f;
+		}
+		link(node, f & mask);
+		size++;
+	}
+
+	@Override
+	int poll()
+	{
+		int node = peek();
+		unlink(node);
+		size--;
+		return node;
+	}
+
+	@Override
+	void decreaseKey(int node)
+	{
+		int f = g[node] + h[node];
+		if (f < lowestF)
+		{
+			lowestF = f;
+		}
+		unlink(node);
+		link(node, f & mask);
+	}
+
+	@Override
+	void clear()
+	{
+		if (size > 0)
+		{
+			Arrays.fill(heads, -1);
+			size = 0;
+		}
+	}
+
+	private void link(int node, int index)
+	{
+		int head = heads[index];
+		next[node] = head;
+		previous[node] = -1;
+		if (head >= 0)
+		{
+			previous[head] = node;
+		}
+		heads[index] = node;
+		bucket[node] = index;
+	}
+
+	private void unlink(int node)
+	{
+		int before = previous[node];
+		int after = next[node];
+		if (before >= 0)
+		{
+			next[before] = after;
+		}
+		else
+		{
+			heads[bucket[node]] = after;
+		}
+		if (after >= 0)
+		{
+			previous[after] = before;
+		}
+	}
+
+}
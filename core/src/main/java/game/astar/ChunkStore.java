@@ -0,0 +1,42 @@
+package game.astar;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link ChunkedMap} loads its chunks from and saves changed chunks
+ * to. A chunk is {@link ChunkedMap#CHUNK_SIZE} rows of
+ * {@link ChunkedMap#CHUNK_SIZE} nodes, each row stored as one word where bit
+ * x is set if the node at x is walkable.
+ */
+public interface ChunkStore
+{
+
+	/**
+	 * Reads a chunk.
+	 * 
+	 * @param chunkX
+	 *            The chunk's X coordinate, in chunks.
+	 * @param chunkY
+	 *            The chunk's Y coordinate, in chunks.
+	 * @return The chunk's rows, or null if the chunk was never stored, in which
+	 *         case every node of it is walkable.
+	 * @throws IOException
+	 *             If the chunk can not be read.
+	 */
+	long[] load(int chunkX, int chunkY) throws IOException;
+
+	/**
+	 * Writes a chunk, replacing what was stored for it before.
+	 * 
+	 * @param chunkX
+	 *            The chunk's X coordinate, in chunks.
+	 * @param chunkY
+	 *            The chunk's Y coordinate, in chunks.
+	 * @param rows
+	 *            The chunk's rows, or null if every node of it is walkable.
+	 * @throws IOException
+	 *             If the chunk can not be written.
+	 */
+	void save(int chunkX, int chunkY, long[] rows) throws IOException;
+
+}
@@ -0,0 +1,576 @@
+package game.astar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A map without bounds, made of square chunks that are loaded from a
+ * {@link ChunkStore} the first time one of their nodes is looked at, and
+ * evicted again, least recently used first, once the loaded chunks take more
+ * memory than a given budget. Changed chunks are saved back to the store when
+ * they are evicted or {@link #flush() flushed}.
+ * <p>
+ * Chunks where every node is walkable, or every node is a wall, are kept as a
+ * single flag instead of one bit per node, so the empty space that makes up
+ * most open worlds costs next to nothing to keep loaded. Every node costs
+ * {@link Node#MOVEMENT_COST}.
+ * <p>
+ * Searches run A* over hash tables keyed by position instead of arrays as big
+ * as the map, so they cross chunk boundaries without noticing and only load
+ * the chunks their frontier reaches. Since there are no bounds, a search for
+ * an unreachable goal would never end on its own, so every search is given a
+ * limit on the number of nodes it may expand.
+ * <p>
+ * Not thread safe: even reading nodes can load and evict chunks.
+ */
+public class ChunkedMap
+{
+
+	/**
+	 * The width and height of a chunk, in nodes. A chunk row fits one 64 bit
+	 * word.
+	 */
+	public static final int CHUNK_SIZE = 64;
+
+	/**
+	 * log2 of {@link #CHUNK_SIZE}: shifting a node coordinate right by it
+	 * gives the chunk coordinate, rounding down for negative coordinates too.
+	 */
+	private static final int CHUNK_SHIFT = 6;
+
+	/**
+	 * The estimated memory taken by every loaded chunk, for its object and its
+	 * entry in the chunk table.
+	 */
+	private static final long CHUNK_BYTES = 96;
+
+	/**
+	 * The memory taken by the rows of a chunk that is not uniform.
+	 */
+	private static final long ROW_BYTES = 8L * CHUNK_SIZE + 16;
+
+	/**
+	 * A key no chunk has, as its X coordinate would not fit an int.
+	 */
+	private static final long NO_CHUNK = Long.MIN_VALUE;
+
+	/**
+	 * Where chunks are loaded from and saved to.
+	 */
+	private final ChunkStore store;
+
+	/**
+	 * The most memory the loaded chunks may take, in bytes.
+	 */
+	private final long budget;
+
+	/**
+	 * The loaded chunks, by (chunkX << 32 | chunkY), least recently used
+	 * first.
+	 */
+	private final LinkedHashMap<Long, Chunk> chunks = new LinkedHashMap<Long, Chunk>(16, 0.75f, true);
+
+	/**
+	 * The estimated memory taken by the loaded chunks, in bytes.
+	 */
+	private long loadedBytes;
+
+	/**
+	 * The key and chunk of the last lookup. Searches look at the same chunk
+	 * many times in a row, so this saves most of the table lookups.
+	 */
+	private long lastKey = NO_CHUNK;
+	private Chunk lastChunk;
+
+	private long loads;
+	private long evictions;
+	private long saves;
+
+	/**
+	 * The entries of the current search: the position of each entry, as
+	 * (x << 32 | y), its G score, the entry it was reached from, and whether
+	 * it was expanded yet.
+	 */
+	private final HashMap<Long, Integer> entries = new HashMap<Long, Integer>();
+	private long[] positions = new long[256];
+	private int[] g = new int[256];
+	private int[] parents = new int[256];
+	private boolean[] closed = new boolean[256];
+	private int entryCount;
+
+	/**
+	 * The open list of the current search: a binary min-heap of entries by F
+	 * score, ties going to the highest G score, so searches across open space
+	 * head straight for the goal instead of widening over equally good nodes.
+	 * An entry whose G score drops is added again instead of being moved, and
+	 * the stale copy is skipped once it comes up.
+	 */
+	private long[] heapF = new long[256];
+	private int[] heapG = new int[256];
+	private int[] heapEntries = new int[256];
+	private int heapSize;
+
+	/**
+	 * How many nodes the last search expanded.
+	 */
+	private int expandedNodes;
+
+	/**
+	 * @param store
+	 *            Where chunks are loaded from and saved to.
+	 * @param budget
+	 *            The most memory the loaded chunks may take, in bytes. At least
+	 *            one chunk is always kept, whatever the budget.
+	 */
+	public ChunkedMap(ChunkStore store, long budget)
+	{
+		this.store = store;
+		this.budget = budget;
+	}
+
+	/**
+	 * @param x
+	 *            The node's X coordinate, anywhere.
+	 * @param y
+	 *            The node's Y coordinate, anywhere.
+	 * @return True if the node is not a wall and can be walked through.
+	 * @throws UncheckedIOException
+	 *             If the node's chunk had to be loaded and could not be.
+	 */
+	public boolean isWalkable(int x, int y)
+	{
+		Chunk chunk = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+		long[] rows = chunk.rows;
+		if (rows == null)
+		{
+			return chunk.walkable;
+		}
+		return (rows[y & (CHUNK_SIZE - 1)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Sets if the node is not a wall and can be walked through. The change is
+	 * saved to the store when the node's chunk is evicted or flushed.
+	 *
+	 * @param x
+	 *            The node's X coordinate, anywhere.
+	 * @param y
+	 *            The node's Y coordinate, anywhere.
+	 * @param walkable
+	 *            If the node should be walkable.
+	 * @throws UncheckedIOException
+	 *             If a chunk had to be loaded or saved and could not be.
+	 */
+	public void setWalkable(int x, int y, boolean walkable)
+	{
+		Chunk chunk = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+		if (chunk.rows == null)
+		{
+			if (chunk.walkable == walkable)
+			{
+				return;
+			}
+			// The chunk is not uniform anymore.
+			chunk.rows = new long[CHUNK_SIZE];
+			Arrays.fill(chunk.rows, chunk.walkable ? -1L : 0L);
+			loadedBytes += ROW_BYTES;
+		}
+		int row = y & (CHUNK_SIZE - 1);
+		if (walkable)
+		{
+			chunk.rows[row] |= 1L << x;
+		}
+		else
+		{
+			chunk.rows[row] &= ~(1L << x);
+		}
+		chunk.dirty = true;
+		evict();
+	}
+
+	/**
+	 * Saves every changed chunk to the store. The chunks stay loaded.
+	 *
+	 * @throws UncheckedIOException
+	 *             If a chunk could not be saved.
+	 */
+	public void flush()
+	{
+		for (java.util.Map.Entry<Long, Chunk> entry : chunks.entrySet())
+		{
+			save(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Tries to calculate a path from the start and end positions.
+	 *
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @param maxExpansions
+	 *            The most nodes the search may expand before giving up.
+	 * @return A new list containing all of the visited nodes, from the start
+	 *         (exclusive) to the goal, if a path was found within the limit,
+	 *         an empty list otherwise.
+	 * @throws UncheckedIOException
+	 *             If a chunk had to be loaded or saved and could not be.
+	 */
+	public List<Node> findPath(int startX, int startY, int goalX, int goalY, int maxExpansions)
+	{
+		expandedNodes = 0;
+		LinkedList<Node> path = new LinkedList<Node>();
+		if (startX == goalX && startY == goalY || !isWalkable(startX, startY) || !isWalkable(goalX, goalY))
+		{
+			return path;
+		}
+
+		entries.clear();
+		entryCount = 0;
+		heapSize = 0;
+		long goal = position(goalX, goalY);
+		open(position(startX, startY), 0, -1, goalX, goalY);
+
+		int found = -1;
+		while (heapSize > 0 && expandedNodes < maxExpansions)
+		{
+			int current = poll();
+			if (closed[current])
+			{
+				// A stale copy of an entry that was reached more cheaply.
+				continue;
+			}
+			closed[current] = true;
+			expandedNodes++;
+			if (positions[current] == goal)
+			{
+				found = current;
+				break;
+			}
+
+			int x = (int) (positions[current] >> 32);
+			int y = (int) positions[current];
+			int cost = g[current] + Node.MOVEMENT_COST;
+			for (int direction = 0; direction < 4; direction++)
+			{
+				int nx = x + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+				int ny = y + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+				if (!isWalkable(nx, ny))
+				{
+					continue;
+				}
+				long adjacent = position(nx, ny);
+				Integer known = entries.get(adjacent);
+				if (known == null)
+				{
+					open(adjacent, cost, current, goalX, goalY);
+				}
+				else if (!closed[known] && cost < g[known])
+				{
+					g[known] = cost;
+					parents[known] = current;
+					push(known, cost + heuristic(nx, ny, goalX, goalY), cost);
+				}
+			}
+		}
+
+		for (int entry = found; entry >= 0 && parents[entry] >= 0; entry = parents[entry])
+		{
+			path.addFirst(new Node((int) (positions[entry] >> 32), (int) positions[entry], true));
+		}
+		return path;
+	}
+
+	/**
+	 * @return How many nodes the last search expanded.
+	 */
+	public int getExpandedNodes()
+	{
+		return expandedNodes;
+	}
+
+	/**
+	 * @return How many chunks are loaded.
+	 */
+	public int getLoadedChunks()
+	{
+		return chunks.size();
+	}
+
+	/**
+	 * @return The estimated memory taken by the loaded chunks, in bytes.
+	 */
+	public long getLoadedBytes()
+	{
+		return loadedBytes;
+	}
+
+	/**
+	 * @return How many chunks were loaded from the store.
+	 */
+	public long getLoads()
+	{
+		return loads;
+	}
+
+	/**
+	 * @return How many chunks were evicted to stay within the budget.
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * @return How many changed chunks were saved to the store.
+	 */
+	public long getSaves()
+	{
+		return saves;
+	}
+
+	/**
+	 * @return The chunk at the given chunk coordinates, loaded if needed.
+	 */
+	private Chunk chunk(int chunkX, int chunkY)
+	{
+		long key = position(chunkX, chunkY);
+		if (key == lastKey)
+		{
+			return lastChunk;
+		}
+		Chunk chunk = chunks.get(key);
+		if (chunk == null)
+		{
+			chunk = load(chunkX, chunkY);
+			chunks.put(key, chunk);
+			loadedBytes += CHUNK_BYTES + (chunk.rows != null ? ROW_BYTES : 0);
+			loads++;
+			evict();
+		}
+		lastKey = key;
+		lastChunk = chunk;
+		return chunk;
+	}
+
+	private Chunk load(int chunkX, int chunkY)
+	{
+		long[] rows;
+		try
+		{
+			rows = store.load(chunkX, chunkY);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		Chunk chunk = new Chunk();
+		chunk.walkable = true;
+		if (rows != null)
+		{
+			long first = rows[0];
+			boolean uniform = first == 0 || first == -1L;
+			for (int i = 1; i < CHUNK_SIZE && uniform; i++)
+			{
+				uniform = rows[i] == first;
+			}
+			if (uniform)
+			{
+				chunk.walkable = first != 0;
+			}
+			else
+			{
+				chunk.rows = rows;
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * Evicts the least recently used chunks, saving them if they changed,
+	 * until the loaded chunks fit the budget again.
+	 */
+	private void evict()
+	{
+		Iterator<java.util.Map.Entry<Long, Chunk>> eldest = chunks.entrySet().iterator();
+		while (loadedBytes > budget && chunks.size() > 1)
+		{
+			java.util.Map.Entry<Long, Chunk> entry = eldest.next();
+			Chunk chunk = entry.getValue();
+			if (entry.getKey() == lastKey)
+			{
+				lastKey = NO_CHUNK;
+				lastChunk = null;
+			}
+			save(entry.getKey(), chunk);
+			eldest.remove();
+			loadedBytes -= CHUNK_BYTES + (chunk.rows != null ? ROW_BYTES : 0);
+			evictions++;
+		}
+	}
+
+	private void save(long key, Chunk chunk)
+	{
+		if (!chunk.dirty)
+		{
+			return;
+		}
+		long[] rows = chunk.rows;
+		boolean open = true;
+		for (int i = 0; i < CHUNK_SIZE && open; i++)
+		{
+			open = rows[i] == -1L;
+		}
+		try
+		{
+			store.save((int) (key >> 32), (int) key, open ? null : rows);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		chunk.dirty = false;
+		saves++;
+	}
+
+	/**
+	 * Adds a newly discovered node to the current search's entries and open
+	 * list.
+	 */
+	private void open(long position, int cost, int parent, int goalX, int goalY)
+	{
+		if (entryCount == positions.length)
+		{
+			int length = entryCount * 2;
+			positions = Arrays.copyOf(positions, length);
+			g = Arrays.copyOf(g, length);
+			parents = Arrays.copyOf(parents, length);
+			closed = Arrays.copyOf(closed, length);
+		}
+		int entry = entryCount++;
+		positions[entry] = position;
+		g[entry] = cost;
+		parents[entry] = parent;
+		closed[entry] = false;
+		entries.put(position, entry);
+		push(entry, cost + heuristic((int) (position >> 32), (int) position, goalX, goalY), cost);
+	}
+
+	private static long heuristic(int x, int y, int goalX, int goalY)
+	{
+		return (Math.abs((long) x - goalX) + Math.abs((long) y - goalY)) * Node.MOVEMENT_COST;
+	}
+
+	private void push(int entry, long f, int cost)
+	{
+		if (heapSize == heapF.length)
+		{
+			heapF = Arrays.copyOf(heapF, heapSize * 2);
+			heapG = Arrays.copyOf(heapG, heapSize * 2);
+			heapEntries = Arrays.copyOf(heapEntries, heapSize * 2);
+		}
+		int i = heapSize++;
+		while (i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+			if (!before(f, cost, heapF[parent], heapG[parent]))
+			{
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		heapF[i] = f;
+		heapG[i] = cost;
+		heapEntries[i] = entry;
+	}
+
+	private int poll()
+	{
+		int top = heapEntries[0];
+		heapSize--;
+		long f = heapF[heapSize];
+		int cost = heapG[heapSize];
+		int entry = heapEntries[heapSize];
+		int i = 0;
+		int half = heapSize >>> 1;
+		while (i < half)
+		{
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && before(heapF[child + 1], heapG[child + 1], heapF[child], heapG[child]))
+			{
+				child++;
+			}
+			if (!before(heapF[child], heapG[child], f, cost))
+			{
+				break;
+			}
+			move(child, i);
+			i = child;
+		}
+		heapF[i] = f;
+		heapG[i] = cost;
+		heapEntries[i] = entry;
+		return top;
+	}
+
+	/**
+	 * @return True if the first open list entry comes out before the second.
+	 */
+	private static boolean before(long f, int cost, long otherF, int otherCost)
+	{
+		return f < otherF || f == otherF && cost > otherCost;
+	}
+
+	private void move(int from, int to)
+	{
+		heapF[to] = heapF[from];
+		heapG[to] = heapG[from];
+		heapEntries[to] = heapEntries[from];
+	}
+
+	/**
+	 * @return A pair of coordinates packed into one long, as (x << 32 | y).
+	 */
+	private static long position(int x, int y)
+	{
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * A loaded chunk: either uniform, with every node walkable or every node a
+	 * wall, or one bit per node.
+	 */
+	private static final class Chunk
+	{
+
+		/**
+		 * The chunk's rows, bit x of a row set if the node at x is walkable,
+		 * or null if the chunk is uniform.
+		 */
+		long[] rows;
+
+		/**
+		 * If every node is walkable, for uniform chunks.
+		 */
+		boolean walkable;
+
+		/**
+		 * If the chunk changed since it was loaded or last saved.
+		 */
+		boolean dirty;
+
+	}
+
+}
@@ -0,0 +1,483 @@
+package game.astar;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Labels every walkable node of a map with the connected region it belongs to,
+ * so a query whose start and goal are in different regions can be rejected in
+ * constant time instead of exploring the whole start region.
+ * <p>
+ * Labels are kept up to date as nodes change. Labels of regions that got
+ * joined by a removed wall are merged with a union-find structure. When a new
+ * wall is placed, searches are run from its neighbors at the same time, one
+ * node each in turn; searches that meet belong to the same region, and a
+ * search that runs out of nodes before meeting the others has found a region
+ * that was split off, which gets a new label. The work done is proportional to
+ * the smaller side of the split, not to the map.
+ * <p>
+ * The labels take four bytes per node. The owner marks of the split searches
+ * take another four, but only once a wall has been placed.
+ * <p>
+ * Queries may run on any thread while the map changes. Updates hold the write
+ * lock of a {@link StampedLock}; queries only read, optimistically, and
+ * retry under the read lock if an update ran meanwhile, so they never see
+ * labels halfway through a change.
+ */
+final class ConnectedComponents
+{
+
+	/**
+	 * The map whose regions are labeled.
+	 */
+	private final Map map;
+
+	/**
+	 * The label of each node, by node index, or 0 for walls.
+	 */
+	private final int[] labels;
+
+	/**
+	 * Union-find parent of each label. Two nodes are in the same region if
+	 * their labels have the same root.
+	 */
+	private int[] parents;
+
+	/**
+	 * The number of labels handed out so far, plus one.
+	 */
+	private int nextLabel;
+
+	/**
+	 * Which split search reached each node, as (epoch << 2 | search). Only
+	 * entries of the current epoch count. Created by the first split check.
+	 */
+	private int[] owners;
+
+	/**
+	 * Incremented by each split check, so old owner entries are ignored.
+	 */
+	private int epoch;
+
+	/**
+	 * Held for writing by updates, and validated by queries.
+	 */
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Labels every region of the map.
+	 *
+	 * @param map
+	 *            The map to be labeled.
+	 */
+	ConnectedComponents(Map map)
+	{
+		this.map = map;
+		this.labels = new int[map.getWidth() * map.getHeight()];
+		relabel();
+	}
+
+	/**
+	 * @param a
+	 *            The index of a node.
+	 * @param b
+	 *            The index of another node.
+	 * @return True if both nodes are walkable and a path exists between them.
+	 */
+	boolean isConnected(int a, int b)
+	{
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+		{
+			int rootA = root(a);
+			int rootB = root(b);
+			if (lock.validate(stamp))
+			{
+				return rootA > 0 && rootA == rootB;
+			}
+		}
+		stamp = lock.readLock();
+		try
+		{
+			int rootA = root(a);
+			return rootA > 0 && rootA == root(b);
+		}
+		finally
+		{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @param node
+	 *            The index of a node.
+	 * @return A number identifying the region of the node, between 1 and the
+	 *         number of nodes plus one, or 0 for walls. Nodes in the same
+	 *         region get the same number until the map changes.
+	 */
+	int regionOf(int node)
+	{
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+		{
+			int root = root(node);
+			if (lock.validate(stamp))
+			{
+				return Math.max(root, 0);
+			}
+		}
+		stamp = lock.readLock();
+		try
+		{
+			return Math.max(root(node), 0);
+		}
+		finally
+		{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Updates the labels after a node's walkability changed.
+	 *
+	 * @param x
+	 *            The node's X coordinate.
+	 * @param y
+	 *            The node's Y coordinate.
+	 * @param walkable
+	 *            If the node is walkable now.
+	 */
+	void nodeChanged(int x, int y, boolean walkable)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			if (walkable)
+			{
+				join(x, y);
+			}
+			else
+			{
+				split(x, y);
+			}
+			// Labels are never reused, so start over once there are more
+			// labels than nodes.
+			if (nextLabel > labels.length + 1)
+			{
+				relabel();
+			}
+		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Labels every region of the map from scratch with a flood fill.
+	 */
+	private void relabel()
+	{
+		Arrays.fill(labels, 0);
+		parents = new int[16];
+		nextLabel = 1;
+		if (owners != null)
+		{
+			Arrays.fill(owners, 0);
+		}
+		epoch = 0;
+
+		// A breadth first fill only ever holds its frontier, so a ring buffer
+		// growing with it stays far smaller than the map.
+		int width = map.getWidth();
+		int[] queue = new int[256];
+		for (int node = 0; node < labels.length; node++)
+		{
+			if (labels[node] != 0 || !map.isWalkable(node % width, node / width))
+			{
+				continue;
+			}
+			int label = newLabel();
+			int head = 0;
+			int count = 0;
+			labels[node] = label;
+			queue[count++] = node;
+			while (count > 0)
+			{
+				int current = queue[head];
+				head = (head + 1) & (queue.length - 1);
+				count--;
+				int cx = current % width;
+				int cy = current / width;
+				for (int direction = 0; direction < 4; direction++)
+				{
+					int next = neighbor(cx, cy, direction);
+					if (next >= 0 && labels[next] == 0)
+					{
+						labels[next] = label;
+						if (count == queue.length)
+						{
+							queue = grow(queue, head);
+							head = 0;
+						}
+						queue[(head + count) & (queue.length - 1)] = next;
+						count++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A node became walkable: it joins the regions of its walkable neighbors,
+	 * if any, into one.
+	 */
+	private void join(int x, int y)
+	{
+		int label = 0;
+		for (int direction = 0; direction < 4; direction++)
+		{
+			int next = neighbor(x, y, direction);
+			if (next < 0)
+			{
+				continue;
+			}
+			int root = find(labels[next]);
+			if (label == 0)
+			{
+				label = root;
+			}
+			else if (root != label)
+			{
+				parents[root] = label;
+			}
+		}
+		labels[map.indexOf(x, y)] = label == 0 ? newLabel() : label;
+	}
+
+	/**
+	 * A node became a wall: its walkable neighbors may no longer be connected
+	 * to each other.
+	 */
+	private void split(int x, int y)
+	{
+		labels[map.indexOf(x, y)] = 0;
+
+		int[][] queues = new int[4][];
+		int[] heads = new int[4];
+		int[] tails = new int[4];
+		int[] groups = new int[4];
+		int searches = 0;
+		for (int direction = 0; direction < 4; direction++)
+		{
+			int next = neighbor(x, y, direction);
+			if (next >= 0)
+			{
+				queues[searches] = new int[16];
+				groups[searches] = searches;
+				searches++;
+			}
+		}
+		if (searches < 2)
+		{
+			// Removing a dead end or an isolated node never splits a region.
+			return;
+		}
+
+		if (owners == null)
+		{
+			owners = new int[labels.length];
+		}
+		epoch++;
+		if (epoch >= (1 << 29))
+		{
+			Arrays.fill(owners, 0);
+			epoch = 1;
+		}
+		int search = 0;
+		for (int direction = 0; direction < 4; direction++)
+		{
+			int next = neighbor(x, y, direction);
+			if (next >= 0)
+			{
+				owners[next] = (epoch << 2) | search;
+				queues[search][tails[search]++] = next;
+				search++;
+			}
+		}
+
+		int width = map.getWidth();
+		int separate = searches;
+		int[] roots = new int[searches];
+		while (separate > 1)
+		{
+			// Advance every search by one node.
+			for (int i = 0; i < searches && separate > 1; i++)
+			{
+				if (groups[i] < 0 || heads[i] == tails[i])
+				{
+					continue;
+				}
+				int current = queues[i][heads[i]++];
+				int cx = current % width;
+				int cy = current / width;
+				for (int direction = 0; direction < 4; direction++)
+				{
+					int next = neighbor(cx, cy, direction);
+					if (next < 0)
+					{
+						continue;
+					}
+					int owner = owners[next];
+					if ((owner >>> 2) == epoch)
+					{
+						// Met another search: both are in the same region.
+						int a = group(groups, i);
+						int b = group(groups, owner & 3);
+						if (a != b)
+						{
+							groups[b] = a;
+							separate--;
+						}
+						continue;
+					}
+					owners[next] = (epoch << 2) | i;
+					if (tails[i] == queues[i].length)
+					{
+						queues[i] = Arrays.copyOf(queues[i], tails[i] * 2);
+					}
+					queues[i][tails[i]++] = next;
+				}
+			}
+
+			// A group whose searches all ran out of nodes was split off.
+			for (int i = 0; i < searches; i++)
+			{
+				roots[i] = groups[i] < 0 ? -1 : group(groups, i);
+			}
+			for (int i = 0; i < searches && separate > 1; i++)
+			{
+				if (roots[i] != i)
+				{
+					continue;
+				}
+				boolean exhausted = true;
+				for (int j = 0; j < searches; j++)
+				{
+					if (roots[j] == i && heads[j] < tails[j])
+					{
+						exhausted = false;
+					}
+				}
+				if (exhausted)
+				{
+					int label = newLabel();
+					for (int j = 0; j < searches; j++)
+					{
+						if (roots[j] == i)
+						{
+							for (int k = 0; k < tails[j]; k++)
+							{
+								labels[queues[j][k]] = label;
+							}
+							groups[j] = -1;
+						}
+					}
+					separate--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return A full ring buffer of twice the size, with its entries moved to
+	 *         the front in order.
+	 */
+	private static int[] grow(int[] queue, int head)
+	{
+		int[] grown = new int[queue.length * 2];
+		System.arraycopy(queue, head, grown, 0, queue.length - head);
+		System.arraycopy(queue, 0, grown, queue.length - head, head);
+		return grown;
+	}
+
+	/**
+	 * @return The group a split search currently belongs to.
+	 */
+	private static int group(int[] groups, int search)
+	{
+		while (groups[search] != search)
+		{
+			search = groups[search];
+		}
+		return search;
+	}
+
+	/**
+	 * @return The index of the walkable neighbor of a node in the given
+	 *         direction (left, right, top, bottom), or -1 if there is none.
+	 */
+	private int neighbor(int x, int y, int direction)
+	{
+		int nx = x + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+		int ny = y + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+		return map.isPassable(nx, ny) ? map.indexOf(nx, ny) : -1;
+	}
+
+	/**
+	 * Finds the root of a node's label without writing anything, so it can
+	 * run while an update changes the labels. The result is then meaningless,
+	 * but the search still ends: links are only ever added from one root to
+	 * another, or shortened to a grandparent, so the parents never form a
+	 * cycle, and a label too new for the parents read is rejected.
+	 *
+	 * @return The root of the node's label, 0 for walls, or -1 if the labels
+	 *         were being changed.
+	 */
+	private int root(int node)
+	{
+		int[] parents = this.parents;
+		int label = labels[node];
+		if (label == 0)
+		{
+			return 0;
+		}
+		if (label >= parents.length)
+		{
+			return -1;
+		}
+		while (parents[label] != label)
+		{
+			label = parents[label];
+		}
+		return label;
+	}
+
+	/**
+	 * @return The root of a label, halving the path to it along the way. Only
+	 *         for updates.
+	 */
+	private int find(int label)
+	{
+		while (parents[label] != label)
+		{
+			parents[label] = parents[parents[label]];
+			label = parents[label];
+		}
+		return label;
+	}
+
+	/**
+	 * @return A label that was never used before.
+	 */
+	private int newLabel()
+	{
+		if (nextLabel == parents.length)
+		{
+			parents = Arrays.copyOf(parents, parents.length * 2);
+		}
+		parents[nextLabel] = nextLabel;
+		return nextLabel++;
+	}
+
+}
@@ -0,0 +1,92 @@
+package game.astar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stores each chunk in a file of its own in a directory, as its rows in
+ * little endian byte order. Chunks where every node is walkable have no file
+ * at all, so empty parts of a world take no space.
+ */
+public class DirectoryChunkStore implements ChunkStore
+{
+
+	/**
+	 * The directory holding the chunk files.
+	 */
+	private final File directory;
+
+	/**
+	 * @param directory
+	 *            The directory holding the chunk files. Created if it does not
+	 *            exist.
+	 * @throws IOException
+	 *             If the directory can not be created.
+	 */
+	public DirectoryChunkStore(File directory) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Can not create chunk directory " + directory);
+		}
+		this.directory = directory;
+	}
+
+	@Override
+	public long[] load(int chunkX, int chunkY) throws IOException
+	{
+		File file = file(chunkX, chunkY);
+		if (!file.exists())
+		{
+			return null;
+		}
+		byte[] bytes = new byte[ChunkedMap.CHUNK_SIZE * 8];
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try
+		{
+			input.readFully(bytes);
+		}
+		finally
+		{
+			input.close();
+		}
+		long[] rows = new long[ChunkedMap.CHUNK_SIZE];
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(rows);
+		return rows;
+	}
+
+	@Override
+	public void save(int chunkX, int chunkY, long[] rows) throws IOException
+	{
+		File file = file(chunkX, chunkY);
+		if (rows == null)
+		{
+			if (file.exists() && !file.delete())
+			{
+				throw new IOException("Can not delete chunk file " + file);
+			}
+			return;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(ChunkedMap.CHUNK_SIZE * 8).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.asLongBuffer().put(rows);
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try
+		{
+			output.setLength(0);
+			output.write(bytes.array());
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+
+	private File file(int chunkX, int chunkY)
+	{
+		return new File(directory, chunkX + "_" + chunkY + ".chunk");
+	}
+
+}
@@ -0,0 +1,387 @@
+package game.astar;
+
+import java.util.Arrays;
+
+/**
+ * The cost of the cheapest path from every node to the closest of one or more
+ * goals, and the first step of that path, so any number of agents heading for
+ * the same goals can each find their next step in constant time instead of
+ * searching.
+ * <p>
+ * The field is built by a single Dijkstra search growing backwards from all
+ * goals at once. It listens to the map and repairs itself as nodes change,
+ * recomputing only the nodes whose distance can actually change: when a node
+ * gets cheaper or walkable, the search spreads from it only as far as it
+ * finds shorter paths; when it gets more expensive or turns into a wall, only
+ * the nodes whose paths led through it are cleared and filled in again from
+ * their neighbors.
+ * <p>
+ * A field is safe to use from several threads. Repairs run on the thread that
+ * changes the map, holding the field's lock, and the getters take the same
+ * lock, so they never see a half repaired field. To read the next X and Y of a
+ * node as one step, hold the lock around both calls.
+ * <p>
+ * A field keeps 5 bytes per node: its distances and directions. Builds and
+ * repairs search with a context that all flow fields of the map share, one at
+ * a time, rather than with the context of the thread that changed the map, so
+ * a repair never disturbs a search running on that thread. The shared context
+ * takes about 37 bytes per node, once per map.
+ */
+public class FlowField implements MapListener
+{
+
+	/**
+	 * The distance of nodes from which no goal can be reached.
+	 */
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/**
+	 * Step direction codes: no step, left, right, up, down.
+	 */
+	private static final byte NONE = 0;
+	private static final byte LEFT = 1;
+	private static final byte RIGHT = 2;
+	private static final byte UP = 3;
+	private static final byte DOWN = 4;
+
+	/**
+	 * The map the field was built for.
+	 */
+	private final Map map;
+
+	/**
+	 * The indices of the goal nodes.
+	 */
+	private final int[] goals;
+
+	/**
+	 * The cost of the cheapest path from each node to a goal, by node index.
+	 */
+	private final int[] distance;
+
+	/**
+	 * The direction of the first step of that path, by node index.
+	 */
+	private final byte[] direction;
+
+	/**
+	 * The nodes being recomputed by the current repair.
+	 */
+	private int[] region = new int[16];
+
+	/**
+	 * How many nodes the last build or repair recomputed.
+	 */
+	private int updatedNodes;
+
+	/**
+	 * Builds the field for a single goal and starts listening to the map's
+	 * changes.
+	 * 
+	 * @param map
+	 *            The map to build the field for.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 */
+	public FlowField(Map map, int goalX, int goalY)
+	{
+		this(map, new int[] { goalX }, new int[] { goalY });
+	}
+
+	/**
+	 * Builds the field for a set of goals, where every node leads to the
+	 * closest one, and starts listening to the map's changes.
+	 * 
+	 * @param map
+	 *            The map to build the field for.
+	 * @param goalXs
+	 *            The X coordinates of the goal positions.
+	 * @param goalYs
+	 *            The Y coordinates of the goal positions, in the same order.
+	 */
+	public FlowField(Map map, int[] goalXs, int[] goalYs)
+	{
+		if (goalXs.length != goalYs.length)
+		{
+			throw new IllegalArgumentException("Every goal needs an X and a Y coordinate");
+		}
+		int size = map.getWidth() * map.getHeight();
+		this.map = map;
+		this.goals = new int[goalXs.length];
+		this.distance = new int[size];
+		this.direction = new byte[size];
+		for (int i = 0; i < goals.length; i++)
+		{
+			goals[i] = map.indexOf(goalXs[i], goalYs[i]);
+		}
+
+		Arrays.fill(distance, UNREACHABLE);
+		int count = 0;
+		for (int goal : goals)
+		{
+			count = add(goal, count);
+		}
+		// Every goal starts at zero, so a bucket queue can order the search.
+		recompute(count, map.getCostSpan());
+		map.addMapListener(this);
+	}
+
+	/**
+	 * Stops listening to the map's changes. The field should not be used
+	 * afterwards.
+	 */
+	public void dispose()
+	{
+		map.removeMapListener(this);
+	}
+
+	@Override
+	public synchronized void nodeChanged(Map map, int x, int y, boolean walkable)
+	{
+		int node = map.indexOf(x, y);
+		// Clear the node and every node whose path leads through it: their
+		// distances may have gone up. A node that got cheaper is just
+		// recomputed itself, and spreads its shorter paths from there.
+		int count = add(node, 0);
+		for (int i = 0; i < count; i++)
+		{
+			int current = region[i];
+			int cx = current % map.getWidth();
+			int cy = current / map.getWidth();
+			for (byte step = LEFT; step <= DOWN; step++)
+			{
+				int nx = cx + dx(step);
+				int ny = cy + dy(step);
+				// A neighbor stepping the opposite way steps onto this node.
+				if (map.isPassable(nx, ny) && direction[map.indexOf(nx, ny)] == opposite(step)
+						&& distance[map.indexOf(nx, ny)] != UNREACHABLE)
+				{
+					count = add(map.indexOf(nx, ny), count);
+				}
+			}
+		}
+		for (int i = 0; i < count; i++)
+		{
+			distance[region[i]] = UNREACHABLE;
+			direction[region[i]] = NONE;
+		}
+		// The region's nodes start from distances anywhere along the paths
+		// through it, too far apart for a bucket queue.
+		recompute(count, 0);
+	}
+
+	/**
+	 * @param x
+	 *            The node's X coordinate, within the map boundaries.
+	 * @param y
+	 *            The node's Y coordinate, within the map boundaries.
+	 * @return The cost of the cheapest path from the node to a goal, or -1 if
+	 *         no goal can be reached from it.
+	 */
+	public synchronized int getDistance(int x, int y)
+	{
+		int cost = distance[map.indexOf(x, y)];
+		return cost == UNREACHABLE ? -1 : cost;
+	}
+
+	/**
+	 * @param x
+	 *            The node's X coordinate, within the map boundaries.
+	 * @param y
+	 *            The node's Y coordinate, within the map boundaries.
+	 * @return The X coordinate of the next node on the way to the closest
+	 *         goal, or x itself on a goal or where no goal can be reached.
+	 */
+	public synchronized int getNextX(int x, int y)
+	{
+		return x + dx(direction[map.indexOf(x, y)]);
+	}
+
+	/**
+	 * @param x
+	 *            The node's X coordinate, within the map boundaries.
+	 * @param y
+	 *            The node's Y coordinate, within the map boundaries.
+	 * @return The Y coordinate of the next node on the way to the closest
+	 *         goal, or y itself on a goal or where no goal can be reached.
+	 */
+	public synchronized int getNextY(int x, int y)
+	{
+		return y + dy(direction[map.indexOf(x, y)]);
+	}
+
+	/**
+	 * @return How many nodes the last build or repair of the field
+	 *         recomputed.
+	 */
+	public synchronized int getUpdatedNodes()
+	{
+		return updatedNodes;
+	}
+
+	/**
+	 * @return The map the field was built for.
+	 */
+	Map getMap()
+	{
+		return map;
+	}
+
+	/**
+	 * Fills in the nodes of the region from their neighbors, then lets every
+	 * shorter path found spread as far as it gets, holding the map's shared
+	 * field context while using it.
+	 * 
+	 * @param count
+	 *            How many nodes of {@link #region} to recompute.
+	 * @param span
+	 *            The open list span, as for {@link SearchContext#reset(int)}.
+	 */
+	private void recompute(int count, int span)
+	{
+		SearchContext context = map.fieldContext();
+		synchronized (context)
+		{
+			recompute(context, count, span);
+		}
+	}
+
+	private void recompute(SearchContext context, int count, int span)
+	{
+		context.reset(span);
+		int width = map.getWidth();
+		for (int i = 0; i < count; i++)
+		{
+			int node = region[i];
+			int x = node % width;
+			int y = node / width;
+			if (!map.isWalkable(x, y))
+			{
+				continue;
+			}
+			if (isGoal(node))
+			{
+				context.open(node, 0, 0, -1);
+				continue;
+			}
+			// The cheapest way through a neighbor outside of the region.
+			int best = UNREACHABLE;
+			int bestNeighbor = -1;
+			for (byte step = LEFT; step <= DOWN; step++)
+			{
+				int nx = x + dx(step);
+				int ny = y + dy(step);
+				if (map.isPassable(nx, ny))
+				{
+					int neighbor = map.indexOf(nx, ny);
+					if (distance[neighbor] != UNREACHABLE && distance[neighbor] + map.cost(neighbor) < best)
+					{
+						best = distance[neighbor] + map.cost(neighbor);
+						bestNeighbor = neighbor;
+					}
+				}
+			}
+			if (bestNeighbor >= 0)
+			{
+				context.open(node, best, 0, bestNeighbor);
+			}
+		}
+
+		int updated = 0;
+		int[] adjacentNodes = context.adjacent;
+		while (!context.isOpenListEmpty())
+		{
+			int current = context.close();
+			int cost = context.getG(current);
+			distance[current] = cost;
+			direction[current] = step(current, context.getParent(current));
+			updated++;
+
+			// Moving from a neighbor onto this node costs this node's cost.
+			int through = cost + map.cost(current);
+			int adjacentCount = map.getAdjacent(current, context, adjacentNodes);
+			for (int i = 0; i < adjacentCount; i++)
+			{
+				int adjacent = adjacentNodes[i];
+				byte state = context.getState(adjacent);
+				if (state == SearchContext.UNVISITED && through < distance[adjacent])
+				{
+					context.open(adjacent, through, 0, current);
+				}
+				else if (state == SearchContext.OPEN && through < context.getG(adjacent))
+				{
+					context.decrease(adjacent, through, current);
+				}
+			}
+		}
+		updatedNodes = updated;
+	}
+
+	/**
+	 * Appends a node to the region, growing it if needed.
+	 * 
+	 * @return The new number of nodes in the region.
+	 */
+	private int add(int node, int count)
+	{
+		if (count == region.length)
+		{
+			region = Arrays.copyOf(region, count * 2);
+		}
+		region[count] = node;
+		return count + 1;
+	}
+
+	private boolean isGoal(int node)
+	{
+		for (int goal : goals)
+		{
+			if (goal == node)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The direction code of the step from a node onto an adjacent one,
+	 *         or {@link #NONE} if there is none.
+	 */
+	private byte step(int from, int to)
+	{
+		if (to < 0)
+		{
+			return NONE;
+		}
+		int difference = to - from;
+		int width = map.getWidth();
+		if (difference == -width)
+		{
+			return UP;
+		}
+		if (difference == width)
+		{
+			return DOWN;
+		}
+		return difference < 0 ? LEFT : RIGHT;
+	}
+
+	private static int dx(byte step)
+	{
+		return step == LEFT ? -1 : step == RIGHT ? 1 : 0;
+	}
+
+	private static int dy(byte step)
+	{
+		return step == UP ? -1 : step == DOWN ? 1 : 0;
+	}
+
+	private static byte opposite(byte step)
+	{
+		return step == LEFT ? RIGHT : step == RIGHT ? LEFT : step == UP ? DOWN : step == DOWN ? UP : NONE;
+	}
+
+}
@@ -0,0 +1,130 @@
+package game.astar;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the flow fields of the most recently used goals of a map, so units
+ * sent to the same rally point share one field instead of each searching.
+ * Fields in the cache keep repairing themselves as the map changes; the least
+ * recently used one is disposed of once there are more than the cache holds.
+ */
+public class FlowFieldCache
+{
+
+	/**
+	 * The map whose fields are cached.
+	 */
+	private final Map map;
+
+	/**
+	 * The maximum number of fields kept.
+	 */
+	private final int capacity;
+
+	/**
+	 * The cached fields, by goal node index, least recently used first.
+	 */
+	private final LinkedHashMap<Integer, FlowField> fields = new LinkedHashMap<Integer, FlowField>(16, 0.75f, true);
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates an empty cache.
+	 * 
+	 * @param map
+	 *            The map whose fields are cached.
+	 * @param capacity
+	 *            The maximum number of fields kept. Each one takes 5 bytes per
+	 *            node, plus one search context of about 37 bytes per node that
+	 *            all fields of the map share.
+	 */
+	public FlowFieldCache(Map map, int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		this.map = map;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the cached field of a goal, or builds it and caches it.
+	 * 
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return The field leading to the goal.
+	 */
+	public synchronized FlowField get(int goalX, int goalY)
+	{
+		Integer key = map.indexOf(goalX, goalY);
+		FlowField field = fields.get(key);
+		if (field != null)
+		{
+			hits++;
+			return field;
+		}
+		misses++;
+		field = new FlowField(map, goalX, goalY);
+		fields.put(key, field);
+
+		Iterator<FlowField> eldest = fields.values().iterator();
+		while (fields.size() > capacity)
+		{
+			eldest.next().dispose();
+			eldest.remove();
+			evictions++;
+		}
+		return field;
+	}
+
+	/**
+	 * Disposes of every cached field. The counters are kept.
+	 */
+	public synchronized void clear()
+	{
+		for (FlowField field : fields.values())
+		{
+			field.dispose();
+		}
+		fields.clear();
+	}
+
+	/**
+	 * @return How many fields are currently cached.
+	 */
+	public synchronized int size()
+	{
+		return fields.size();
+	}
+
+	/**
+	 * @return How many requests were answered from the cache.
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return How many fields had to be built.
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return How many fields were dropped to make room for newer ones.
+	 */
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+}
@@ -0,0 +1,659 @@
+package game.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A hierarchical (HPA*) layer on top of a {@link Map}, for long queries across
+ * big maps.
+ * <p>
+ * The map is split into square clusters. Wherever walkable nodes on both sides
+ * of a cluster border touch, one or two transitions are placed, and their nodes
+ * become entrances of the two clusters. The cost of moving between every pair
+ * of entrances of a cluster, without leaving it, is precomputed. A query first
+ * searches this small abstract graph, then each segment of the abstract path
+ * can be refined into nodes on its own, with a search that never leaves one
+ * cluster. Paths are close to, but not always exactly, the shortest. Terrain
+ * costs are ignored: the layer only counts steps.
+ * <p>
+ * The layer listens to the map. When a node becomes walkable or a wall, only
+ * the cluster holding it is rebuilt, plus the cluster across the border if the
+ * node is on one, since the entrances on that border may have changed. Cost
+ * changes leave the layer alone.
+ */
+public class HierarchicalMap implements MapListener
+{
+
+	/**
+	 * Runs of touching walkable nodes shorter than this get a single
+	 * transition in their middle; longer runs get one at each end.
+	 */
+	private static final int SINGLE_TRANSITION_LIMIT = 6;
+
+	/**
+	 * The map this layer was built for.
+	 */
+	private final Map map;
+
+	/**
+	 * The width and height of a cluster, in nodes.
+	 */
+	private final int clusterSize;
+
+	/**
+	 * The number of clusters in each row.
+	 */
+	private final int clustersX;
+
+	/**
+	 * The number of clusters in each column.
+	 */
+	private final int clustersY;
+
+	/**
+	 * The clusters, row by row. A rebuilt cluster replaces the old one.
+	 */
+	private final Cluster[] clusters;
+
+	/**
+	 * The map's count of walkability changes the clusters are up to date
+	 * with.
+	 */
+	private int wallModifications;
+
+	/**
+	 * Builds the abstract graph of a map and starts listening to its changes.
+	 *
+	 * @param map
+	 *            The map to build the layer for.
+	 * @param clusterSize
+	 *            The width and height of a cluster, in nodes.
+	 */
+	public HierarchicalMap(Map map, int clusterSize)
+	{
+		if (clusterSize < 2)
+		{
+			throw new IllegalArgumentException("Cluster size must be at least 2");
+		}
+		this.map = map;
+		this.clusterSize = clusterSize;
+		this.clustersX = (map.getWidth() + clusterSize - 1) / clusterSize;
+		this.clustersY = (map.getHeight() + clusterSize - 1) / clusterSize;
+		this.clusters = new Cluster[clustersX * clustersY];
+		this.wallModifications = map.getWallModifications();
+
+		for (int cy = 0; cy < clustersY; cy++)
+		{
+			for (int cx = 0; cx < clustersX; cx++)
+			{
+				rebuild(cx, cy);
+			}
+		}
+		map.addMapListener(this);
+	}
+
+	/**
+	 * Stops listening to the map's changes. The layer should not be used
+	 * afterwards.
+	 */
+	public void dispose()
+	{
+		map.removeMapListener(this);
+	}
+
+	/**
+	 * @return The width and height of a cluster, in nodes.
+	 */
+	public int getClusterSize()
+	{
+		return clusterSize;
+	}
+
+	@Override
+	public void nodeChanged(Map map, int x, int y, boolean walkable)
+	{
+		// Only a cost changed: the layer counts steps, so nothing to do.
+		int walls = map.getWallModifications();
+		if (walls == wallModifications)
+		{
+			return;
+		}
+		wallModifications = walls;
+
+		int cx = x / clusterSize;
+		int cy = y / clusterSize;
+		rebuild(cx, cy);
+
+		// Entrances on a border belong to the clusters on both sides of it.
+		if (x % clusterSize == 0)
+		{
+			rebuild(cx - 1, cy);
+		}
+		if (x % clusterSize == clusterSize - 1)
+		{
+			rebuild(cx + 1, cy);
+		}
+		if (y % clusterSize == 0)
+		{
+			rebuild(cx, cy - 1);
+		}
+		if (y % clusterSize == clusterSize - 1)
+		{
+			rebuild(cx, cy + 1);
+		}
+	}
+
+	/**
+	 * Searches the abstract graph for a path between two positions.
+	 *
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return The waypoints of the path, from the start to the goal, both
+	 *         inclusive. Two consecutive waypoints are either adjacent or in
+	 *         the same cluster, and can be passed to
+	 *         {@link #refine(Node, Node)}. An empty list if there is no path or
+	 *         the start is the goal.
+	 */
+	public List<Node> findAbstractPath(int startX, int startY, int goalX, int goalY)
+	{
+		List<Node> waypoints = new ArrayList<Node>();
+		if ((startX == goalX && startY == goalY) || !map.isReachable(startX, startY, goalX, goalY))
+		{
+			return waypoints;
+		}
+
+		int start = map.indexOf(startX, startY);
+		int goal = map.indexOf(goalX, goalY);
+		Cluster startCluster = clusterAt(startX, startY);
+		Cluster goalCluster = clusterAt(goalX, goalY);
+		int[] fromStart = search(startCluster, start, -1, null);
+		int[] toGoal = search(goalCluster, goal, -1, null);
+
+		AbstractSearch search = new AbstractSearch(start, goal);
+		while (!search.open.isEmpty())
+		{
+			int current = search.poll();
+			if (current < 0)
+			{
+				continue;
+			}
+			if (current == goal)
+			{
+				int width = map.getWidth();
+				for (Integer node = goal; node != null; node = search.parent.get(node))
+				{
+					waypoints.add(0, map.getNode(node % width, node / width));
+				}
+				return waypoints;
+			}
+			int g = search.g.get(current);
+
+			if (current == start)
+			{
+				for (int entrance : startCluster.entrances)
+				{
+					int distance = fromStart[startCluster.localIndex(entrance, map)];
+					if (distance >= 0)
+					{
+						search.relax(entrance, g + distance, current);
+					}
+				}
+				if (startCluster == goalCluster && fromStart[startCluster.localIndex(goal, map)] >= 0)
+				{
+					search.relax(goal, g + fromStart[startCluster.localIndex(goal, map)], current);
+				}
+			}
+
+			Cluster cluster = clusterAt(current % map.getWidth(), current / map.getWidth());
+			int i = cluster.indexOf(current);
+			if (i >= 0)
+			{
+				int count = cluster.entrances.length;
+				for (int j = 0; j < count; j++)
+				{
+					int distance = cluster.distances[i * count + j];
+					if (j != i && distance >= 0)
+					{
+						search.relax(cluster.entrances[j], g + distance, current);
+					}
+				}
+				for (int partner : cluster.partners[i])
+				{
+					search.relax(partner, g + Node.MOVEMENT_COST, current);
+				}
+				if (cluster == goalCluster && toGoal[cluster.localIndex(current, map)] >= 0)
+				{
+					search.relax(goal, g + toGoal[cluster.localIndex(current, map)], current);
+				}
+			}
+		}
+		return waypoints;
+	}
+
+	/**
+	 * Refines one segment of an abstract path into nodes, searching only the
+	 * cluster holding both waypoints.
+	 *
+	 * @param from
+	 *            The waypoint the segment starts at.
+	 * @param to
+	 *            The waypoint the segment ends at. Must be adjacent to, or in
+	 *            the same cluster as, the first waypoint.
+	 * @return A list containing all of the nodes from the first waypoint
+	 *         (exclusive) to the second, or an empty list if the map changed
+	 *         and they are no longer connected within the cluster.
+	 */
+	public List<Node> refine(Node from, Node to)
+	{
+		LinkedList<Node> path = new LinkedList<Node>();
+		if (Math.abs(from.getX() - to.getX()) + Math.abs(from.getY() - to.getY()) == 1)
+		{
+			path.add(map.getNode(to.getX(), to.getY()));
+			return path;
+		}
+
+		Cluster cluster = clusterAt(from.getX(), from.getY());
+		if (cluster != clusterAt(to.getX(), to.getY()))
+		{
+			throw new IllegalArgumentException("Waypoints must be adjacent or in the same cluster");
+		}
+
+		int start = map.indexOf(from.getX(), from.getY());
+		int goal = map.indexOf(to.getX(), to.getY());
+		int[] parents = new int[cluster.width * cluster.height];
+		int[] distances = search(cluster, start, goal, parents);
+		if (distances[cluster.localIndex(goal, map)] < 0)
+		{
+			return path;
+		}
+
+		int width = map.getWidth();
+		for (int node = goal; node != start; node = parents[cluster.localIndex(node, map)])
+		{
+			path.addFirst(map.getNode(node % width, node / width));
+		}
+		return path;
+	}
+
+	/**
+	 * Searches the abstract graph and refines every segment of the result.
+	 *
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return A list containing all of the visited nodes if there is a
+	 *         solution, an empty list otherwise.
+	 */
+	public List<Node> findPath(int startX, int startY, int goalX, int goalY)
+	{
+		List<Node> waypoints = findAbstractPath(startX, startY, goalX, goalY);
+		List<Node> path = new LinkedList<Node>();
+		for (int i = 1; i < waypoints.size(); i++)
+		{
+			List<Node> segment = refine(waypoints.get(i - 1), waypoints.get(i));
+			if (segment.isEmpty())
+			{
+				return new LinkedList<Node>();
+			}
+			path.addAll(segment);
+		}
+		return path;
+	}
+
+	/**
+	 * @return The cluster holding the node at the given coordinates.
+	 */
+	private Cluster clusterAt(int x, int y)
+	{
+		return clusters[(y / clusterSize) * clustersX + x / clusterSize];
+	}
+
+	/**
+	 * @return The Manhattan distance between two nodes, in the uniform costs
+	 *         of the abstract graph, which ignores terrain costs.
+	 */
+	private int distance(int a, int b)
+	{
+		int width = map.getWidth();
+		return (Math.abs(a % width - b % width) + Math.abs(a / width - b / width)) * Node.MOVEMENT_COST;
+	}
+
+	/**
+	 * Finds the entrances of a cluster and the costs between them, replacing
+	 * the cluster's previous abstraction. Does nothing outside of the map.
+	 */
+	private void rebuild(int cx, int cy)
+	{
+		if (cx < 0 || cx >= clustersX || cy < 0 || cy >= clustersY)
+		{
+			return;
+		}
+
+		int x = cx * clusterSize;
+		int y = cy * clusterSize;
+		int width = Math.min(clusterSize, map.getWidth() - x);
+		int height = Math.min(clusterSize, map.getHeight() - y);
+
+		// Entrance node -> nodes across the border it connects to.
+		java.util.Map<Integer, List<Integer>> transitions = new LinkedHashMap<Integer, List<Integer>>();
+		if (x > 0)
+		{
+			findTransitions(x, y, -1, 0, 0, 1, height, transitions);
+		}
+		if (x + width < map.getWidth())
+		{
+			findTransitions(x + width - 1, y, 1, 0, 0, 1, height, transitions);
+		}
+		if (y > 0)
+		{
+			findTransitions(x, y, 0, -1, 1, 0, width, transitions);
+		}
+		if (y + height < map.getHeight())
+		{
+			findTransitions(x, y + height - 1, 0, 1, 1, 0, width, transitions);
+		}
+
+		Cluster cluster = new Cluster(x, y, width, height, transitions);
+		int count = cluster.entrances.length;
+		for (int i = 0; i < count; i++)
+		{
+			int[] distances = search(cluster, cluster.entrances[i], -1, null);
+			for (int j = 0; j < count; j++)
+			{
+				cluster.distances[i * count + j] = distances[cluster.localIndex(cluster.entrances[j], map)];
+			}
+		}
+		clusters[cy * clustersX + cx] = cluster;
+	}
+
+	/**
+	 * Walks along one border of a cluster and places transitions wherever
+	 * walkable nodes on both sides touch.
+	 *
+	 * @param x
+	 *            The X coordinate of the first node inside the cluster.
+	 * @param y
+	 *            The Y coordinate of the first node inside the cluster.
+	 * @param outX
+	 *            The X offset from a node inside to the node across the border.
+	 * @param outY
+	 *            The Y offset from a node inside to the node across the border.
+	 * @param stepX
+	 *            The X offset between consecutive nodes along the border.
+	 * @param stepY
+	 *            The Y offset between consecutive nodes along the border.
+	 * @param length
+	 *            The number of nodes along the border.
+	 * @param transitions
+	 *            Receives the entrances and the nodes across the border they
+	 *            connect to.
+	 */
+	private void findTransitions(int x, int y, int outX, int outY, int stepX, int stepY, int length,
+			java.util.Map<Integer, List<Integer>> transitions)
+	{
+		int runStart = -1;
+		for (int i = 0; i <= length; i++)
+		{
+			int ix = x + i * stepX;
+			int iy = y + i * stepY;
+			boolean open = i < length && map.isWalkable(ix, iy) && map.isWalkable(ix + outX, iy + outY);
+			if (open && runStart < 0)
+			{
+				runStart = i;
+			}
+			else if (!open && runStart >= 0)
+			{
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 < SINGLE_TRANSITION_LIMIT)
+				{
+					addTransition(x, y, outX, outY, stepX, stepY, (runStart + runEnd) / 2, transitions);
+				}
+				else
+				{
+					addTransition(x, y, outX, outY, stepX, stepY, runStart, transitions);
+					addTransition(x, y, outX, outY, stepX, stepY, runEnd, transitions);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	private void addTransition(int x, int y, int outX, int outY, int stepX, int stepY, int i,
+			java.util.Map<Integer, List<Integer>> transitions)
+	{
+		int ix = x + i * stepX;
+		int iy = y + i * stepY;
+		int inside = map.indexOf(ix, iy);
+		List<Integer> partners = transitions.get(inside);
+		if (partners == null)
+		{
+			partners = new ArrayList<Integer>(1);
+			transitions.put(inside, partners);
+		}
+		partners.add(map.indexOf(ix + outX, iy + outY));
+	}
+
+	/**
+	 * Runs a breadth first search that never leaves the given cluster.
+	 *
+	 * @param cluster
+	 *            The cluster to search in.
+	 * @param from
+	 *            The index of the node to search from.
+	 * @param to
+	 *            The index of a node to stop at, or -1 to reach every node.
+	 * @param parents
+	 *            Optional. Receives the index of the node prior to each node,
+	 *            by local index.
+	 * @return The cost of getting from the first node to each node of the
+	 *         cluster, by local index, or -1 for nodes that were not reached.
+	 */
+	private int[] search(Cluster cluster, int from, int to, int[] parents)
+	{
+		int width = map.getWidth();
+		int size = cluster.width * cluster.height;
+		int[] distances = new int[size];
+		Arrays.fill(distances, -1);
+		int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+
+		distances[cluster.localIndex(from, map)] = 0;
+		queue[tail++] = from;
+		while (head < tail)
+		{
+			int node = queue[head++];
+			if (node == to)
+			{
+				break;
+			}
+			int distance = distances[cluster.localIndex(node, map)] + Node.MOVEMENT_COST;
+			int x = node % width;
+			int y = node / width;
+			for (int direction = 0; direction < 4; direction++)
+			{
+				int nx = x + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+				int ny = y + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+				if (!cluster.contains(nx, ny) || !map.isWalkable(nx, ny))
+				{
+					continue;
+				}
+				int next = map.indexOf(nx, ny);
+				int local = cluster.localIndex(next, map);
+				if (distances[local] < 0)
+				{
+					distances[local] = distance;
+					if (parents != null)
+					{
+						parents[local] = node;
+					}
+					queue[tail++] = next;
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * One cluster of the abstraction: its bounds, its entrances and the costs
+	 * between them. Never changed once built.
+	 */
+	private static final class Cluster
+	{
+
+		final int x;
+		final int y;
+		final int width;
+		final int height;
+
+		/**
+		 * The indices of the entrance nodes.
+		 */
+		final int[] entrances;
+
+		/**
+		 * For each entrance, the indices of the nodes across the border it
+		 * connects to.
+		 */
+		final int[][] partners;
+
+		/**
+		 * The cost between entrances i and j at i * entrances + j, or -1 if
+		 * they are not connected inside the cluster.
+		 */
+		final int[] distances;
+
+		Cluster(int x, int y, int width, int height, java.util.Map<Integer, List<Integer>> transitions)
+		{
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.entrances = new int[transitions.size()];
+			this.partners = new int[transitions.size()][];
+			int i = 0;
+			for (java.util.Map.Entry<Integer, List<Integer>> entry : transitions.entrySet())
+			{
+				entrances[i] = entry.getKey();
+				partners[i] = new int[entry.getValue().size()];
+				for (int j = 0; j < partners[i].length; j++)
+				{
+					partners[i][j] = entry.getValue().get(j);
+				}
+				i++;
+			}
+			this.distances = new int[entrances.length * entrances.length];
+		}
+
+		boolean contains(int nx, int ny)
+		{
+			return nx >= x && nx < x + width && ny >= y && ny < y + height;
+		}
+
+		int localIndex(int node, Map map)
+		{
+			int mapWidth = map.getWidth();
+			return (node / mapWidth - y) * width + (node % mapWidth - x);
+		}
+
+		/**
+		 * @return The position of the node among the entrances, or -1.
+		 */
+		int indexOf(int node)
+		{
+			for (int i = 0; i < entrances.length; i++)
+			{
+				if (entrances[i] == node)
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+	/**
+	 * The state of an A* search on the abstract graph, which only holds a few
+	 * nodes per cluster, so it is kept in hash maps instead of arrays as big
+	 * as the map.
+	 */
+	private final class AbstractSearch
+	{
+
+		final int goal;
+		final java.util.Map<Integer, Integer> g = new HashMap<Integer, Integer>();
+		final java.util.Map<Integer, Integer> parent = new HashMap<Integer, Integer>();
+		final Set<Integer> closed = new HashSet<Integer>();
+
+		/**
+		 * Entries of F score and node index. Entries whose F score is out of
+		 * date are skipped when polled.
+		 */
+		final PriorityQueue<int[]> open = new PriorityQueue<int[]>(16, new Comparator<int[]>()
+		{
+			@Override
+			public int compare(int[] a, int[] b)
+			{
+				return Integer.compare(a[0], b[0]);
+			}
+		});
+
+		AbstractSearch(int start, int goal)
+		{
+			this.goal = goal;
+			g.put(start, 0);
+			open.add(new int[] { distance(start, goal), start });
+		}
+
+		/**
+		 * @return The open node with the lowest F score, or -1 if the polled
+		 *         entry was out of date.
+		 */
+		int poll()
+		{
+			int node = open.poll()[1];
+			if (!closed.add(node))
+			{
+				return -1;
+			}
+			return node;
+		}
+
+		void relax(int node, int cost, int from)
+		{
+			if (closed.contains(node))
+			{
+				return;
+			}
+			Integer previous = g.get(node);
+			if (previous == null || cost < previous)
+			{
+				g.put(node, cost);
+				parent.put(node, from);
+				open.add(new int[] { cost + distance(node, goal), node });
+			}
+		}
+
+	}
+
+}
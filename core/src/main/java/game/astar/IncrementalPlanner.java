@@ -0,0 +1,476 @@
+package game.astar;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Plans the path of a single agent towards a fixed goal with D* Lite, and keeps
+ * the search tree between plans.
+ * <p>
+ * The search runs backwards, from the goal towards the agent, so the tree stays
+ * valid while the agent walks along the path: moving the start only shifts the
+ * heuristic, which is folded into the keys of the open list instead of
+ * reordering it. The planner listens to the map and remembers which nodes
+ * changed; the next call to {@link #findPath()} repairs only the nodes whose
+ * cost estimate became inconsistent because of those changes, so the work
+ * done scales with the effect of the change rather than with the map.
+ * <p>
+ * Every node has two cost estimates to the goal: G, the cost the last
+ * expansion settled on, and RHS, the cost looking one step ahead through its
+ * neighbors. A node whose estimates disagree is inconsistent and sits on the
+ * open list until it is expanded.
+ */
+public class IncrementalPlanner implements MapListener
+{
+
+	/**
+	 * The cost of unreachable nodes. Small enough that adding a step to it
+	 * can not overflow.
+	 */
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	/**
+	 * The map being planned on.
+	 */
+	private final Map map;
+
+	/**
+	 * The index of the goal node.
+	 */
+	private final int goal;
+
+	/**
+	 * The index of the node the agent is on.
+	 */
+	private int start;
+
+	/**
+	 * The index of the node the agent was on when changes were last applied.
+	 */
+	private int last;
+
+	/**
+	 * The sum of the heuristic distances the agent moved between changes,
+	 * added to every new key so old keys remain lower bounds.
+	 */
+	private int km;
+
+	/**
+	 * The settled cost to the goal of each node, by node index.
+	 */
+	private final int[] g;
+
+	/**
+	 * The one step lookahead cost to the goal of each node, by node index.
+	 */
+	private final int[] rhs;
+
+	/**
+	 * The inconsistent nodes, by their key.
+	 */
+	private final KeyHeap openList;
+
+	/**
+	 * The indices of the nodes that changed since the last plan.
+	 */
+	private int[] changes = new int[16];
+
+	/**
+	 * How many entries of {@link #changes} are used.
+	 */
+	private int changeCount;
+
+	/**
+	 * How many nodes the last plan expanded.
+	 */
+	private int expandedNodes;
+
+	/**
+	 * Creates a planner and starts listening to the map's changes. No search
+	 * is done until the first call to {@link #findPath()}.
+	 *
+	 * @param map
+	 *            The map to plan on.
+	 * @param startX
+	 *            The X coordinate of the agent.
+	 * @param startY
+	 *            The Y coordinate of the agent.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 */
+	public IncrementalPlanner(Map map, int startX, int startY, int goalX, int goalY)
+	{
+		int size = map.getWidth() * map.getHeight();
+		this.map = map;
+		this.goal = map.indexOf(goalX, goalY);
+		this.start = map.indexOf(startX, startY);
+		this.last = start;
+		this.km = 0;
+		this.g = new int[size];
+		this.rhs = new int[size];
+		this.openList = new KeyHeap(size);
+
+		Arrays.fill(g, INFINITY);
+		Arrays.fill(rhs, INFINITY);
+		rhs[goal] = 0;
+		openList.update(goal, key(goal));
+		map.addMapListener(this);
+	}
+
+	/**
+	 * Stops listening to the map's changes. The planner should not be used
+	 * afterwards.
+	 */
+	public void dispose()
+	{
+		map.removeMapListener(this);
+	}
+
+	@Override
+	public synchronized void nodeChanged(Map map, int x, int y, boolean walkable)
+	{
+		if (changeCount == changes.length)
+		{
+			changes = Arrays.copyOf(changes, changeCount * 2);
+		}
+		changes[changeCount++] = map.indexOf(x, y);
+	}
+
+	/**
+	 * Moves the agent, typically to the next node of the last path, as
+	 * {@link game.entity.Player} does when walking it. The search tree is kept.
+	 *
+	 * @param x
+	 *            The agent's new X coordinate.
+	 * @param y
+	 *            The agent's new Y coordinate.
+	 */
+	public synchronized void moveStart(int x, int y)
+	{
+		start = map.indexOf(x, y);
+	}
+
+	/**
+	 * Applies the map changes made since the last plan, repairs the search
+	 * tree as far as needed and returns the shortest path from the agent to
+	 * the goal.
+	 *
+	 * @return A new list containing all of the visited nodes, from the agent
+	 *         (exclusive) to the goal, if there is a solution, an empty list
+	 *         otherwise.
+	 */
+	public synchronized List<Node> findPath()
+	{
+		expandedNodes = 0;
+		if (changeCount > 0)
+		{
+			km += map.manhattan(last, start);
+			last = start;
+			int width = map.getWidth();
+			for (int i = 0; i < changeCount; i++)
+			{
+				int node = changes[i];
+				int x = node % width;
+				int y = node / width;
+				updateNode(node);
+				for (int direction = 0; direction < 4; direction++)
+				{
+					int nx = x + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+					int ny = y + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+					if (nx >= 0 && nx < width && ny >= 0 && ny < map.getHeight())
+					{
+						updateNode(map.indexOf(nx, ny));
+					}
+				}
+			}
+			changeCount = 0;
+		}
+
+		computeShortestPath();
+		return extractPath();
+	}
+
+	/**
+	 * @return How many nodes the last call to {@link #findPath()} expanded.
+	 */
+	public synchronized int getExpandedNodes()
+	{
+		return expandedNodes;
+	}
+
+	/**
+	 * Expands inconsistent nodes until the agent's node is consistent and no
+	 * open node could still lower its cost.
+	 */
+	private void computeShortestPath()
+	{
+		int width = map.getWidth();
+		while (!openList.isEmpty() && (openList.peekKey() < key(start) || rhs[start] != g[start]))
+		{
+			int node = openList.peek();
+			long oldKey = openList.peekKey();
+			long newKey = key(node);
+			if (oldKey < newKey)
+			{
+				// The agent moved since this key was computed.
+				openList.update(node, newKey);
+				continue;
+			}
+
+			expandedNodes++;
+			if (g[node] > rhs[node])
+			{
+				// Got cheaper: settle it and tell its neighbors.
+				g[node] = rhs[node];
+				openList.remove(node);
+			}
+			else
+			{
+				// Got more expensive: forget it and let it and its neighbors
+				// look for another way.
+				g[node] = INFINITY;
+				updateNode(node);
+			}
+
+			int x = node % width;
+			int y = node / width;
+			for (int direction = 0; direction < 4; direction++)
+			{
+				int nx = x + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+				int ny = y + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+				if (map.isPassable(nx, ny))
+				{
+					updateNode(map.indexOf(nx, ny));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the lookahead cost of a node and puts it on or takes it off
+	 * the open list, depending on whether it is consistent.
+	 */
+	private void updateNode(int node)
+	{
+		if (node != goal)
+		{
+			rhs[node] = lookahead(node);
+		}
+		if (g[node] != rhs[node])
+		{
+			openList.update(node, key(node));
+		}
+		else
+		{
+			openList.remove(node);
+		}
+	}
+
+	/**
+	 * @return The cheapest cost to the goal through a neighbor of a node,
+	 *         using the neighbors' G scores.
+	 */
+	private int lookahead(int node)
+	{
+		int width = map.getWidth();
+		int x = node % width;
+		int y = node / width;
+		if (!map.isPassable(x, y))
+		{
+			return INFINITY;
+		}
+		int best = INFINITY;
+		for (int direction = 0; direction < 4; direction++)
+		{
+			int nx = x + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+			int ny = y + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+			if (map.isPassable(nx, ny))
+			{
+				int next = map.indexOf(nx, ny);
+				best = Math.min(best, g[next] + map.cost(next));
+			}
+		}
+		return Math.min(best, INFINITY);
+	}
+
+	/**
+	 * @return The open list key of a node: its estimated total cost through
+	 *         the agent's node, then its own cost, packed into one long.
+	 */
+	private long key(int node)
+	{
+		long cost = Math.min(g[node], rhs[node]);
+		long estimate = cost + map.manhattan(node, start) + km;
+		return (estimate << 32) | cost;
+	}
+
+	/**
+	 * Follows the cheapest neighbors from the agent's node down to the goal.
+	 */
+	private List<Node> extractPath()
+	{
+		LinkedList<Node> path = new LinkedList<Node>();
+		if (start == goal || g[start] >= INFINITY)
+		{
+			return path;
+		}
+		int width = map.getWidth();
+		int current = start;
+		while (current != goal)
+		{
+			int x = current % width;
+			int y = current / width;
+			int next = -1;
+			int best = INFINITY;
+			for (int direction = 0; direction < 4; direction++)
+			{
+				int nx = x + (direction == 0 ? -1 : direction == 1 ? 1 : 0);
+				int ny = y + (direction == 2 ? -1 : direction == 3 ? 1 : 0);
+				if (map.isPassable(nx, ny))
+				{
+					int adjacent = map.indexOf(nx, ny);
+					if (g[adjacent] + map.cost(adjacent) < best)
+					{
+						next = adjacent;
+						best = g[adjacent] + map.cost(adjacent);
+					}
+				}
+			}
+			if (next < 0 || g[next] >= g[current])
+			{
+				// Can only happen if the map changed during the plan.
+				return new LinkedList<Node>();
+			}
+			path.add(map.getNode(next % width, next / width));
+			current = next;
+		}
+		return path;
+	}
+
+	/**
+	 * An indexed binary min-heap of node indices, ordered by a key that can be
+	 * raised or lowered in place.
+	 */
+	private static final class KeyHeap
+	{
+
+		private final int[] heap;
+
+		/**
+		 * The position of each node in the heap array, or -1 if it is not in
+		 * the heap.
+		 */
+		private final int[] position;
+
+		private final long[] keys;
+
+		private int size;
+
+		KeyHeap(int capacity)
+		{
+			this.heap = new int[capacity];
+			this.position = new int[capacity];
+			this.keys = new long[capacity];
+			Arrays.fill(position, -1);
+		}
+
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		int peek()
+		{
+			return heap[0];
+		}
+
+		long peekKey()
+		{
+			return keys[heap[0]];
+		}
+
+		/**
+		 * Adds a node, or moves it if it is already in the heap.
+		 */
+		void update(int node, long key)
+		{
+			int i = position[node];
+			keys[node] = key;
+			if (i < 0)
+			{
+				heap[size] = node;
+				position[node] = size;
+				siftUp(size++);
+			}
+			else
+			{
+				siftDown(siftUp(i));
+			}
+		}
+
+		void remove(int node)
+		{
+			int i = position[node];
+			if (i < 0)
+			{
+				return;
+			}
+			position[node] = -1;
+			size--;
+			if (i < size)
+			{
+				heap[i] = heap[size];
+				position[heap[i]] = i;
+				siftDown(siftUp(i));
+			}
+		}
+
+		private int siftUp(int i)
+		{
+			int node = heap[i];
+			while (i > 0)
+			{
+				int parent = (i - 1) >>> 1;
+				if (keys[heap[parent]] <= keys[node])
+				{
+					break;
+				}
+				heap[i] = heap[parent];
+				position[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = node;
+			position[node] = i;
+			return i;
+		}
+
+		private void siftDown(int i)
+		{
+			int node = heap[i];
+			int half = size >>> 1;
+			while (i < half)
+			{
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if (right < size && keys[heap[right]] < keys[heap[child]])
+				{
+					child = right;
+				}
+				if (keys[heap[child]] >= keys[node])
+				{
+					break;
+				}
+				heap[i] = heap[child];
+				position[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = node;
+			position[node] = i;
+		}
+
+	}
+
+}
@@ -0,0 +1,205 @@
+package game.astar;
+
+/**
+ * Jump Point Search on a 4-connected, uniform cost map.
+ * <p>
+ * Instead of adding every adjacent node to the open list, the search keeps
+ * moving in a straight line until it reaches a jump point: the goal, a node
+ * with a forced neighbor (a side that was blocked one node earlier and is now
+ * open), or, when moving vertically, a node from which a horizontal jump finds
+ * a jump point. Only jump points are added to the open list, each with the node
+ * it was reached from as its parent, so the resulting path has the same length
+ * as the one plain A* finds.
+ * <p>
+ * Horizontal jumps read the map 64 nodes at a time, testing a whole word of a
+ * row and of the rows above and below it for walls and forced neighbors at
+ * once.
+ */
+final class JumpPointSearch
+{
+
+	private JumpPointSearch()
+	{
+	}
+
+	/**
+	 * Runs a Jump Point Search, leaving the parents of the visited jump points
+	 * in the context.
+	 *
+	 * @param map
+	 *            The map to search.
+	 * @param context
+	 *            The scratch state for this search.
+	 * @param start
+	 *            The index of the start node.
+	 * @param goal
+	 *            The index of the goal node.
+	 * @return True if the goal was reached, false if no path exists.
+	 */
+	static boolean search(Map map, SearchContext context, int start, int goal)
+	{
+		int width = map.getWidth();
+
+		context.reset();
+		context.open(start, 0, map.heuristic(start, goal), -1);
+
+		while (!context.isOpenListEmpty())
+		{
+			int current = context.close();
+			if (current == goal)
+			{
+				return true;
+			}
+
+			int x = current % width;
+			int y = current / width;
+			int parent = context.getParent(current);
+			if (parent < 0)
+			{
+				// The start node has no direction yet, so try them all.
+				jump(map, context, current, 1, 0, goal);
+				jump(map, context, current, -1, 0, goal);
+				jump(map, context, current, 0, 1, goal);
+				jump(map, context, current, 0, -1, goal);
+			}
+			else if (parent / width == y)
+			{
+				// Moving horizontally: keep going, or turn up or down.
+				jump(map, context, current, Integer.signum(x - parent % width), 0, goal);
+				jump(map, context, current, 0, 1, goal);
+				jump(map, context, current, 0, -1, goal);
+			}
+			else
+			{
+				// Moving vertically: keep going, or turn left or right.
+				jump(map, context, current, 0, Integer.signum(y - parent / width), goal);
+				jump(map, context, current, 1, 0, goal);
+				jump(map, context, current, -1, 0, goal);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Jumps from a node in one direction and, if a jump point is found, adds
+	 * it to the open list or lowers its G score.
+	 */
+	private static void jump(Map map, SearchContext context, int current, int dx, int dy, int goal)
+	{
+		int width = map.getWidth();
+		int x = current % width;
+		int y = current / width;
+		int goalX = goal % width;
+		int goalY = goal / width;
+
+		int next;
+		if (dy == 0)
+		{
+			int column = jumpHorizontal(map, x + dx, y, dx, goalX, goalY);
+			next = column < 0 ? -1 : map.indexOf(column, y);
+		}
+		else
+		{
+			next = jumpVertical(map, x, y + dy, dy, goalX, goalY);
+		}
+
+		if (next < 0 || context.getState(next) == SearchContext.CLOSED)
+		{
+			return;
+		}
+
+		int distance = Math.abs(next % width - x) + Math.abs(next / width - y);
+		int g = context.getG(current) + distance * Node.MOVEMENT_COST;
+		if (context.getState(next) == SearchContext.UNVISITED)
+		{
+			context.open(next, g, map.heuristic(next, goal), current);
+		}
+		else if (g < context.getG(next))
+		{
+			context.decrease(next, g, current);
+		}
+	}
+
+	/**
+	 * Moves vertically from a node until a jump point is found.
+	 *
+	 * @return The index of the jump point, or -1 if a wall or the map
+	 *         boundary was hit first.
+	 */
+	private static int jumpVertical(Map map, int x, int y, int dy, int goalX, int goalY)
+	{
+		for (;; y += dy)
+		{
+			if (!map.isPassable(x, y))
+			{
+				return -1;
+			}
+			if (x == goalX && y == goalY)
+			{
+				return map.indexOf(x, y);
+			}
+			if ((map.isPassable(x - 1, y) && !map.isPassable(x - 1, y - dy))
+					|| (map.isPassable(x + 1, y) && !map.isPassable(x + 1, y - dy)))
+			{
+				return map.indexOf(x, y);
+			}
+			if (jumpHorizontal(map, x + 1, y, 1, goalX, goalY) >= 0
+					|| jumpHorizontal(map, x - 1, y, -1, goalX, goalY) >= 0)
+			{
+				return map.indexOf(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Moves horizontally, starting at the given node, until a jump point is
+	 * found. Each step tests 64 nodes.
+	 *
+	 * @return The X coordinate of the jump point, or -1 if a wall or the map
+	 *         boundary was hit first.
+	 */
+	private static int jumpHorizontal(Map map, int x, int y, int dx, int goalX, int goalY)
+	{
+		for (;; x += 64 * dx)
+		{
+			// Bit i of each word describes the node i steps ahead of x.
+			long open = bits(map, x, y, dx);
+			long above = bits(map, x, y - 1, dx);
+			long aboveBehind = bits(map, x - dx, y - 1, dx);
+			long below = bits(map, x, y + 1, dx);
+			long belowBehind = bits(map, x - dx, y + 1, dx);
+
+			// A side that was a wall one step earlier and is open now.
+			long forced = (above & ~aboveBehind) | (below & ~belowBehind);
+
+			long goalBit = 0;
+			int goalOffset = (goalX - x) * dx;
+			if (y == goalY && goalOffset >= 0 && goalOffset < 64)
+			{
+				goalBit = 1L << goalOffset;
+			}
+
+			long stop = ~open | forced | goalBit;
+			if (stop != 0)
+			{
+				int offset = Long.numberOfTrailingZeros(stop);
+				return (open & (1L << offset)) != 0 ? x + offset * dx : -1;
+			}
+		}
+	}
+
+	/**
+	 * @return A word where bit i is set if the node i steps from x in the
+	 *         direction dx is walkable.
+	 */
+	private static long bits(Map map, int x, int y, int dx)
+	{
+		if (dx > 0)
+		{
+			return map.rowBits(x, y);
+		}
+		return Long.reverse(map.rowBits(x - 63, y));
+	}
+
+}
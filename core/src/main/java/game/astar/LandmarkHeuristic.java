@@ -0,0 +1,439 @@
+package game.astar;
+
+import java.util.Arrays;
+
+/**
+ * A landmark (ALT) heuristic: exact distances from a few landmark nodes to
+ * every node, combined with the triangle inequality into an estimate that is
+ * far better informed than the Manhattan distance on maze-like maps.
+ * <p>
+ * For a landmark L, the distance between a node and the goal can not be lower
+ * than the difference of their distances from L, in either direction. The
+ * estimate is the largest such difference over all landmarks. Like the
+ * Manhattan distance, it never overestimates and never drops by more than the
+ * cost of a step, so searches using it still find shortest paths.
+ * <p>
+ * Landmarks are picked one at a time in the largest connected region, each as
+ * far as possible from the ones picked before, so they end up on its edges.
+ * Queries in other regions get no help from them. The tables store one
+ * distance per node and landmark, interleaved so the distances of one node are
+ * next to each other, in 16 or 32 bits. Distances are stored in units of the
+ * greatest common divisor of the node costs, which loses nothing, since every
+ * distance is a multiple of it.
+ * <p>
+ * The tables describe the map at the time they were built. As soon as a node
+ * changes they are out of date, the map ignores them, and {@link #rebuild()}
+ * has to be called to use them again. A build works on new tables and
+ * publishes them together with the map's modification count they describe,
+ * so searches running meanwhile use either the old tables, while they are
+ * still up to date, or the new ones, never a mix. If the map changes during
+ * the build, the new tables are out of date as soon as they are published.
+ *
+ * @see Map#setHeuristic(LandmarkHeuristic)
+ */
+public class LandmarkHeuristic
+{
+
+	/**
+	 * The table entry of nodes that can not be reached from a landmark.
+	 */
+	private static final int UNREACHABLE = -1;
+
+	/**
+	 * The largest distance 16 bit tables can hold.
+	 */
+	private static final int MAX_COMPACT_DISTANCE = 0xFFFE;
+
+	/**
+	 * The map the tables were built for.
+	 */
+	private final Map map;
+
+	/**
+	 * The number of landmarks.
+	 */
+	private final int count;
+
+	/**
+	 * If the tables use 16 bits per distance.
+	 */
+	private final boolean compact;
+
+	/**
+	 * The tables of the last successful build.
+	 */
+	private volatile Tables tables;
+
+	/**
+	 * Picks the landmarks and builds their tables.
+	 *
+	 * @param map
+	 *            The map to build the tables for.
+	 * @param count
+	 *            The number of landmarks. Each one takes 2 or 4 bytes per node.
+	 * @param compact
+	 *            If the tables should use 16 bits per distance instead of 32.
+	 * @throws IllegalArgumentException
+	 *             If a 16 bit table can not hold a distance on the map, or
+	 *             the tables would have more entries than an array can hold.
+	 */
+	public LandmarkHeuristic(Map map, int count, boolean compact)
+	{
+		if (count < 1)
+		{
+			throw new IllegalArgumentException("At least one landmark is needed");
+		}
+		this.map = map;
+		this.count = count;
+		this.compact = compact;
+		rebuild();
+	}
+
+	/**
+	 * Picks the landmarks again and rebuilds their tables for the map as it is
+	 * now. If the build fails, the old tables are kept, and stay out of date
+	 * if the map changed since they were built.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If a 16 bit table can not hold a distance on the map, or
+	 *             the tables would have more entries than an array can hold.
+	 */
+	public synchronized void rebuild()
+	{
+		int size = map.getWidth() * map.getHeight();
+		long entries = (long) size * count;
+		if (entries > Integer.MAX_VALUE - 8)
+		{
+			throw new IllegalArgumentException(count + " landmarks on " + size + " nodes need " + entries
+					+ " table entries, more than an array can hold");
+		}
+		tables = build(size, (int) entries);
+	}
+
+	/**
+	 * Picks the landmarks and fills new tables. The distances from each
+	 * landmark are searched into a scratch array and copied into the final
+	 * table, so at most one extra array of a distance per node is needed.
+	 */
+	private Tables build(int size, int entries)
+	{
+		// Read first, so any change made during the build leaves the new
+		// tables out of date.
+		int modifications = map.getModifications();
+		int newUnit = map.getCostUnit();
+		int[] picked = new int[count];
+		char[] newShortTable = compact ? new char[entries] : null;
+		int[] newIntTable = compact ? null : new int[entries];
+		SearchContext context = new SearchContext(size);
+		long selection = 0;
+		long build = 0;
+
+		// The distance from each node to the closest landmark picked so far,
+		// starting out with the distances from a node of the largest region.
+		long begin = System.nanoTime();
+		int[] closest = new int[size];
+		int seed = largestRegion();
+		if (seed < 0)
+		{
+			// No walkable nodes at all: every table entry is unreachable.
+			if (compact)
+			{
+				Arrays.fill(newShortTable, (char) 0xFFFF);
+			}
+			else
+			{
+				Arrays.fill(newIntTable, UNREACHABLE);
+			}
+		}
+		else
+		{
+			distances(context, seed, closest);
+			selection += System.nanoTime() - begin;
+
+			int[] scratch = new int[size];
+			for (int i = 0; i < count; i++)
+			{
+				begin = System.nanoTime();
+				int farthest = farthest(closest);
+				picked[i] = farthest;
+				long found = System.nanoTime();
+				selection += found - begin;
+
+				distances(context, farthest, scratch);
+				for (int node = 0; node < size; node++)
+				{
+					int distance = scratch[node];
+					if (i == 0 || distance < closest[node])
+					{
+						closest[node] = distance;
+					}
+					int entry = node * count + i;
+					if (compact)
+					{
+						if (distance != UNREACHABLE && distance / newUnit > MAX_COMPACT_DISTANCE)
+						{
+							throw new IllegalArgumentException("Distance " + distance + " does not fit a 16 bit table");
+						}
+						newShortTable[entry] = (char) (distance == UNREACHABLE ? 0xFFFF : distance / newUnit);
+					}
+					else
+					{
+						newIntTable[entry] = distance == UNREACHABLE ? UNREACHABLE : distance / newUnit;
+					}
+				}
+				build += System.nanoTime() - found;
+			}
+		}
+
+		return new Tables(picked, newUnit, newShortTable, newIntTable, modifications, selection, build);
+	}
+
+	/**
+	 * Runs a Dijkstra search over the whole region of a node and writes the
+	 * distance of every node from it into an array.
+	 */
+	private void distances(SearchContext context, int from, int[] distances)
+	{
+		context.reset(map.getCostSpan());
+		context.open(from, 0, 0, -1);
+		int[] adjacentNodes = context.adjacent;
+		while (!context.isOpenListEmpty())
+		{
+			int current = context.close();
+			int count = map.getAdjacent(current, context, adjacentNodes);
+			for (int i = 0; i < count; i++)
+			{
+				int adjacent = adjacentNodes[i];
+				int g = context.getG(current) + map.cost(adjacent);
+				if (context.getState(adjacent) == SearchContext.UNVISITED)
+				{
+					context.open(adjacent, g, 0, current);
+				}
+				else if (g < context.getG(adjacent))
+				{
+					context.decrease(adjacent, g, current);
+				}
+			}
+		}
+		for (int node = 0; node < context.size(); node++)
+		{
+			boolean reached = context.getState(node) == SearchContext.CLOSED;
+			distances[node] = reached ? context.getG(node) : UNREACHABLE;
+		}
+	}
+
+	/**
+	 * @return A node of the largest connected region, or -1 if no node is
+	 *         walkable.
+	 */
+	private int largestRegion()
+	{
+		int size = map.getWidth() * map.getHeight();
+		int[] sizes = new int[size + 2];
+		int best = -1;
+		for (int node = 0; node < size; node++)
+		{
+			int region = map.regionOf(node);
+			if (region != 0 && ++sizes[region] > (best < 0 ? 0 : sizes[map.regionOf(best)]))
+			{
+				best = node;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return The node farthest from every landmark picked so far, among the
+	 *         nodes they can reach.
+	 */
+	private static int farthest(int[] closest)
+	{
+		int best = 0;
+		for (int node = 1; node < closest.length; node++)
+		{
+			if (closest[node] > closest[best])
+			{
+				best = node;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Estimates the cost of the cheapest path between two nodes.
+	 *
+	 * @param node
+	 *            The index of the node to estimate from.
+	 * @param goal
+	 *            The index of the final node on the path.
+	 * @return The estimated cost, never higher than the actual one, or 0 if
+	 *         the tables are out of date.
+	 */
+	int estimate(int node, int goal)
+	{
+		// Checked against the same tables that are read, in case a rebuild
+		// publishes new ones in between.
+		Tables tables = this.tables;
+		if (tables.modifications != map.getModifications())
+		{
+			return 0;
+		}
+		int nodeBase = node * count;
+		int goalBase = goal * count;
+		// The largest differences of the distances from a landmark, in either
+		// direction, in table units.
+		int towards = 0;
+		int away = 0;
+		char[] shortTable = tables.shortTable;
+		int[] intTable = tables.intTable;
+		for (int i = 0; i < count; i++)
+		{
+			int toNode;
+			int toGoal;
+			if (shortTable != null)
+			{
+				toNode = shortTable[nodeBase + i];
+				toGoal = shortTable[goalBase + i];
+				if (toNode == 0xFFFF || toGoal == 0xFFFF)
+				{
+					continue;
+				}
+			}
+			else
+			{
+				toNode = intTable[nodeBase + i];
+				toGoal = intTable[goalBase + i];
+				if (toNode == UNREACHABLE || toGoal == UNREACHABLE)
+				{
+					continue;
+				}
+			}
+			towards = Math.max(towards, toGoal - toNode);
+			away = Math.max(away, toNode - toGoal);
+		}
+		// Moving from a node to a landmark costs the same as moving back,
+		// except for the costs of the two ends.
+		int ends = map.cost(goal) - map.cost(node);
+		return Math.max(towards * tables.unit, away * tables.unit + ends);
+	}
+
+	/**
+	 * @return True if the map changed since the tables were built.
+	 */
+	public boolean isStale()
+	{
+		return tables.modifications != map.getModifications();
+	}
+
+	/**
+	 * @return The map the tables were built for.
+	 */
+	Map getMap()
+	{
+		return map;
+	}
+
+	/**
+	 * @return The number of landmarks.
+	 */
+	public int getLandmarkCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @param i
+	 *            The landmark's number.
+	 * @return The node the landmark is on.
+	 */
+	public Node getLandmark(int i)
+	{
+		int landmark = tables.landmarks[i];
+		return map.getNode(landmark % map.getWidth(), landmark / map.getWidth());
+	}
+
+	/**
+	 * @return How many bytes the distance tables take.
+	 */
+	public long getTableBytes()
+	{
+		Tables tables = this.tables;
+		return compact ? 2L * tables.shortTable.length : 4L * tables.intTable.length;
+	}
+
+	/**
+	 * @return How long the last build spent picking landmarks, in nanoseconds.
+	 */
+	public long getSelectionTime()
+	{
+		return tables.selectionTime;
+	}
+
+	/**
+	 * @return How long the last build spent filling the distance tables, in
+	 *         nanoseconds.
+	 */
+	public long getBuildTime()
+	{
+		return tables.buildTime;
+	}
+
+	/**
+	 * The landmarks and distance tables of one build, never changed once
+	 * built.
+	 */
+	private static final class Tables
+	{
+
+		/**
+		 * The indices of the landmark nodes.
+		 */
+		final int[] landmarks;
+
+		/**
+		 * The cost every stored distance has to be multiplied with.
+		 */
+		final int unit;
+
+		/**
+		 * The distance from landmark i to node n at [n * count + i], in 16 bit
+		 * tables, with 0xFFFF for unreachable nodes. Null for 32 bit tables.
+		 */
+		final char[] shortTable;
+
+		/**
+		 * The distance from landmark i to node n at [n * count + i], in 32 bit
+		 * tables, with -1 for unreachable nodes. Null for 16 bit tables.
+		 */
+		final int[] intTable;
+
+		/**
+		 * The map's modification count the tables describe.
+		 */
+		final int modifications;
+
+		/**
+		 * How long the build spent picking landmarks, in nanoseconds.
+		 */
+		final long selectionTime;
+
+		/**
+		 * How long the build spent filling the tables, in nanoseconds.
+		 */
+		final long buildTime;
+
+		Tables(int[] landmarks, int unit, char[] shortTable, int[] intTable, int modifications, long selectionTime,
+				long buildTime)
+		{
+			this.landmarks = landmarks;
+			this.unit = unit;
+			this.shortTable = shortTable;
+			this.intTable = intTable;
+			this.modifications = modifications;
+			this.selectionTime = selectionTime;
+			this.buildTime = buildTime;
+		}
+
+	}
+
+}
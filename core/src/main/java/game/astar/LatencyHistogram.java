@@ -0,0 +1,124 @@
+package game.astar;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in log-linear buckets: every power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so any recorded value is known to within
+ * about 3% however large it is, with a fixed, small table and no allocation
+ * per value. Values below twice the sub-bucket count are counted exactly.
+ * <p>
+ * Any number of threads may record values at the same time. A percentile read
+ * while values are being recorded may miss the most recent of them.
+ */
+final class LatencyHistogram
+{
+
+	/**
+	 * The binary logarithm of {@link #SUB_BUCKETS}.
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * How many buckets each power of two is split into.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of buckets needed to hold any non-negative long.
+	 */
+	private static final int BUCKETS = (63 - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Counts a value.
+	 *
+	 * @param value
+	 *            The value, negative values are counted as zero.
+	 */
+	void record(long value)
+	{
+		counts.incrementAndGet(bucketOf(Math.max(value, 0)));
+	}
+
+	/**
+	 * Forgets every value counted so far.
+	 */
+	void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+	}
+
+	/**
+	 * @param percentile
+	 *            The share of values to be at or below the result, between 0
+	 *            and 100.
+	 * @return The highest value of the bucket holding the given percentile,
+	 *         or 0 if nothing was counted.
+	 */
+	long getPercentile(double percentile)
+	{
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			total += counts.get(i);
+		}
+		if (total == 0)
+		{
+			return 0;
+		}
+		// The rank of the value asked for, counting from 1.
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if (seen >= rank)
+			{
+				return highestValueOf(i);
+			}
+		}
+		// Values were counted while summing up, the rank is in the last one.
+		for (int i = BUCKETS - 1; i >= 0; i--)
+		{
+			if (counts.get(i) != 0)
+			{
+				return highestValueOf(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The index of the bucket counting a non-negative value.
+	 */
+	private static int bucketOf(long value)
+	{
+		if (value < 2 * SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		// Drop the low bits, leaving the value's top SUB_BUCKET_BITS + 1 bits.
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * @return The highest value counted in a bucket.
+	 */
+	private static long highestValueOf(int bucket)
+	{
+		if (bucket < 2 * SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+}
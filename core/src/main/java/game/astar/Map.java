@@ -0,0 +1,1311 @@
+/*
+ * Possible optimizations:
+ * - calculate f as soon as g or h are set, so it will not have to be
+ *      calculated each time it is retrieved
+ */
+
+package game.astar;
+
+import java.awt.Graphics;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class represents a simple map to be used for A* pathfinding.
+ * 
+ * @author dopke
+ *
+ */
+public class Map
+{
+
+	/**
+	 * The highest cost a node can have.
+	 */
+	public static final int MAX_COST = 255;
+
+	/**
+	 * The width of the map, in columns.
+	 */
+	private int width;
+
+	/**
+	 * The height of the map, in rows.
+	 */
+	private int height;
+
+	/**
+	 * How many 64 bit words each row of the map takes in {@link #walkable}.
+	 * Rows are padded to whole words, so a row can be scanned a word at a
+	 * time.
+	 */
+	private int wordsPerRow;
+
+	/**
+	 * One bit per node, set if the node is walkable, row by row. Either on the
+	 * heap or mapped from a file by {@link MapFile}.
+	 */
+	private LongBuffer walkable;
+
+	/**
+	 * The connected region of every walkable node, so unreachable goals are
+	 * rejected without searching. Labeled by the first query that needs it,
+	 * so creating or loading a map costs nothing per node.
+	 */
+	private volatile ConnectedComponents components;
+
+	/**
+	 * The cost of moving onto each node, by node index, or null while every
+	 * node costs {@link Node#MOVEMENT_COST}. Costs are stored unsigned. Either
+	 * on the heap or mapped from a file by {@link MapFile}.
+	 */
+	private ByteBuffer costs;
+
+	/**
+	 * How many nodes have each cost, by cost, or null while there are no
+	 * costs. Keeps {@link #minCost} and {@link #maxCost} exact as costs
+	 * change.
+	 */
+	private int[] costCounts;
+
+	/**
+	 * The lowest cost of any node. The heuristic is scaled by it, so it never
+	 * overestimates.
+	 */
+	private int minCost = Node.MOVEMENT_COST;
+
+	/**
+	 * The highest cost of any node.
+	 */
+	private int maxCost = Node.MOVEMENT_COST;
+
+	/**
+	 * Incremented whenever a node's walkability or cost changes, so searches
+	 * spread over several calls can tell that the map changed under them.
+	 */
+	private volatile int modifications;
+
+	/**
+	 * Incremented whenever a node's walkability changes, before the listeners
+	 * are notified, so they can tell such changes from cost changes.
+	 */
+	private volatile int wallModifications;
+
+	/**
+	 * The number of entries in {@link #changedNodes}. A power of two.
+	 */
+	static final int CHANGE_LOG_SIZE = 256;
+
+	/**
+	 * The indices of the most recently changed nodes, the node of change
+	 * number n at n modulo {@link #CHANGE_LOG_SIZE}, so searches spread over
+	 * several calls can tell if a change affects them.
+	 */
+	private final int[] changedNodes = new int[CHANGE_LOG_SIZE];
+
+	/**
+	 * Landmark tables improving on the Manhattan distance, or null.
+	 */
+	private volatile LandmarkHeuristic landmarks;
+
+	/**
+	 * Records the searches of this map, or null.
+	 */
+	private volatile SearchStatistics statistics;
+
+	/**
+	 * Draws the map for {@link #drawMap(Graphics, Path, int)}, created when
+	 * first needed.
+	 */
+	private MapRenderer renderer;
+
+	/**
+	 * Search contexts of the threads searching this map, so repeated calls to
+	 * {@link #findPath(int, int, int, int)} on the same thread reuse their
+	 * scratch arrays.
+	 */
+	private final ThreadLocal<SearchContext> contexts = new ThreadLocal<SearchContext>();
+
+	/**
+	 * The search context the flow fields of this map share for their builds
+	 * and repairs, or null until the first one needs it.
+	 */
+	private SearchContext fieldContext;
+
+	/**
+	 * Listeners notified whenever a node's walkability changes.
+	 */
+	private final List<MapListener> listeners = new CopyOnWriteArrayList<MapListener>();
+
+	/**
+	 * Creates a map based on a two dimensional array, where each zero is a
+	 * walkable node and any other number is not.
+	 * 
+	 * @param map
+	 *            The map array used to creating the map.
+	 */
+	public Map(int[][] map)
+	{
+		this.width = map[0].length;
+		this.height = map.length;
+		this.wordsPerRow = (width + 63) >>> 6;
+		long[] words = new long[wordsPerRow * height];
+
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				if (map[y][x] == 0)
+				{
+					words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+		this.walkable = LongBuffer.wrap(words);
+	}
+
+	/**
+	 * Creates a map based on a two dimensional array, where each zero is a
+	 * walkable node and any other number is not, with the cost of moving onto
+	 * each node taken from a second array.
+	 * 
+	 * @param map
+	 *            The map array used to creating the map.
+	 * @param costs
+	 *            The cost of moving onto each node, from 1 to {@link #MAX_COST},
+	 *            with the same dimensions as the map array. Walls may have any
+	 *            cost.
+	 */
+	public Map(int[][] map, int[][] costs)
+	{
+		this(map);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				changeCost(x, y, costs[y][x]);
+			}
+		}
+	}
+
+	/**
+	 * Creates a map backed by existing buffers, as loaded by {@link MapFile}.
+	 * The buffers are used as they are, not copied.
+	 * 
+	 * @param width
+	 *            The width of the map, in columns.
+	 * @param height
+	 *            The height of the map, in rows.
+	 * @param walkable
+	 *            One bit per node, set if the node is walkable, with each row
+	 *            padded to whole 64 bit words.
+	 * @param costs
+	 *            The cost of each node, unsigned, or null if every node costs
+	 *            {@link Node#MOVEMENT_COST}.
+	 * @param costCounts
+	 *            How many nodes have each cost, by cost, if there are costs.
+	 */
+	Map(int width, int height, LongBuffer walkable, ByteBuffer costs, int[] costCounts)
+	{
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.walkable = walkable;
+		if (costs != null)
+		{
+			this.costs = costs;
+			this.costCounts = costCounts;
+			minCost = 1;
+			while (costCounts[minCost] == 0)
+			{
+				minCost++;
+			}
+			maxCost = MAX_COST;
+			while (costCounts[maxCost] == 0)
+			{
+				maxCost--;
+			}
+		}
+	}
+
+	/**
+	 * Draws the visible part of the map, where each walkable node is drawn
+	 * black, each non-walkable node white and each node that is in the path
+	 * yellow, with a grey grid line along the left and top edge of every node.
+	 * The walls and grid are kept in an image that is only drawn again when
+	 * the map changes or another part of it becomes visible. Call it from one
+	 * thread only, usually the one rendering the game.
+	 * 
+	 * @param g
+	 *            A <code>Graphics</code> object in order to be able to draw
+	 *            things. Only the nodes inside its clip, or inside the image
+	 *            or screen it draws to, are drawn.
+	 * @param path
+	 *            Optional parameter. List containing the nodes to be drawn as
+	 *            path nodes.
+	 */
+	public void drawMap(Graphics g, List<Node> path)
+	{
+		renderer().draw(g, path);
+	}
+
+	/**
+	 * Draws the visible part of the map like {@link #drawMap(Graphics, List)},
+	 * with the remaining steps of a path, without creating a node for each
+	 * of them.
+	 * 
+	 * @param g
+	 *            A <code>Graphics</code> object in order to be able to draw
+	 *            things.
+	 * @param path
+	 *            Optional parameter. The path to draw.
+	 * @param first
+	 *            The first step of the path to draw.
+	 */
+	public void drawMap(Graphics g, Path path, int first)
+	{
+		renderer().draw(g, path, first);
+	}
+
+	private MapRenderer renderer()
+	{
+		if (renderer == null)
+		{
+			renderer = new MapRenderer(this);
+		}
+		return renderer;
+	}
+
+	/**
+	 * Prints the map to the standard out, where each walkable node is simply
+	 * not printed, each non-walkable node is printed as a '#' (pound sign) and
+	 * each node that is in the path as a '@' (at sign).
+	 * 
+	 * @param path
+	 *            Optional parameter. List containing the nodes to be drawn as
+	 *            path nodes.
+	 */
+	public void printMap(List<Node> path)
+	{
+		for (int j = 0; j < height; j++)
+		{
+			for (int i = 0; i < width; i++)
+			{
+				if (!isWalkable(i, j))
+				{
+					System.out.print(" #");
+				}
+				else if (path.contains(new Node(i, j, true)))
+				{
+					System.out.print(" @");
+				}
+				else
+				{
+					System.out.print("  ");
+				}
+			}
+			System.out.print("\n");
+		}
+	}
+
+	/**
+	 * If the X and Y parameters are within the map boundaries, return the node
+	 * in the specific coordinates, null otherwise. The map does not keep node
+	 * objects around, so the returned node is a lightweight view of the map:
+	 * changing its walkability changes the map.
+	 * 
+	 * @param x
+	 *            Desired node's X coordinate.
+	 * @param y
+	 *            Desired node's Y coordinate.
+	 * @return The desired node if the parameters are valid, null otherwise.
+	 */
+	public Node getNode(int x, int y)
+	{
+		if (x >= 0 && x < width && y >= 0 && y < height)
+		{
+			return new Node(this, x, y);
+		}
+		else
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param x
+	 *            The node's X coordinate, within the map boundaries.
+	 * @param y
+	 *            The node's Y coordinate, within the map boundaries.
+	 * @return True if the node is not a wall and can be walked through, false
+	 *         otherwise.
+	 */
+	public boolean isWalkable(int x, int y)
+	{
+		return (walkable.get(y * wordsPerRow + (x >>> 6)) & (1L << x)) != 0;
+	}
+
+	/**
+	 * @param x
+	 *            The node's X coordinate, anywhere.
+	 * @param y
+	 *            The node's Y coordinate, anywhere.
+	 * @return True if the node is within the map boundaries and walkable.
+	 */
+	boolean isPassable(int x, int y)
+	{
+		return x >= 0 && x < width && y >= 0 && y < height && isWalkable(x, y);
+	}
+
+	/**
+	 * Reads the walkability of 64 consecutive nodes of a row at once. Nodes
+	 * outside of the map boundaries read as walls.
+	 * 
+	 * @param x
+	 *            The X coordinate of the first node, anywhere.
+	 * @param y
+	 *            The Y coordinate of the row, anywhere.
+	 * @return A word where bit i is set if the node at (x + i, y) is walkable.
+	 */
+	long rowBits(int x, int y)
+	{
+		if (y < 0 || y >= height)
+		{
+			return 0;
+		}
+		int word = x >> 6;
+		int offset = x & 63;
+		long bits = rowWord(y, word) >>> offset;
+		if (offset != 0)
+		{
+			bits |= rowWord(y, word + 1) << (64 - offset);
+		}
+		return bits;
+	}
+
+	/**
+	 * @return The given word of a row, or zero outside of the row.
+	 */
+	private long rowWord(int y, int word)
+	{
+		if (word < 0 || word >= wordsPerRow)
+		{
+			return 0;
+		}
+		return walkable.get(y * wordsPerRow + word);
+	}
+
+	/**
+	 * Sets if the node is not a wall and can be walked through, and notifies
+	 * the map's listeners if that changed anything.
+	 * 
+	 * @param x
+	 *            The node's X coordinate, within the map boundaries.
+	 * @param y
+	 *            The node's Y coordinate, within the map boundaries.
+	 * @param walkable
+	 *            Can you walk through this node?
+	 */
+	public synchronized void setWalkable(int x, int y, boolean walkable)
+	{
+		if (isWalkable(x, y) == walkable)
+		{
+			return;
+		}
+		int word = y * wordsPerRow + (x >>> 6);
+		if (walkable)
+		{
+			this.walkable.put(word, this.walkable.get(word) | 1L << x);
+		}
+		else
+		{
+			this.walkable.put(word, this.walkable.get(word) & ~(1L << x));
+		}
+		logChange(x, y);
+		wallModifications++;
+		ConnectedComponents components = this.components;
+		if (components != null)
+		{
+			components.nodeChanged(x, y, walkable);
+		}
+		for (MapListener listener : listeners)
+		{
+			listener.nodeChanged(this, x, y, walkable);
+		}
+	}
+
+	/**
+	 * @param x
+	 *            The node's X coordinate, within the map boundaries.
+	 * @param y
+	 *            The node's Y coordinate, within the map boundaries.
+	 * @return The cost of moving onto the node.
+	 */
+	public int getCost(int x, int y)
+	{
+		return cost(indexOf(x, y));
+	}
+
+	/**
+	 * Sets the cost of moving onto a node, like mud or a road, and notifies
+	 * the map's listeners if that changed anything. Every node costs
+	 * {@link Node#MOVEMENT_COST} until its cost is set.
+	 * 
+	 * @param x
+	 *            The node's X coordinate, within the map boundaries.
+	 * @param y
+	 *            The node's Y coordinate, within the map boundaries.
+	 * @param cost
+	 *            The new cost, from 1 to {@link #MAX_COST}.
+	 */
+	public synchronized void setCost(int x, int y, int cost)
+	{
+		if (changeCost(x, y, cost))
+		{
+			logChange(x, y);
+			boolean walkable = isWalkable(x, y);
+			for (MapListener listener : listeners)
+			{
+				listener.nodeChanged(this, x, y, walkable);
+			}
+		}
+	}
+
+	/**
+	 * Sets the cost of a node, creating the cost layer the first time a cost
+	 * differs from the default.
+	 * 
+	 * @return True if the cost changed.
+	 */
+	private boolean changeCost(int x, int y, int cost)
+	{
+		if (cost < 1 || cost > MAX_COST)
+		{
+			throw new IllegalArgumentException("Cost must be between 1 and " + MAX_COST + ": " + cost);
+		}
+		int node = indexOf(x, y);
+		int old = cost(node);
+		if (old == cost)
+		{
+			return false;
+		}
+		if (costs == null)
+		{
+			byte[] layer = new byte[width * height];
+			Arrays.fill(layer, (byte) Node.MOVEMENT_COST);
+			costCounts = new int[MAX_COST + 1];
+			costCounts[Node.MOVEMENT_COST] = layer.length;
+			costs = ByteBuffer.wrap(layer);
+		}
+		costs.put(node, (byte) cost);
+		costCounts[old]--;
+		costCounts[cost]++;
+		if (cost < minCost)
+		{
+			minCost = cost;
+		}
+		while (costCounts[minCost] == 0)
+		{
+			minCost++;
+		}
+		if (cost > maxCost)
+		{
+			maxCost = cost;
+		}
+		while (costCounts[maxCost] == 0)
+		{
+			maxCost--;
+		}
+		return true;
+	}
+
+	/**
+	 * @param node
+	 *            The node's index.
+	 * @return The cost of moving onto the node.
+	 */
+	int cost(int node)
+	{
+		ByteBuffer costs = this.costs;
+		return costs == null ? Node.MOVEMENT_COST : costs.get(node) & 0xFF;
+	}
+
+	/**
+	 * @return The lowest cost of any node, the factor of the Manhattan
+	 *         distance in {@link #heuristic(int, int)}.
+	 */
+	int getMinCost()
+	{
+		return minCost;
+	}
+
+	/**
+	 * @return True if {@link #heuristic(int, int)} currently uses landmark
+	 *         tables, which describe the map as it was when they were built.
+	 */
+	boolean usesLandmarks()
+	{
+		LandmarkHeuristic landmarks = this.landmarks;
+		return landmarks != null && !landmarks.isStale();
+	}
+
+	/**
+	 * @return True if no node's cost was ever set, so every node costs
+	 *         {@link Node#MOVEMENT_COST}.
+	 */
+	boolean isUniform()
+	{
+		return costs == null;
+	}
+
+	/**
+	 * @return The largest difference between the F scores of a node and of a
+	 *         node discovered from it: a step costs at most the highest cost,
+	 *         and a consistent heuristic drops by at most that much too.
+	 */
+	int getCostSpan()
+	{
+		return 2 * maxCost;
+	}
+
+	/**
+	 * @return The greatest common divisor of the costs of all nodes. Every
+	 *         path cost is a multiple of it.
+	 */
+	synchronized int getCostUnit()
+	{
+		if (costCounts == null)
+		{
+			return Node.MOVEMENT_COST;
+		}
+		int unit = 0;
+		for (int cost = minCost; cost <= maxCost; cost++)
+		{
+			if (costCounts[cost] > 0)
+			{
+				int a = unit;
+				int b = cost;
+				while (b != 0)
+				{
+					int remainder = a % b;
+					a = b;
+					b = remainder;
+				}
+				unit = a;
+			}
+		}
+		return unit;
+	}
+
+	/**
+	 * Makes plain A* and Jump Point Search use landmark tables on top of the
+	 * Manhattan distance. The tables are ignored while they are out of date.
+	 * Should not be called while searches are running.
+	 * 
+	 * @param landmarks
+	 *            Landmark tables built for this map, or null to only use the
+	 *            Manhattan distance again.
+	 */
+	public void setHeuristic(LandmarkHeuristic landmarks)
+	{
+		if (landmarks != null && landmarks.getMap() != this)
+		{
+			throw new IllegalArgumentException("Landmark tables were built for a different map");
+		}
+		this.landmarks = landmarks;
+	}
+
+	/**
+	 * Adds a listener to be notified whenever a node's walkability changes.
+	 * 
+	 * @param listener
+	 *            The listener to be added.
+	 */
+	public void addMapListener(MapListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stops notifying a listener about changes to the map.
+	 * 
+	 * @param listener
+	 *            The listener to be removed.
+	 */
+	public void removeMapListener(MapListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Tells in constant time if a path exists between two positions, without
+	 * searching for it.
+	 * 
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return True if both positions are walkable and connected, false
+	 *         otherwise.
+	 */
+	public boolean isReachable(int startX, int startY, int goalX, int goalY)
+	{
+		return isPassable(startX, startY) && isPassable(goalX, goalY)
+				&& components().isConnected(indexOf(startX, startY), indexOf(goalX, goalY));
+	}
+
+	/**
+	 * @param node
+	 *            The index of a node.
+	 * @return A number identifying the connected region of the node, between 1
+	 *         and the number of nodes plus one, or 0 for walls. Only stable
+	 *         until the map changes.
+	 */
+	int regionOf(int node)
+	{
+		return components().regionOf(node);
+	}
+
+	/**
+	 * @return The regions of the map, labeled now if this is the first time
+	 *         they are needed.
+	 */
+	private ConnectedComponents components()
+	{
+		ConnectedComponents components = this.components;
+		if (components == null)
+		{
+			// Changes are synchronized on the map too, so none is missed.
+			synchronized (this)
+			{
+				components = this.components;
+				if (components == null)
+				{
+					components = new ConnectedComponents(this);
+					this.components = components;
+				}
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * @return The width of the map, in columns.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * @return The height of the map, in rows.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * @param x
+	 *            A node's X coordinate.
+	 * @param y
+	 *            A node's Y coordinate.
+	 * @return The index of the node, counting row by row from the top left
+	 *         corner of the map.
+	 */
+	int indexOf(int x, int y)
+	{
+		return y * width + x;
+	}
+
+	/**
+	 * Tries to calculate a path from the start and end positions, using a
+	 * search context owned by the calling thread. Any number of threads may
+	 * call this method at the same time.
+	 * 
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return A read-only list containing all of the visited nodes if there
+	 *         is a solution, an empty list otherwise.
+	 */
+	public final List<Node> findPath(int startX, int startY, int goalX, int goalY)
+	{
+		return findPath(context(), startX, startY, goalX, goalY, SearchMode.ASTAR);
+	}
+
+	/**
+	 * Tries to calculate a path from the start and end positions with the
+	 * given search mode, using a search context owned by the calling thread.
+	 * Any number of threads may call this method at the same time.
+	 * 
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @param mode
+	 *            How to search for the path.
+	 * @return A read-only list containing all of the visited nodes if there
+	 *         is a solution, an empty list otherwise.
+	 */
+	public final List<Node> findPath(int startX, int startY, int goalX, int goalY, SearchMode mode)
+	{
+		return findPath(context(), startX, startY, goalX, goalY, mode);
+	}
+
+	/**
+	 * Tries to calculate a path from the start and end positions, keeping the
+	 * search state in the given context. The context must not be used by
+	 * another search at the same time.
+	 * 
+	 * @param context
+	 *            The scratch state for this search.
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return A read-only list containing all of the visited nodes if there
+	 *         is a solution, an empty list otherwise.
+	 */
+	public final List<Node> findPath(SearchContext context, int startX, int startY, int goalX, int goalY)
+	{
+		return findPath(context, startX, startY, goalX, goalY, SearchMode.ASTAR);
+	}
+
+	/**
+	 * Tries to calculate a path from the start and end positions with the
+	 * given search mode, keeping the search state in the given context. The
+	 * context must not be used by another search at the same time.
+	 * 
+	 * @param context
+	 *            The scratch state for this search.
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @param mode
+	 *            How to search for the path.
+	 * @return A read-only list containing all of the visited nodes if there
+	 *         is a solution, an empty list otherwise.
+	 */
+	public final List<Node> findPath(SearchContext context, int startX, int startY, int goalX, int goalY,
+			SearchMode mode)
+	{
+		return findPath(context, startX, startY, goalX, goalY, mode, new Path()).asList();
+	}
+
+	/**
+	 * Tries to calculate a path from the start and end positions, using a
+	 * search context owned by the calling thread, and writes it into a path
+	 * the caller keeps around. Any number of threads may call this method at
+	 * the same time, as long as each of them passes its own path.
+	 * 
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @param buffer
+	 *            The path to overwrite with the result, or null to create a
+	 *            new one.
+	 * @return The path, empty if there is no solution.
+	 */
+	public final Path findPath(int startX, int startY, int goalX, int goalY, Path buffer)
+	{
+		return findPath(context(), startX, startY, goalX, goalY, SearchMode.ASTAR, buffer);
+	}
+
+	/**
+	 * Tries to calculate a path from the start and end positions with the
+	 * given search mode, keeping the search state in the given context, and
+	 * writes it into a path the caller keeps around. Once the path's array is
+	 * big enough, the search allocates nothing. The context must not be used
+	 * by another search at the same time.
+	 * <p>
+	 * All other overloads end up here. While a flight recording is running,
+	 * slow queries are recorded as {@code game.astar.PathQuery} events.
+	 * 
+	 * @param context
+	 *            The scratch state for this search.
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @param mode
+	 *            How to search for the path.
+	 * @param buffer
+	 *            The path to overwrite with the result, or null to create a
+	 *            new one.
+	 * @return The path, empty if there is no solution.
+	 */
+	public final Path findPath(SearchContext context, int startX, int startY, int goalX, int goalY, SearchMode mode,
+			Path buffer)
+	{
+		SearchStatistics statistics = this.statistics;
+		boolean recording = statistics != null && statistics.isEnabled();
+		PathQueryEvent event = PathQueryEvent.isRecorded() ? new PathQueryEvent() : null;
+		if (!recording && event == null)
+		{
+			return searchPath(context, startX, startY, goalX, goalY, mode, buffer);
+		}
+		int generation = context.getGeneration();
+		if (event != null)
+		{
+			event.begin();
+		}
+		long started = System.nanoTime();
+		Path path = searchPath(context, startX, startY, goalX, goalY, mode, buffer);
+		long time = System.nanoTime() - started;
+		if (event != null)
+		{
+			event.end();
+		}
+
+		// Queries answered without searching leave the last search's counts.
+		SearchContext searched = context.getGeneration() != generation ? context : null;
+		if (recording)
+		{
+			statistics.record(searched, path.size(), time);
+		}
+		if (event != null && time >= PathQueryEvent.MIN_SEARCH_TIME && event.shouldCommit())
+		{
+			event.startX = startX;
+			event.startY = startY;
+			event.goalX = goalX;
+			event.goalY = goalY;
+			event.mode = mode.name();
+			event.expandedNodes = searched != null ? searched.getExpandedNodes() : 0;
+			event.pathLength = path.size();
+			event.searchTime = time;
+			event.commit();
+		}
+		return path;
+	}
+
+	private Path searchPath(SearchContext context, int startX, int startY, int goalX, int goalY, SearchMode mode,
+			Path buffer)
+	{
+		if (context.size() != width * height)
+		{
+			throw new IllegalArgumentException("Search context was created for a map of a different size");
+		}
+		Path path = buffer != null ? buffer : new Path();
+
+		// If our start position is the same as our goal position ...
+		if (startX == goalX && startY == goalY)
+		{
+			// Return an empty path, because we don't need to move at all.
+			path.reset(this, 0);
+			return path;
+		}
+
+		int start = indexOf(startX, startY);
+		int goal = indexOf(goalX, goalY);
+
+		// If the goal is walled off from the start, don't even search.
+		if (!components().isConnected(start, goal))
+		{
+			path.reset(this, 0);
+			return path;
+		}
+
+		boolean found;
+		switch (mode)
+		{
+		case JUMP_POINT:
+			// Jumps assume every node costs the same.
+			found = isUniform() ? JumpPointSearch.search(this, context, start, goal) : search(context, start, goal);
+			break;
+		case BIDIRECTIONAL:
+			findBidirectionalPath(context, start, goal, path);
+			return path;
+		default:
+			found = search(context, start, goal);
+			break;
+		}
+
+		if (found)
+		{
+			// Fill the path with all of the visited nodes.
+			int length = pathLength(context, start, goal);
+			path.reset(this, length);
+			calcPath(context, start, goal, path, length);
+		}
+		else
+		{
+			// No path exists, return an empty path.
+			path.reset(this, 0);
+		}
+		return path;
+	}
+
+	/**
+	 * Runs a bidirectional search and joins the forward half of the path with
+	 * the backward half.
+	 */
+	private void findBidirectionalPath(SearchContext context, int start, int goal, Path path)
+	{
+		int meet = BidirectionalSearch.search(this, context, start, goal);
+		if (meet < 0)
+		{
+			path.reset(this, 0);
+			return;
+		}
+		SearchContext reverse = context.reverse();
+		int forward = pathLength(context, start, meet);
+		int length = forward;
+		for (int node = reverse.getParent(meet); node >= 0; node = reverse.getParent(node))
+		{
+			length++;
+		}
+		path.reset(this, length);
+		calcPath(context, start, meet, path, forward);
+		int step = forward;
+		for (int node = reverse.getParent(meet); node >= 0; node = reverse.getParent(node))
+		{
+			path.set(step++, node);
+		}
+	}
+
+	/**
+	 * Sets the statistics recording the searches of this map.
+	 * 
+	 * @param statistics
+	 *            The statistics to record searches in, or null to stop
+	 *            recording.
+	 */
+	public void setStatistics(SearchStatistics statistics)
+	{
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return The statistics recording the searches of this map, or null.
+	 */
+	public SearchStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	/**
+	 * @return How many times a node's walkability or cost changed since the
+	 *         map was created.
+	 */
+	int getModifications()
+	{
+		return modifications;
+	}
+
+	/**
+	 * @return How many times a node's walkability changed since the map was
+	 *         created.
+	 */
+	int getWallModifications()
+	{
+		return wallModifications;
+	}
+
+	/**
+	 * Remembers the node of a change, then counts the change, so a reader
+	 * that saw the new count also sees the node.
+	 */
+	private void logChange(int x, int y)
+	{
+		changedNodes[modifications & (CHANGE_LOG_SIZE - 1)] = indexOf(x, y);
+		modifications++;
+	}
+
+	/**
+	 * @param modification
+	 *            The number of a change, counting from 0. Only the last
+	 *            {@link #CHANGE_LOG_SIZE} changes are remembered; check that
+	 *            the change is still among them after reading it.
+	 * @return The index of the node that changed.
+	 */
+	int getChangedNode(int modification)
+	{
+		return changedNodes[modification & (CHANGE_LOG_SIZE - 1)];
+	}
+
+	/**
+	 * Writes the path found by a search from its start to any node it closed
+	 * into a path.
+	 * 
+	 * @param context
+	 *            The context holding the search's parents.
+	 * @param start
+	 *            The index of the first node on the path.
+	 * @param end
+	 *            The index of the last node on the path.
+	 * @param path
+	 *            Receives all of the visited nodes, from the start (exclusive)
+	 *            to the end.
+	 */
+	void tracePath(SearchContext context, int start, int end, Path path)
+	{
+		int length = pathLength(context, start, end);
+		path.reset(this, length);
+		calcPath(context, start, end, path, length);
+	}
+
+	/**
+	 * @return The search context owned by the calling thread.
+	 */
+	SearchContext context()
+	{
+		SearchContext context = contexts.get();
+		if (context == null)
+		{
+			context = new SearchContext(this);
+			contexts.set(context);
+		}
+		return context;
+	}
+
+	/**
+	 * @return The search context shared by the flow fields of this map. A
+	 *         field locks it while building or repairing itself.
+	 */
+	synchronized SearchContext fieldContext()
+	{
+		if (fieldContext == null)
+		{
+			fieldContext = new SearchContext(this);
+		}
+		return fieldContext;
+	}
+
+	/**
+	 * Runs a plain A* search, leaving the parents of the visited nodes in the
+	 * context.
+	 * 
+	 * @param context
+	 *            The scratch state for this search.
+	 * @param start
+	 *            The index of the start node.
+	 * @param goal
+	 *            The index of the goal node.
+	 * @return True if the goal was reached, false if no path exists.
+	 */
+	private boolean search(SearchContext context, int start, int goal)
+	{
+		// Forget about the previous search and add starting node to open list.
+		// Costs are small integers, so a bucket queue can order them.
+		context.reset(getCostSpan());
+		context.open(start, 0, heuristic(start, goal), -1);
+
+		// This loop will be broken as soon as the current node position is
+		// equal to the goal position, or there are no nodes left to visit.
+		while (!context.isOpenListEmpty())
+		{
+			// Move the node with the lowest F score to the closed list.
+			int current = context.close();
+
+			// If the current node position is equal to the goal position ...
+			if (current == goal)
+			{
+				return true;
+			}
+
+			int[] adjacentNodes = context.adjacent;
+			int count = getAdjacent(current, context, adjacentNodes);
+			for (int i = 0; i < count; i++)
+			{
+				int adjacent = adjacentNodes[i];
+				// G costs of this node (costs from start to this node) when
+				// coming from the current node.
+				int g = context.getG(current) + cost(adjacent);
+				// If node is not in the open list ...
+				if (context.getState(adjacent) == SearchContext.UNVISITED)
+				{
+					// Add node to openList, with current node as its parent.
+					context.open(adjacent, g, heuristic(adjacent, goal), current);
+				}
+				// Else if the node is in the open list and the G score from
+				// current node is cheaper than previous costs ...
+				else if (g < context.getG(adjacent))
+				{
+					// Set current node as parent for this node and move it up
+					// in the open list, in place.
+					context.decrease(adjacent, g, current);
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Estimates the cost of the cheapest path between two nodes, using their
+	 * Manhattan distance or, if they are better informed, the landmark tables.
+	 * 
+	 * @param node
+	 *            The index of the node to estimate from.
+	 * @param goal
+	 *            The index of the final node on the path.
+	 * @return The estimated cost.
+	 */
+	int heuristic(int node, int goal)
+	{
+		int estimate = manhattan(node, goal);
+		LandmarkHeuristic landmarks = this.landmarks;
+		if (landmarks != null)
+		{
+			estimate = Math.max(estimate, landmarks.estimate(node, goal));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Estimates the cost of the cheapest path between two nodes, in either
+	 * direction, using their Manhattan distance times the lowest cost of any
+	 * node, so the estimate is never too high.
+	 * 
+	 * @param node
+	 *            The index of one node.
+	 * @param goal
+	 *            The index of the other node.
+	 * @return The estimated cost.
+	 */
+	int manhattan(int node, int goal)
+	{
+		int dx = Math.abs(node % width - goal % width);
+		int dy = Math.abs(node / width - goal / width);
+		return (dx + dy) * minCost;
+	}
+
+	/**
+	 * @return The number of nodes on the path found by a search, from the
+	 *         start (exclusive) to the goal.
+	 */
+	int pathLength(SearchContext context, int start, int goal)
+	{
+		int length = 0;
+		for (int node = goal; node != start; node = context.getParent(node))
+		{
+			int parent = context.getParent(node);
+			length += Math.abs(node % width - parent % width) + Math.abs(node / width - parent / width);
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the nodes on the path found by a search into the first entries of
+	 * a path.
+	 * 
+	 * @param context
+	 *            The context holding the search's parents.
+	 * @param start
+	 *            The index of the first node on the path.
+	 * @param goal
+	 *            The index of the last node on the path.
+	 * @param path
+	 *            Receives all of the visited nodes, from the start (exclusive)
+	 *            to the goal. Parents that are not adjacent to their child,
+	 *            like jump points, must be on the same row or column, and the
+	 *            nodes in between are filled in.
+	 * @param length
+	 *            The number of nodes on the path, as counted by
+	 *            {@link #pathLength(SearchContext, int, int)}.
+	 */
+	private void calcPath(SearchContext context, int start, int goal, Path path, int length)
+	{
+		int step = length;
+		int node = goal;
+		while (node != start)
+		{
+			int parent = context.getParent(node);
+			// One node along the row or column towards the parent.
+			int direction = Integer.signum(node / width - parent / width) * width
+					+ Integer.signum(node % width - parent % width);
+			for (int i = node; i != parent; i -= direction)
+			{
+				path.set(--step, i);
+			}
+			node = parent;
+		}
+	}
+
+	/**
+	 * @param node
+	 *            The index of the node to be checked for adjacent nodes.
+	 * @param context
+	 *            The context holding the search's closed list.
+	 * @param adjacentNodes
+	 *            Receives the indices of the adjacent nodes.
+	 * @return How many nodes adjacent to the given node exist, are walkable and
+	 *         are not already in the closed list.
+	 */
+	int getAdjacent(int node, SearchContext context, int[] adjacentNodes)
+	{
+		int count = 0;
+		int x = node % width;
+		int y = node / width;
+
+		// Check left node
+		if (x > 0 && isOpen(x - 1, y, context))
+		{
+			adjacentNodes[count++] = node - 1;
+		}
+
+		// Check right node
+		if (x < width - 1 && isOpen(x + 1, y, context))
+		{
+			adjacentNodes[count++] = node + 1;
+		}
+
+		// Check top node
+		if (y > 0 && isOpen(x, y - 1, context))
+		{
+			adjacentNodes[count++] = node - width;
+		}
+
+		// Check bottom node
+		if (y < height - 1 && isOpen(x, y + 1, context))
+		{
+			adjacentNodes[count++] = node + width;
+		}
+		return count;
+	}
+
+	/**
+	 * @return True if the node at the given coordinates is walkable and not
+	 *         already in the closed list.
+	 */
+	private boolean isOpen(int x, int y, SearchContext context)
+	{
+		return isWalkable(x, y) && context.getState(indexOf(x, y)) != SearchContext.CLOSED;
+	}
+
+}
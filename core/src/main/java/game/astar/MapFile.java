@@ -0,0 +1,463 @@
+package game.astar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes maps in a compact binary format that is memory mapped when
+ * loaded, so even huge maps load without parsing and keep their nodes off the
+ * heap.
+ * <p>
+ * A file holds, in little endian byte order:
+ * <ul>
+ * <li>a 64 byte header: the magic number, the format version, the width, the
+ * height and flags, padded with zeros;</li>
+ * <li>if the map has a cost layer, how many nodes have each cost from 0 to
+ * {@link Map#MAX_COST}, as 32 bit integers, so the map knows its lowest and
+ * highest cost without scanning;</li>
+ * <li>the walkability, one bit per node, each row padded to whole 64 bit
+ * words, bit i of a word set if the node at x = 64 * word + i is
+ * walkable;</li>
+ * <li>if the map has a cost layer, one unsigned byte per node, row by row.</li>
+ * </ul>
+ * Loaded maps are mapped copy-on-write: changing a node changes the map in
+ * memory, never the file. Maps loaded from files the process can not write
+ * are mapped read only, and can not be changed at all. Only the walkability
+ * and cost layers are mapped. The connected regions are labeled on the heap
+ * by the first search or reachability check, at four bytes per node, plus
+ * four more once a wall is placed.
+ * <p>
+ * Converts text grids from the command line:
+ *
+ * <pre>
+ * java game.astar.MapFile input.txt output.map
+ * </pre>
+ */
+public final class MapFile
+{
+
+	/**
+	 * "AMAP" in ASCII.
+	 */
+	private static final int MAGIC = 0x414D4150;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 64;
+
+	/**
+	 * Flag set if the file has a cost layer.
+	 */
+	private static final int HAS_COSTS = 1;
+
+	/**
+	 * The size of the cost counts following the header of files with a cost
+	 * layer.
+	 */
+	private static final int COUNTS_SIZE = 4 * (Map.MAX_COST + 1);
+
+	private MapFile()
+	{
+	}
+
+	/**
+	 * Maps a file into memory and creates a map backed by it.
+	 *
+	 * @param file
+	 *            The file to load.
+	 * @return The map.
+	 * @throws IOException
+	 *             If the file can not be read or is not a map file.
+	 */
+	public static Map load(File file) throws IOException
+	{
+		// Copy-on-write mappings need a channel open for writing, even though
+		// nothing is ever written to the file.
+		boolean writable = file.canWrite();
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+		RandomAccessFile input = new RandomAccessFile(file, writable ? "rw" : "r");
+		try
+		{
+			FileChannel channel = input.getChannel();
+			if (channel.size() < HEADER_SIZE)
+			{
+				throw new IOException("Not a map file: " + file);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC)
+			{
+				throw new IOException("Not a map file: " + file);
+			}
+			if (header.getInt(4) != VERSION)
+			{
+				throw new IOException("Unsupported map file version " + header.getInt(4) + ": " + file);
+			}
+			int width = header.getInt(8);
+			int height = header.getInt(12);
+			boolean hasCosts = (header.getInt(16) & HAS_COSTS) != 0;
+			if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE)
+			{
+				throw new IOException("Invalid map size " + width + "x" + height + ": " + file);
+			}
+
+			long offset = HEADER_SIZE;
+			int[] costCounts = null;
+			if (hasCosts)
+			{
+				ByteBuffer counts = channel.map(FileChannel.MapMode.READ_ONLY, offset, COUNTS_SIZE)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				costCounts = new int[Map.MAX_COST + 1];
+				counts.asIntBuffer().get(costCounts);
+				checkCostCounts(costCounts, width, height, file);
+				offset += COUNTS_SIZE;
+			}
+			long walkableSize = walkableSize(width, height);
+			long costsSize = hasCosts ? (long) width * height : 0;
+			if (channel.size() < offset + walkableSize + costsSize)
+			{
+				throw new IOException("Truncated map file: " + file);
+			}
+
+			LongBuffer walkable = map(channel, mode, offset, walkableSize).asLongBuffer();
+			ByteBuffer costs = hasCosts ? map(channel, mode, offset + walkableSize, costsSize) : null;
+			return new Map(width, height, walkable, costs, costCounts);
+		}
+		finally
+		{
+			// The mappings stay valid after the channel is closed.
+			input.close();
+		}
+	}
+
+	/**
+	 * Makes sure the cost counts of a file can describe its nodes: no node
+	 * costs 0, no count is negative, and together they count every node.
+	 */
+	private static void checkCostCounts(int[] costCounts, int width, int height, File file) throws IOException
+	{
+		long total = 0;
+		for (int cost = 0; cost < costCounts.length; cost++)
+		{
+			if (costCounts[cost] < 0 || cost == 0 && costCounts[cost] != 0)
+			{
+				throw new IOException("Corrupt cost counts: " + file);
+			}
+			total += costCounts[cost];
+		}
+		if (total != (long) width * height)
+		{
+			throw new IOException("Corrupt cost counts: " + file);
+		}
+	}
+
+	/**
+	 * Writes a map to a file.
+	 *
+	 * @param map
+	 *            The map to write.
+	 * @param file
+	 *            The file to write, replaced if it exists.
+	 * @throws IOException
+	 *             If the file can not be written.
+	 */
+	public static void write(Map map, File file) throws IOException
+	{
+		int width = map.getWidth();
+		int height = map.getHeight();
+		boolean hasCosts = !map.isUniform();
+		ByteBuffer[] layers = create(file, width, height, hasCosts);
+		LongBuffer walkable = layers[0].asLongBuffer();
+		int wordsPerRow = (width + 63) >>> 6;
+		for (int y = 0; y < height; y++)
+		{
+			for (int word = 0; word < wordsPerRow; word++)
+			{
+				walkable.put(y * wordsPerRow + word, map.rowBits(word << 6, y));
+			}
+		}
+		if (hasCosts)
+		{
+			int[] costCounts = new int[Map.MAX_COST + 1];
+			ByteBuffer costs = layers[1];
+			for (int node = 0; node < width * height; node++)
+			{
+				int cost = map.cost(node);
+				costs.put(node, (byte) cost);
+				costCounts[cost]++;
+			}
+			layers[2].asIntBuffer().put(costCounts);
+		}
+	}
+
+	/**
+	 * Writes a map given as arrays to a file, without creating the map.
+	 *
+	 * @param map
+	 *            The map array, where each zero is a walkable node and any
+	 *            other number is not.
+	 * @param costs
+	 *            The cost of moving onto each node, from 1 to
+	 *            {@link Map#MAX_COST}, with the same dimensions as the map
+	 *            array, or null if every node costs the same.
+	 * @param file
+	 *            The file to write, replaced if it exists.
+	 * @throws IOException
+	 *             If the file can not be written.
+	 * @throws IllegalArgumentException
+	 *             If the arrays are empty, their rows differ in length, or a
+	 *             cost is out of range. The file is left untouched.
+	 */
+	public static void write(int[][] map, int[][] costs, File file) throws IOException
+	{
+		int width = map.length == 0 ? 0 : map[0].length;
+		int height = map.length;
+		if (width == 0)
+		{
+			throw new IllegalArgumentException("Map must have at least one node");
+		}
+		// Everything is checked before the file is replaced.
+		checkRows(map, width, height, "map");
+		if (costs != null)
+		{
+			checkRows(costs, width, height, "costs");
+			for (int[] row : costs)
+			{
+				for (int cost : row)
+				{
+					if (cost < 1 || cost > Map.MAX_COST)
+					{
+						throw new IllegalArgumentException("Cost must be between 1 and " + Map.MAX_COST + ": " + cost);
+					}
+				}
+			}
+		}
+
+		ByteBuffer[] layers = create(file, width, height, costs != null);
+		LongBuffer walkable = layers[0].asLongBuffer();
+		int wordsPerRow = (width + 63) >>> 6;
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				if (map[y][x] == 0)
+				{
+					int word = y * wordsPerRow + (x >>> 6);
+					walkable.put(word, walkable.get(word) | 1L << x);
+				}
+			}
+		}
+		if (costs != null)
+		{
+			int[] costCounts = new int[Map.MAX_COST + 1];
+			for (int y = 0; y < height; y++)
+			{
+				for (int x = 0; x < width; x++)
+				{
+					int cost = costs[y][x];
+					layers[1].put(y * width + x, (byte) cost);
+					costCounts[cost]++;
+				}
+			}
+			layers[2].asIntBuffer().put(costCounts);
+		}
+	}
+
+	/**
+	 * Makes sure an array has the given number of rows, all of the given
+	 * length.
+	 */
+	private static void checkRows(int[][] array, int width, int height, String name)
+	{
+		if (array.length != height)
+		{
+			throw new IllegalArgumentException("The " + name + " array has " + array.length + " rows instead of "
+					+ height);
+		}
+		for (int y = 0; y < height; y++)
+		{
+			if (array[y].length != width)
+			{
+				throw new IllegalArgumentException("Row " + y + " of the " + name + " array has " + array[y].length
+						+ " nodes instead of " + width);
+			}
+		}
+	}
+
+	/**
+	 * Converts a text grid to a map file, one row at a time, so grids too big
+	 * for an array can be converted. Each line is a row, where '.', ' ' and
+	 * '0' are walkable nodes and any other character is a wall. Rows shorter
+	 * than the longest one are padded with walls.
+	 * <p>
+	 * The grid is read twice, once for its size and once for its nodes. If it
+	 * changes in between, the conversion fails and the map file is left
+	 * incomplete.
+	 *
+	 * @param text
+	 *            The text grid to read.
+	 * @param file
+	 *            The file to write, replaced if it exists.
+	 * @throws IOException
+	 *             If a file can not be read or written, or the text grid
+	 *             changed while it was converted.
+	 */
+	public static void convertText(File text, File file) throws IOException
+	{
+		int width = 0;
+		int height = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(text));
+		try
+		{
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				width = Math.max(width, line.length());
+				height++;
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		if (width == 0)
+		{
+			throw new IOException("Empty text grid: " + text);
+		}
+
+		LongBuffer walkable = create(file, width, height, false)[0].asLongBuffer();
+		int wordsPerRow = (width + 63) >>> 6;
+		reader = new BufferedReader(new FileReader(text));
+		try
+		{
+			for (int y = 0; y < height; y++)
+			{
+				String line = reader.readLine();
+				if (line == null || line.length() > width)
+				{
+					throw new IOException("Text grid changed while converting: " + text);
+				}
+				for (int x = 0; x < line.length(); x++)
+				{
+					char c = line.charAt(x);
+					if (c == '.' || c == ' ' || c == '0')
+					{
+						int word = y * wordsPerRow + (x >>> 6);
+						walkable.put(word, walkable.get(word) | 1L << x);
+					}
+				}
+			}
+			if (reader.readLine() != null)
+			{
+				throw new IOException("Text grid changed while converting: " + text);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Converts the text grid named by the first argument to the map file
+	 * named by the second.
+	 *
+	 * @param args
+	 *            The text grid and the map file.
+	 * @throws IOException
+	 *             If a file can not be read or written.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: java game.astar.MapFile input.txt output.map");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		convertText(new File(args[0]), new File(args[1]));
+		long converted = System.nanoTime();
+		Map map = load(new File(args[1]));
+		long loaded = System.nanoTime();
+		System.out.printf("%dx%d map: converted in %.1f ms, loaded in %.1f ms%n", map.getWidth(), map.getHeight(),
+				(converted - start) / 1e6, (loaded - converted) / 1e6);
+	}
+
+	/**
+	 * Creates a zeroed file of the right size for a map, writes its header and
+	 * maps its layers for writing.
+	 *
+	 * @return The walkability layer, the cost layer and the cost counts, the
+	 *         last two null if there are no costs.
+	 */
+	private static ByteBuffer[] create(File file, int width, int height, boolean hasCosts) throws IOException
+	{
+		if ((long) width * height > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Map too big: " + width + "x" + height);
+		}
+		long walkableSize = walkableSize(width, height);
+		long costsSize = hasCosts ? (long) width * height : 0;
+		long countsSize = hasCosts ? COUNTS_SIZE : 0;
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try
+		{
+			output.setLength(0);
+			output.setLength(HEADER_SIZE + countsSize + walkableSize + costsSize);
+			FileChannel channel = output.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, width);
+			header.putInt(12, height);
+			header.putInt(16, hasCosts ? HAS_COSTS : 0);
+
+			ByteBuffer[] layers = new ByteBuffer[3];
+			long offset = HEADER_SIZE;
+			if (hasCosts)
+			{
+				layers[2] = channel.map(FileChannel.MapMode.READ_WRITE, offset, countsSize)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				offset += countsSize;
+			}
+			layers[0] = channel.map(FileChannel.MapMode.READ_WRITE, offset, walkableSize)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (hasCosts)
+			{
+				layers[1] = channel.map(FileChannel.MapMode.READ_WRITE, offset + walkableSize, costsSize);
+			}
+			return layers;
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+
+	/**
+	 * Maps a layer of a file for reading.
+	 */
+	private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long size)
+			throws IOException
+	{
+		MappedByteBuffer buffer = channel.map(mode, offset, size);
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return The size of the walkability layer of a map, in bytes.
+	 */
+	private static long walkableSize(int width, int height)
+	{
+		return 8L * ((width + 63) >>> 6) * height;
+	}
+
+}
@@ -0,0 +1,25 @@
+package game.astar;
+
+/**
+ * Receives a notification whenever a node of a {@link Map} changes, so
+ * structures built on top of the map can update themselves.
+ */
+public interface MapListener
+{
+
+	/**
+	 * Called after a node became walkable or stopped being walkable, or its
+	 * cost changed. Only called when something actually changed.
+	 * 
+	 * @param map
+	 *            The map the node belongs to.
+	 * @param x
+	 *            The node's X coordinate.
+	 * @param y
+	 *            The node's Y coordinate.
+	 * @param walkable
+	 *            If the node is walkable now.
+	 */
+	void nodeChanged(Map map, int x, int y, boolean walkable);
+
+}
@@ -0,0 +1,238 @@
+package game.astar;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Draws a map for {@link Map#drawMap(Graphics, Path, int)}. The walls and the
+ * grid lines of the visible part of the map are drawn once into an image,
+ * which is only drawn again when the visible part moves or a node becomes
+ * walkable or a wall. Costs are not drawn, so changing them keeps the image.
+ * Every frame then costs one image copy plus one square per path node in
+ * view, however big the map is.
+ * <p>
+ * Only the visible part is cached because a whole large map would not fit in
+ * memory at full size: a 1000x1000 map is 32000 pixels wide. The visible part
+ * is the clip of the graphics drawn to, or the screen it draws to if there is
+ * no clip. Graphics of an image have no bounds of their own, so a clip must
+ * be set to draw a large map into an image.
+ */
+final class MapRenderer
+{
+
+	/**
+	 * The width and height of a node on screen, in pixels.
+	 */
+	private static final int TILE_SIZE = 32;
+
+	private static final Color FLOOR = Color.BLACK;
+	private static final Color WALL = Color.WHITE;
+	private static final Color GRID = Color.GRAY;
+	private static final Color PATH = Color.YELLOW;
+
+	/**
+	 * The map being drawn.
+	 */
+	private final Map map;
+
+	/**
+	 * The walls and grid lines of the cached nodes, or null.
+	 */
+	private BufferedImage background;
+
+	/**
+	 * The cached nodes, in node coordinates.
+	 */
+	private int left;
+	private int top;
+	private int right;
+	private int bottom;
+
+	/**
+	 * The map's count of walkability changes when the background was drawn.
+	 */
+	private int wallModifications;
+
+	/**
+	 * How many times the background was drawn.
+	 */
+	private int backgroundDraws;
+
+	MapRenderer(Map map)
+	{
+		this.map = map;
+	}
+
+	/**
+	 * Draws the visible part of the map, then the steps of a path from the
+	 * given step on.
+	 */
+	void draw(Graphics g, Path path, int first)
+	{
+		if (!prepare(g))
+		{
+			return;
+		}
+		if (path != null)
+		{
+			g.setColor(PATH);
+			for (int step = Math.max(first, 0); step < path.size(); step++)
+			{
+				fillNode(g, path.getX(step), path.getY(step));
+			}
+		}
+	}
+
+	/**
+	 * Draws the visible part of the map, then the nodes of a path.
+	 */
+	void draw(Graphics g, List<Node> path)
+	{
+		if (!prepare(g))
+		{
+			return;
+		}
+		if (path != null)
+		{
+			g.setColor(PATH);
+			for (Node node : path)
+			{
+				fillNode(g, node.getX(), node.getY());
+			}
+		}
+	}
+
+	/**
+	 * Draws the background of the visible part of the map, redrawing it first
+	 * if it moved or a wall changed.
+	 *
+	 * @return False if no part of the map is visible.
+	 */
+	private boolean prepare(Graphics g)
+	{
+		Rectangle view = visibleArea(g);
+		int newLeft = Math.max(0, view.x / TILE_SIZE);
+		int newTop = Math.max(0, view.y / TILE_SIZE);
+		int newRight = Math.min(map.getWidth(), (int) Math.ceil((view.x + (double) view.width) / TILE_SIZE));
+		int newBottom = Math.min(map.getHeight(), (int) Math.ceil((view.y + (double) view.height) / TILE_SIZE));
+		if (newLeft >= newRight || newTop >= newBottom)
+		{
+			return false;
+		}
+		int changes = map.getWallModifications();
+		if (background == null || changes != wallModifications || newLeft != left || newTop != top
+				|| newRight != right || newBottom != bottom)
+		{
+			left = newLeft;
+			top = newTop;
+			right = newRight;
+			bottom = newBottom;
+			wallModifications = changes;
+			drawBackground();
+		}
+		g.drawImage(background, left * TILE_SIZE, top * TILE_SIZE, null);
+		return true;
+	}
+
+	/**
+	 * @return How many times the background was drawn.
+	 */
+	int getBackgroundDraws()
+	{
+		return backgroundDraws;
+	}
+
+	private void drawBackground()
+	{
+		backgroundDraws++;
+		int width = (right - left) * TILE_SIZE;
+		int height = (bottom - top) * TILE_SIZE;
+		if (background == null || background.getWidth() != width || background.getHeight() != height)
+		{
+			background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics g = background.getGraphics();
+		g.setColor(FLOOR);
+		g.fillRect(0, 0, width, height);
+
+		// Walls, a run of them per rectangle.
+		g.setColor(WALL);
+		for (int y = top; y < bottom; y++)
+		{
+			int x = left;
+			while (x < right)
+			{
+				if (map.isWalkable(x, y))
+				{
+					x++;
+					continue;
+				}
+				int start = x;
+				while (x < right && !map.isWalkable(x, y))
+				{
+					x++;
+				}
+				g.fillRect((start - left) * TILE_SIZE, (y - top) * TILE_SIZE, (x - start) * TILE_SIZE, TILE_SIZE);
+			}
+		}
+
+		// Grid lines along the left and top edge of every node.
+		g.setColor(GRID);
+		for (int x = 0; x < width; x += TILE_SIZE)
+		{
+			g.drawLine(x, 0, x, height);
+		}
+		for (int y = 0; y < height; y += TILE_SIZE)
+		{
+			g.drawLine(0, y, width, y);
+		}
+		g.dispose();
+	}
+
+	/**
+	 * Fills a node inside its grid lines, if it is visible.
+	 */
+	private void fillNode(Graphics g, int x, int y)
+	{
+		if (x >= left && x < right && y >= top && y < bottom)
+		{
+			g.fillRect(x * TILE_SIZE + 1, y * TILE_SIZE + 1, TILE_SIZE - 1, TILE_SIZE - 1);
+		}
+	}
+
+	/**
+	 * @return The area that drawing to the graphics can change, in its own
+	 *         coordinates, or the whole map if that area is unbounded.
+	 */
+	private Rectangle visibleArea(Graphics g)
+	{
+		Rectangle clip = g.getClipBounds();
+		if (clip != null)
+		{
+			return clip;
+		}
+		Rectangle area = new Rectangle(0, 0, map.getWidth() * TILE_SIZE, map.getHeight() * TILE_SIZE);
+		if (g instanceof Graphics2D)
+		{
+			Graphics2D g2 = (Graphics2D) g;
+			try
+			{
+				Rectangle device = g2.getTransform().createInverse()
+						.createTransformedShape(g2.getDeviceConfiguration().getBounds()).getBounds();
+				return area.intersection(device);
+			}
+			catch (NoninvertibleTransformException e)
+			{
+				// Nothing can be drawn through this transform.
+				return new Rectangle();
+			}
+		}
+		return area;
+	}
+
+}
@@ -1,7 +1,9 @@
 package game.astar;
 
 /**
- * This class represents a simple node to be used for A* pathfinding.
+ * This class represents a simple node to be used for A* pathfinding. Nodes
+ * returned by a {@link Map} are views of one of its cells: their walkability
+ * is read from and written to the map itself.
  * 
  * @author Tiago "neteune" Dopke
  */
@@ -9,7 +11,8 @@ public class Node
 {
 
 	/**
-	 * How much it costs to move orthogonally from one node to another.
+	 * How much it costs to move orthogonally from one node to another, unless
+	 * the map sets another cost for the node moved onto.
 	 */
 	protected static final int MOVEMENT_COST = 10;
 
@@ -24,25 +27,15 @@ public class Node
 	private int y;
 
 	/**
-	 * If the node is not a wall and can be walked through.
+	 * If the node is not a wall and can be walked through. Only used by nodes
+	 * that are not a view of a map.
 	 */
 	private boolean walkable;
 
 	/**
-	 * Used for when getting the resulting path. The node prior to this node.
+	 * The map this node is a view of, or null.
 	 */
-	private Node parent;
-
-	/**
-	 * The cost of getting from the first node to this node.
-	 */
-	private int g;
-
-	/**
-	 * A heuristic that estimates the cost of the cheapest path from this node
-	 * to the goal.
-	 */
-	private int h;
+	private final Map map;
 
 	/**
 	 * Creates a simple node.
@@ -59,40 +52,24 @@ public class Node
 		this.x = x;
 		this.y = y;
 		this.walkable = walkable;
+		this.map = null;
 	}
 
 	/**
-	 * Sets the G score based on the parent's G score and the movement cost.
-	 * 
-	 * @param parent
-	 *            The node prior to this one.
-	 */
-	public void setG(Node parent)
-	{
-		g = (parent.getG() + MOVEMENT_COST);
-	}
-
-	/**
-	 * Calculates and return the G score, without changing it on the class.
-	 * 
-	 * @param parent
-	 *            The node prior to this one.
-	 * @return This node's G score.
-	 */
-	public int calculateG(Node parent)
-	{
-		return (parent.getG() + MOVEMENT_COST);
-	}
-
-	/**
-	 * Sets the H score based on the goal's position.
+	 * Creates a view of one of the map's cells.
 	 * 
-	 * @param goal
-	 *            The final node on the path.
+	 * @param map
+	 *            The map containing the node.
+	 * @param x
+	 *            The node's X position on the map.
+	 * @param y
+	 *            The node's Y position on the map.
 	 */
-	public void setH(Node goal)
+	Node(Map map, int x, int y)
 	{
-		h = (Math.abs(getX() - goal.getX()) + Math.abs(getY() - goal.getY())) * MOVEMENT_COST;
+		this.x = x;
+		this.y = y;
+		this.map = map;
 	}
 
 	/**
@@ -139,6 +116,10 @@ public class Node
 	 */
 	public boolean isWalkable()
 	{
+		if (map != null)
+		{
+			return map.isWalkable(x, y);
+		}
 		return walkable;
 	}
 
@@ -150,51 +131,14 @@ public class Node
 	 */
 	public void setWalkable(boolean walkable)
 	{
-		this.walkable = walkable;
-	}
-
-	/**
-	 * @return The node prior to this node.
-	 */
-	public Node getParent()
-	{
-		return parent;
-	}
-
-	/**
-	 * Sets the node prior to this one.
-	 * 
-	 * @param parent
-	 *            The node to be set as this node's parent.
-	 */
-	public void setParent(Node parent)
-	{
-		this.parent = parent;
-	}
-
-	/**
-	 * @return The G score + the H score.
-	 */
-	public int getF()
-	{
-		return g + h;
-	}
-
-	/**
-	 * @return The cost of getting from the first node to this node.
-	 */
-	public int getG()
-	{
-		return g;
-	}
-
-	/**
-	 * @return A heuristic that estimates the cost of the cheapest path from
-	 *         this node to the goal.
-	 */
-	public int getH()
-	{
-		return h;
+		if (map != null)
+		{
+			map.setWalkable(x, y, walkable);
+		}
+		else
+		{
+			this.walkable = walkable;
+		}
 	}
 
 	@Override
@@ -208,9 +152,16 @@ public class Node
 			return true;
 
 		Node n = (Node) o;
-		if (n.getX() == x && n.getY() == y && n.isWalkable() == walkable)
+		if (n.getX() == x && n.getY() == y && n.isWalkable() == isWalkable())
 			return true;
 		return false;
 	}
 
+	@Override
+	public int hashCode()
+	{
+		int hash = 31 * x + y;
+		return 31 * hash + (isWalkable() ? 1 : 0);
+	}
+
 }
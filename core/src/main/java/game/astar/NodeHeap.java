@@ -0,0 +1,202 @@
+package game.astar;
+
+/**
+ * An indexed binary min-heap of node indices, ordered by their F score and, on
+ * ties, by their H score. The heap remembers the position of each node it
+ * holds, so a node whose G score got cheaper can be moved up in place instead
+ * of being searched for.
+ */
+final class NodeHeap extends OpenList
+{
+
+	/**
+	 * The heap array, where the children of the node at position i are at
+	 * positions 2i + 1 and 2i + 2.
+	 */
+	private final int[] heap;
+
+	/**
+	 * The position of each node in the heap array, by node index. Only valid
+	 * for nodes that are currently in the heap.
+	 */
+	private final int[] position;
+
+	/**
+	 * The G scores the heap is ordered by, by node index.
+	 */
+	private final int[] g;
+
+	/**
+	 * The H scores the heap is ordered by, by node index.
+	 */
+	private final int[] h;
+
+	/**
+	 * How many nodes are currently stored in the heap.
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty heap.
+	 *
+	 * @param capacity
+	 *            The number of nodes on the map. Every node can be in the heap
+	 *            at most once.
+	 * @param g
+	 *            The G scores, by node index.
+	 * @param h
+	 *            The H scores, by node index.
+	 */
+	NodeHeap(int capacity, int[] g, int[] h)
+	{
+		this.heap = new int[capacity];
+		this.position = new int[capacity];
+		this.g = g;
+		this.h = h;
+		this.size = 0;
+	}
+
+	/**
+	 * @return True if there are no nodes in the heap, false otherwise.
+	 */
+	@Override
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @return How many nodes are currently stored in the heap.
+	 */
+	@Override
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The index of the node with the lowest F score, without removing
+	 *         it. The heap must not be empty.
+	 */
+	@Override
+	int peek()
+	{
+		return heap[0];
+	}
+
+	/**
+	 * Adds a node to the heap.
+	 *
+	 * @param node
+	 *            The index of the node to be added. Its G and H scores must
+	 *            already be set.
+	 */
+	@Override
+	void add(int node)
+	{
+		heap[size] = node;
+		position[node] = size;
+		size++;
+		siftUp(size - 1);
+	}
+
+	/**
+	 * Removes and returns the node with the lowest F score.
+	 *
+	 * @return The index of the cheapest node in the heap.
+	 */
+	@Override
+	int poll()
+	{
+		int first = heap[0];
+		size--;
+		if (size > 0)
+		{
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return first;
+	}
+
+	/**
+	 * Restores the heap order after the F score of a node already in the heap
+	 * got lower.
+	 *
+	 * @param node
+	 *            The index of the node whose score decreased.
+	 */
+	@Override
+	void decreaseKey(int node)
+	{
+		siftUp(position[node]);
+	}
+
+	/**
+	 * Removes every node from the heap.
+	 */
+	@Override
+	void clear()
+	{
+		size = 0;
+	}
+
+	private void siftUp(int i)
+	{
+		int node = heap[i];
+		while (i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+			if (!less(node, heap[parent]))
+			{
+				break;
+			}
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = node;
+		position[node] = i;
+	}
+
+	private void siftDown(int i)
+	{
+		int node = heap[i];
+		int half = size >>> 1;
+		while (i < half)
+		{
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && less(heap[right], heap[child]))
+			{
+				child = right;
+			}
+			if (!less(heap[child], node))
+			{
+				break;
+			}
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = node;
+		position[node] = i;
+	}
+
+	/**
+	 * Lower F comes first. On equal F, the node closer to the goal (lower H)
+	 * comes first, which keeps the search from fanning out over equally good
+	 * nodes.
+	 */
+	private boolean less(int a, int b)
+	{
+		int fa = g[a] + h[a];
+		int fb = g[b] + h[b];
+		if (fa != fb)
+		{
+			return fa < fb;
+		}
+		return h[a] < h[b];
+	}
+
+}
@@ -0,0 +1,57 @@
+package game.astar;
+
+/**
+ * The open list of a search: the discovered nodes still to be expanded, by node
+ * index, handing out the one with the lowest F score first. The scores are
+ * read from the arrays of the owning {@link SearchContext}.
+ */
+abstract class OpenList
+{
+
+	/**
+	 * @return True if there are no nodes in the list, false otherwise.
+	 */
+	abstract boolean isEmpty();
+
+	/**
+	 * @return How many nodes are currently stored in the list.
+	 */
+	abstract int size();
+
+	/**
+	 * @return The index of the node with the lowest F score, without removing
+	 *         it. The list must not be empty.
+	 */
+	abstract int peek();
+
+	/**
+	 * Adds a node to the list.
+	 *
+	 * @param node
+	 *            The index of the node to be added. Its G and H scores must
+	 *            already be set.
+	 */
+	abstract void add(int node);
+
+	/**
+	 * Removes and returns the node with the lowest F score.
+	 *
+	 * @return The index of the cheapest node in the list.
+	 */
+	abstract int poll();
+
+	/**
+	 * Restores the list order after the F score of a node already in the list
+	 * got lower.
+	 *
+	 * @param node
+	 *            The index of the node whose score decreased.
+	 */
+	abstract void decreaseKey(int node);
+
+	/**
+	 * Removes every node from the list.
+	 */
+	abstract void clear();
+
+}
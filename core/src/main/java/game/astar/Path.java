@@ -0,0 +1,164 @@
+package game.astar;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A path found on a {@link Map}: the indices of its nodes, from the start
+ * (exclusive) to the goal, in a plain int array. After going through
+ * {@link PathSmoother}, only some of the nodes are left as waypoints.
+ * <p>
+ * Callers can not change a path. The only way its contents change is by
+ * passing it to {@link Map#findPath(SearchContext, int, int, int, int,
+ * SearchMode, Path)} or to {@link PathSmoother} as the buffer for the next
+ * result, which reuses its array once it is big enough, so a caller that keeps
+ * passing the same path searches without allocating anything.
+ */
+public final class Path
+{
+
+	/**
+	 * The indices of the nodes on the path. Only the first {@link #length}
+	 * entries are used.
+	 */
+	private int[] nodes;
+
+	/**
+	 * The number of nodes on the path.
+	 */
+	private int length;
+
+	/**
+	 * The map the path was found on, or null while the path was never filled.
+	 */
+	private Map map;
+
+	/**
+	 * Creates an empty path, to be passed to a search as its buffer.
+	 */
+	public Path()
+	{
+		this.nodes = new int[16];
+	}
+
+	/**
+	 * Empties the path and makes room for the given number of nodes.
+	 */
+	void reset(Map map, int length)
+	{
+		if (nodes.length < length)
+		{
+			nodes = new int[Math.max(length, nodes.length * 2)];
+		}
+		this.map = map;
+		this.length = length;
+	}
+
+	/**
+	 * Drops the nodes after the given number of nodes.
+	 */
+	void truncate(int length)
+	{
+		this.length = length;
+	}
+
+	/**
+	 * @return The map the path was found on, or null if it was never filled.
+	 */
+	Map getMap()
+	{
+		return map;
+	}
+
+	/**
+	 * Sets the index of a node of the path.
+	 */
+	void set(int step, int node)
+	{
+		nodes[step] = node;
+	}
+
+	/**
+	 * @return The number of nodes on the path, not counting the start.
+	 */
+	public int size()
+	{
+		return length;
+	}
+
+	/**
+	 * @return True if the path has no nodes, either because there is no path
+	 *         or because the start already is the goal.
+	 */
+	public boolean isEmpty()
+	{
+		return length == 0;
+	}
+
+	/**
+	 * @param step
+	 *            The node's position on the path, from 0 to {@link #size()} - 1.
+	 * @return The node's X coordinate.
+	 */
+	public int getX(int step)
+	{
+		return index(step) % map.getWidth();
+	}
+
+	/**
+	 * @param step
+	 *            The node's position on the path, from 0 to {@link #size()} - 1.
+	 * @return The node's Y coordinate.
+	 */
+	public int getY(int step)
+	{
+		return index(step) / map.getWidth();
+	}
+
+	/**
+	 * @param step
+	 *            The node's position on the path, from 0 to {@link #size()} - 1.
+	 * @return The node's index on the map.
+	 */
+	int index(int step)
+	{
+		if (step < 0 || step >= length)
+		{
+			throw new IndexOutOfBoundsException("Step " + step + " of a path of " + length + " nodes");
+		}
+		return nodes[step];
+	}
+
+	/**
+	 * Creates a read-only list view of the path for callers working with
+	 * nodes. Each call to its <code>get</code> method creates a node view of
+	 * the map; nothing is copied up front. The view follows the path if it is
+	 * reused as a buffer.
+	 * 
+	 * @return A list of the nodes on the path.
+	 */
+	public List<Node> asList()
+	{
+		return new NodeList();
+	}
+
+	private final class NodeList extends AbstractList<Node> implements RandomAccess
+	{
+
+		@Override
+		public Node get(int step)
+		{
+			int node = index(step);
+			return new Node(map, node % map.getWidth(), node / map.getWidth());
+		}
+
+		@Override
+		public int size()
+		{
+			return length;
+		}
+
+	}
+
+}
@@ -0,0 +1,495 @@
+package game.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * An opt-in cache in front of {@link Map#findPath(int, int, int, int)}, for
+ * agents that keep asking for the same routes.
+ * <p>
+ * Paths are stored compactly as node indices, keyed by their start and goal,
+ * and the least recently used ones are evicted once the cache is full. The
+ * cache listens to the map: when a node changes, only the cached paths passing
+ * through or next to it are dropped. Opening a wall elsewhere can make a cached
+ * path longer than the new shortest one, but never invalid. Empty results are
+ * not cached, since the map already rejects unreachable goals in constant
+ * time.
+ * <p>
+ * To find the paths near a changed node without an index entry per node, the
+ * map is split into blocks of 16x16 nodes, and each block lists the cached
+ * paths entering it. A change only scans the paths listed in the blocks of the
+ * node and its neighbours. The capacity is counted in units of one node index,
+ * four bytes: each path is charged for its nodes and a fixed amount for its key
+ * and bookkeeping, and the block lists are charged for their whole arrays. The
+ * cache thus holds at most about four bytes per unit of capacity, plus a table
+ * of one reference per block of the map.
+ */
+public class PathCache implements MapListener
+{
+
+	/**
+	 * The width and height of a block, as a power of two.
+	 */
+	private static final int BLOCK_SHIFT = 4;
+
+	/**
+	 * The capacity charged for each path besides its nodes and block entries:
+	 * its key, its map entry, its record and the header of its node array, in
+	 * units of four bytes.
+	 */
+	private static final int PATH_OVERHEAD = 32;
+
+	/**
+	 * The size of an array's header, in units of four bytes.
+	 */
+	private static final int ARRAY_HEADER = 4;
+
+	/**
+	 * The map whose paths are cached.
+	 */
+	private final Map map;
+
+	/**
+	 * The most capacity the cached paths may be charged for, in units of four
+	 * bytes.
+	 */
+	private final int capacity;
+
+	/**
+	 * The cached paths, by (start << 32 | goal), least recently used first.
+	 */
+	private final LinkedHashMap<Long, CachedPath> paths = new LinkedHashMap<Long, CachedPath>(16, 0.75f, true);
+
+	/**
+	 * The number of blocks in a row of the map.
+	 */
+	private final int blockColumns;
+
+	/**
+	 * The slots of the cached paths entering each block, by block index, or
+	 * null if there are none. The first element of a list is its length.
+	 */
+	private final int[][] blocks;
+
+	/**
+	 * The cached paths by slot, and the slots that are free again.
+	 */
+	private CachedPath[] slots = new CachedPath[16];
+	private int[] freeSlots = new int[16];
+	private int freeCount;
+	private int slotCount;
+
+	/**
+	 * The number of nodes stored over all cached paths.
+	 */
+	private long cachedNodes;
+
+	/**
+	 * The capacity the cached paths and the block lists are charged for.
+	 */
+	private long used;
+
+	/**
+	 * Incremented whenever the map changes, so paths searched while the map
+	 * was changing are not cached.
+	 */
+	private int version;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Creates an empty cache and starts listening to the map's changes.
+	 *
+	 * @param map
+	 *            The map whose paths are cached.
+	 * @param capacity
+	 *            How much the cache may hold, in units of four bytes. A path
+	 *            of n nodes takes a little more than n units.
+	 */
+	public PathCache(Map map, int capacity)
+	{
+		this.map = map;
+		this.capacity = capacity;
+		this.blockColumns = ((map.getWidth() - 1) >> BLOCK_SHIFT) + 1;
+		this.blocks = new int[blockColumns * (((map.getHeight() - 1) >> BLOCK_SHIFT) + 1)][];
+		map.addMapListener(this);
+	}
+
+	/**
+	 * Stops listening to the map's changes and forgets every cached path.
+	 */
+	public synchronized void dispose()
+	{
+		map.removeMapListener(this);
+		clear();
+	}
+
+	/**
+	 * Returns the cached path between two positions, or searches for it and
+	 * caches the result.
+	 *
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return A read-only list containing all of the visited nodes if there
+	 *         is a solution, an empty list otherwise.
+	 */
+	public List<Node> findPath(int startX, int startY, int goalX, int goalY)
+	{
+		int start = map.indexOf(startX, startY);
+		int goal = map.indexOf(goalX, goalY);
+		Long key = ((long) start << 32) | goal;
+
+		int searchedVersion;
+		synchronized (this)
+		{
+			CachedPath cached = paths.get(key);
+			if (cached != null)
+			{
+				hits++;
+				return toList(cached.nodes);
+			}
+			misses++;
+			searchedVersion = version;
+		}
+
+		Path path = map.findPath(startX, startY, goalX, goalY, new Path());
+		if (path.isEmpty())
+		{
+			return path.asList();
+		}
+
+		int[] nodes = new int[path.size() + 1];
+		nodes[0] = start;
+		for (int i = 0; i < path.size(); i++)
+		{
+			nodes[i + 1] = path.index(i);
+		}
+
+		synchronized (this)
+		{
+			if (searchedVersion == version && nodes.length + PATH_OVERHEAD <= capacity && !paths.containsKey(key))
+			{
+				put(key, nodes);
+			}
+		}
+		return path.asList();
+	}
+
+	@Override
+	public synchronized void nodeChanged(Map map, int x, int y, boolean walkable)
+	{
+		version++;
+		int[] near = new int[5];
+		int count = 0;
+		near[count++] = map.indexOf(x, y);
+		if (x > 0)
+		{
+			near[count++] = map.indexOf(x - 1, y);
+		}
+		if (x < map.getWidth() - 1)
+		{
+			near[count++] = map.indexOf(x + 1, y);
+		}
+		if (y > 0)
+		{
+			near[count++] = map.indexOf(x, y - 1);
+		}
+		if (y < map.getHeight() - 1)
+		{
+			near[count++] = map.indexOf(x, y + 1);
+		}
+
+		// Every node of a path passing through or next to the changed node is
+		// one of these, so the path is listed in the block of one of them.
+		List<CachedPath> stale = new ArrayList<CachedPath>();
+		int[] scanned = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			int block = blockOf(near[i]);
+			scanned[i] = block;
+			if (blocks[block] == null || contains(scanned, i, block))
+			{
+				continue;
+			}
+			int[] list = blocks[block];
+			for (int j = 1; j <= list[0]; j++)
+			{
+				CachedPath cached = slots[list[j]];
+				if (!stale.contains(cached) && passesBy(cached.nodes, near, count))
+				{
+					stale.add(cached);
+				}
+			}
+		}
+		for (CachedPath cached : stale)
+		{
+			paths.remove(cached.key);
+			unindex(cached);
+			invalidations++;
+		}
+	}
+
+	/**
+	 * Forgets every cached path. The counters are kept.
+	 */
+	public synchronized void clear()
+	{
+		paths.clear();
+		Arrays.fill(blocks, null);
+		Arrays.fill(slots, null);
+		freeCount = 0;
+		slotCount = 0;
+		cachedNodes = 0;
+		used = 0;
+	}
+
+	/**
+	 * @return How many queries were answered from the cache.
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return How many queries had to be searched.
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return How many paths were dropped to make room for newer ones.
+	 */
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * @return How many paths were dropped because a node on or next to them
+	 *         changed.
+	 */
+	public synchronized long getInvalidations()
+	{
+		return invalidations;
+	}
+
+	/**
+	 * @return How many paths are currently cached.
+	 */
+	public synchronized int size()
+	{
+		return paths.size();
+	}
+
+	/**
+	 * @return How many nodes are stored over all cached paths.
+	 */
+	public synchronized long getCachedNodes()
+	{
+		return cachedNodes;
+	}
+
+	/**
+	 * Sets every counter back to zero.
+	 */
+	public synchronized void resetStatistics()
+	{
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		invalidations = 0;
+	}
+
+	private void put(Long key, int[] nodes)
+	{
+		CachedPath cached = new CachedPath(key, nodes, takeSlot());
+		slots[cached.slot] = cached;
+		paths.put(key, cached);
+
+		for (int node : nodes)
+		{
+			addToBlock(blockOf(node), cached.slot);
+		}
+		cachedNodes += nodes.length;
+		used += nodes.length + PATH_OVERHEAD;
+
+		Iterator<CachedPath> eldest = paths.values().iterator();
+		while (used > capacity && eldest.hasNext())
+		{
+			CachedPath entry = eldest.next();
+			eldest.remove();
+			unindex(entry);
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes a path that is no longer in {@link #paths} from the block lists
+	 * and frees its slot.
+	 */
+	private void unindex(CachedPath cached)
+	{
+		int previous = -1;
+		for (int node : cached.nodes)
+		{
+			int block = blockOf(node);
+			if (block != previous)
+			{
+				removeFromBlock(block, cached.slot);
+				previous = block;
+			}
+		}
+		slots[cached.slot] = null;
+		if (freeCount == freeSlots.length)
+		{
+			freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		}
+		freeSlots[freeCount++] = cached.slot;
+		cachedNodes -= cached.nodes.length;
+		used -= cached.nodes.length + PATH_OVERHEAD;
+	}
+
+	private int takeSlot()
+	{
+		if (freeCount > 0)
+		{
+			return freeSlots[--freeCount];
+		}
+		if (slotCount == slots.length)
+		{
+			slots = Arrays.copyOf(slots, slotCount * 2);
+		}
+		return slotCount++;
+	}
+
+	/**
+	 * Lists a path in a block, unless it is already the last one listed
+	 * there. A path being added is listed last in every block it entered, so
+	 * it is never listed twice.
+	 */
+	private void addToBlock(int block, int slot)
+	{
+		int[] list = blocks[block];
+		if (list == null)
+		{
+			list = new int[2];
+			blocks[block] = list;
+			used += list.length + ARRAY_HEADER;
+		}
+		int length = list[0];
+		if (length > 0 && list[length] == slot)
+		{
+			return;
+		}
+		if (length + 1 == list.length)
+		{
+			used += list.length;
+			list = Arrays.copyOf(list, list.length * 2);
+			blocks[block] = list;
+		}
+		list[length + 1] = slot;
+		list[0] = length + 1;
+	}
+
+	private void removeFromBlock(int block, int slot)
+	{
+		int[] list = blocks[block];
+		if (list == null)
+		{
+			return;
+		}
+		int length = list[0];
+		for (int i = 1; i <= length; i++)
+		{
+			if (list[i] == slot)
+			{
+				list[i] = list[length];
+				list[0] = length - 1;
+				if (length == 1)
+				{
+					blocks[block] = null;
+					used -= list.length + ARRAY_HEADER;
+				}
+				return;
+			}
+		}
+	}
+
+	private int blockOf(int node)
+	{
+		int x = node % map.getWidth();
+		int y = node / map.getWidth();
+		return (y >> BLOCK_SHIFT) * blockColumns + (x >> BLOCK_SHIFT);
+	}
+
+	private static boolean contains(int[] values, int count, int value)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if (values[i] == value)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean passesBy(int[] nodes, int[] near, int count)
+	{
+		for (int node : nodes)
+		{
+			if (contains(near, count, node))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<Node> toList(int[] nodes)
+	{
+		Path path = new Path();
+		path.reset(map, nodes.length - 1);
+		for (int i = 1; i < nodes.length; i++)
+		{
+			path.set(i - 1, nodes[i]);
+		}
+		return path.asList();
+	}
+
+	/**
+	 * A cached path: the start node's index followed by the indices of the
+	 * nodes returned by the search.
+	 */
+	private static final class CachedPath
+	{
+
+		final Long key;
+		final int[] nodes;
+		final int slot;
+
+		CachedPath(Long key, int[] nodes, int slot)
+		{
+			this.key = key;
+			this.nodes = nodes;
+			this.slot = slot;
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package game.astar;
+
+/**
+ * Walks along a {@link Path} one node at a time, for agents following it. A
+ * cursor can be pointed at new paths any number of times.
+ */
+public final class PathCursor
+{
+
+	/**
+	 * The path being followed, or null.
+	 */
+	private Path path;
+
+	/**
+	 * The position of the next node on the path.
+	 */
+	private int step;
+
+	/**
+	 * Starts following a path from its first node.
+	 * 
+	 * @param path
+	 *            The path to follow, or null to stop following any.
+	 */
+	public void follow(Path path)
+	{
+		this.path = path;
+		this.step = 0;
+	}
+
+	/**
+	 * @return True if there are nodes of the path left to walk to.
+	 */
+	public boolean hasNext()
+	{
+		return path != null && step < path.size();
+	}
+
+	/**
+	 * @return The X coordinate of the next node. There must be one.
+	 */
+	public int getNextX()
+	{
+		return path.getX(step);
+	}
+
+	/**
+	 * @return The Y coordinate of the next node. There must be one.
+	 */
+	public int getNextY()
+	{
+		return path.getY(step);
+	}
+
+	/**
+	 * Moves on to the node after the next one, once the next one was reached.
+	 */
+	public void advance()
+	{
+		step++;
+	}
+
+	/**
+	 * @return How many nodes of the path were walked so far.
+	 */
+	public int getStep()
+	{
+		return step;
+	}
+
+}
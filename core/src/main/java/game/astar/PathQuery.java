@@ -0,0 +1,64 @@
+package game.astar;
+
+/**
+ * A request for a path between two positions, as used by batch searches.
+ */
+public final class PathQuery
+{
+
+	private final int startX;
+	private final int startY;
+	private final int goalX;
+	private final int goalY;
+
+	/**
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 */
+	public PathQuery(int startX, int startY, int goalX, int goalY)
+	{
+		this.startX = startX;
+		this.startY = startY;
+		this.goalX = goalX;
+		this.goalY = goalY;
+	}
+
+	/**
+	 * @return The X coordinate of the start position.
+	 */
+	public int getStartX()
+	{
+		return startX;
+	}
+
+	/**
+	 * @return The Y coordinate of the start position.
+	 */
+	public int getStartY()
+	{
+		return startY;
+	}
+
+	/**
+	 * @return The X coordinate of the goal position.
+	 */
+	public int getGoalX()
+	{
+		return goalX;
+	}
+
+	/**
+	 * @return The Y coordinate of the goal position.
+	 */
+	public int getGoalY()
+	{
+		return goalY;
+	}
+
+}
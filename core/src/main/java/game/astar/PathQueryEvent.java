@@ -0,0 +1,105 @@
+package game.astar;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for one call to
+ * {@link Map#findPath(SearchContext, int, int, int, int, SearchMode, Path)},
+ * or for one {@link PathSearch} from its start until it found its path or
+ * failed. Only queries that spent at least {@link #MIN_SEARCH_TIME} searching
+ * are recorded. {@link PathQueryReport} lists the slowest ones of a recording.
+ * <p>
+ * The duration of a {@link PathSearch} spans every tick it was spread over,
+ * including the ones it spent waiting for a context, while its search time
+ * only counts its steps. The threshold of the event applies to the duration,
+ * so it is 0 and the search time is checked instead. Each step of a search
+ * is recorded as a {@link PathSearchStepEvent} with the search's ID.
+ */
+@Name(PathQueryEvent.NAME)
+@Label("Path Query")
+@Category({ "Game", "Pathfinding" })
+@Description("A search for a path that took longer than the threshold")
+@Threshold("0 ms")
+@StackTrace(false)
+final class PathQueryEvent extends Event
+{
+
+	/**
+	 * The name of the event in recordings.
+	 */
+	static final String NAME = "game.astar.PathQuery";
+
+	/**
+	 * The least time a query has to spend searching to be recorded, in
+	 * nanoseconds.
+	 */
+	static final long MIN_SEARCH_TIME = 1000000;
+
+	/**
+	 * The type of the event, looked up once the flight recorder is running.
+	 */
+	private static volatile EventType type;
+
+	@Label("Start X")
+	int startX;
+
+	@Label("Start Y")
+	int startY;
+
+	@Label("Goal X")
+	int goalX;
+
+	@Label("Goal Y")
+	int goalY;
+
+	@Label("Mode")
+	String mode;
+
+	@Label("Expanded Nodes")
+	@Description("How many nodes the search moved to the closed list")
+	int expandedNodes;
+
+	@Label("Path Length")
+	@Description("How many nodes the path found has, 0 if there is none")
+	int pathLength;
+
+	@Label("Search Time")
+	@Description("The time spent searching, less than the duration if the search was spread over several steps")
+	@Timespan(Timespan.NANOSECONDS)
+	long searchTime;
+
+	@Label("Search ID")
+	@Description("The ID of a search spread over several steps, shared with its step events, 0 for single calls")
+	long searchId;
+
+	/**
+	 * Checked before creating an event, so queries allocate nothing while no
+	 * recording wants them. The flight recorder is not started just to ask.
+	 *
+	 * @return True if the event is enabled in a running recording.
+	 */
+	static boolean isRecorded()
+	{
+		if (!FlightRecorder.isInitialized())
+		{
+			return false;
+		}
+		EventType type = PathQueryEvent.type;
+		if (type == null)
+		{
+			type = EventType.getEventType(PathQueryEvent.class);
+			PathQueryEvent.type = type;
+		}
+		return type.isEnabled();
+	}
+
+}
@@ -0,0 +1,235 @@
+package game.astar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes a Java Flight Recorder recording of the game: the path queries
+ * that spent the most time searching, and the slowest game ticks together
+ * with the path queries that ran during each of them. A query spread over
+ * several ticks by a {@link PathSearch} is listed with every tick one of its
+ * steps ran in, and each tick is only charged for those steps.
+ * <p>
+ * Usage: {@code java game.astar.PathQueryReport recording.jfr [count]},
+ * where count is how many queries and ticks to list, 10 by default.
+ */
+public class PathQueryReport
+{
+
+	/**
+	 * The name of the game loop's tick event.
+	 */
+	static final String TICK_EVENT = "game.Tick";
+
+	private static final Comparator<RecordedEvent> SLOWEST_SEARCH_FIRST = new Comparator<RecordedEvent>()
+	{
+
+		@Override
+		public int compare(RecordedEvent a, RecordedEvent b)
+		{
+			return b.getDuration("searchTime").compareTo(a.getDuration("searchTime"));
+		}
+
+	};
+
+	private static final Comparator<RecordedEvent> SLOWEST_FIRST = new Comparator<RecordedEvent>()
+	{
+
+		@Override
+		public int compare(RecordedEvent a, RecordedEvent b)
+		{
+			return b.getDuration().compareTo(a.getDuration());
+		}
+
+	};
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1 || args.length > 2)
+		{
+			System.err.println("Usage: java game.astar.PathQueryReport recording.jfr [count]");
+			System.exit(1);
+		}
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		report(new File(args[0]), count, System.out);
+	}
+
+	/**
+	 * Prints the summary of a recording.
+	 *
+	 * @param file
+	 *            The recording.
+	 * @param count
+	 *            How many queries and ticks to list.
+	 * @param out
+	 *            Where to print the summary.
+	 * @throws IOException
+	 *             If the recording can not be read.
+	 */
+	static void report(File file, int count, PrintStream out) throws IOException
+	{
+		List<RecordedEvent> queries = new ArrayList<RecordedEvent>();
+		List<RecordedEvent> steps = new ArrayList<RecordedEvent>();
+		List<RecordedEvent> ticks = new ArrayList<RecordedEvent>();
+		RecordingFile recording = new RecordingFile(file.toPath());
+		try
+		{
+			while (recording.hasMoreEvents())
+			{
+				RecordedEvent event = recording.readEvent();
+				String name = event.getEventType().getName();
+				if (name.equals(PathQueryEvent.NAME))
+				{
+					queries.add(event);
+				}
+				else if (name.equals(PathSearchStepEvent.NAME))
+				{
+					steps.add(event);
+				}
+				else if (name.equals(TICK_EVENT))
+				{
+					ticks.add(event);
+				}
+			}
+		}
+		finally
+		{
+			recording.close();
+		}
+
+		Duration total = Duration.ZERO;
+		for (RecordedEvent query : queries)
+		{
+			total = total.plus(query.getDuration("searchTime"));
+		}
+		out.println(queries.size() + " slow path queries searching for " + millis(total) + " ms, " + ticks.size()
+				+ " slow ticks");
+
+		Collections.sort(queries, SLOWEST_SEARCH_FIRST);
+		out.println();
+		out.println("Slowest path queries:");
+		out.println(String.format("%10s  %10s  %-11s  %-11s  %-13s  %9s  %6s  %s", "search ms", "ms", "start", "goal",
+				"mode", "expanded", "length", "thread"));
+		for (RecordedEvent query : queries.subList(0, Math.min(count, queries.size())))
+		{
+			out.println(String.format("%10s  %10s  %-11s  %-11s  %-13s  %9d  %6d  %s",
+					millis(query.getDuration("searchTime")), millis(query.getDuration()),
+					query.getInt("startX") + "," + query.getInt("startY"),
+					query.getInt("goalX") + "," + query.getInt("goalY"), query.getString("mode"),
+					query.getInt("expandedNodes"), query.getInt("pathLength"), threadName(query)));
+		}
+
+		if (ticks.isEmpty())
+		{
+			return;
+		}
+		// Only the steps of recorded queries count, like the single calls.
+		Set<Long> searches = new HashSet<Long>();
+		for (RecordedEvent query : queries)
+		{
+			if (query.getLong("searchId") != 0)
+			{
+				searches.add(query.getLong("searchId"));
+			}
+		}
+		Collections.sort(ticks, SLOWEST_FIRST);
+		out.println();
+		out.println("Slowest ticks, with the slow path queries that ran during them:");
+		out.println(String.format("%10s  %10s  %10s  %7s  %7s  %10s", "ms", "update ms", "render ms", "updates",
+				"queries", "query ms"));
+		for (RecordedEvent tick : ticks.subList(0, Math.min(count, ticks.size())))
+		{
+			TickSearches searched = new TickSearches(tick, queries, steps, searches);
+			out.println(String.format("%10s  %10s  %10s  %7d  %7d  %10s", millis(tick.getDuration()),
+					millis(tick.getDuration("updateTime")), millis(tick.getDuration("renderTime")),
+					tick.getInt("updates"), searched.queries, millis(searched.searchTime)));
+		}
+	}
+
+	private static boolean overlaps(RecordedEvent event, Instant start, Instant end)
+	{
+		return event.getStartTime().isBefore(end) && event.getEndTime().isAfter(start);
+	}
+
+	private static String threadName(RecordedEvent event)
+	{
+		RecordedThread thread = event.getThread();
+		return thread != null ? thread.getJavaName() : "";
+	}
+
+	private static String millis(Duration duration)
+	{
+		return String.format("%.3f", duration.toNanos() / 1000000.0);
+	}
+
+	/**
+	 * The recorded path queries that searched during a tick: single calls
+	 * overlapping it, and the steps of spread out searches that ran in it.
+	 */
+	static final class TickSearches
+	{
+
+		/**
+		 * How many queries searched during the tick.
+		 */
+		final int queries;
+
+		/**
+		 * How long they searched during the tick.
+		 */
+		final Duration searchTime;
+
+		/**
+		 * @param tick
+		 *            The tick event.
+		 * @param queries
+		 *            The recorded path query events.
+		 * @param steps
+		 *            The recorded path search step events.
+		 * @param searches
+		 *            The search IDs of the recorded queries.
+		 */
+		TickSearches(RecordedEvent tick, List<RecordedEvent> queries, List<RecordedEvent> steps, Set<Long> searches)
+		{
+			Instant start = tick.getStartTime();
+			Instant end = tick.getEndTime();
+			int count = 0;
+			Duration time = Duration.ZERO;
+			for (RecordedEvent query : queries)
+			{
+				if (query.getLong("searchId") == 0 && overlaps(query, start, end))
+				{
+					count++;
+					time = time.plus(query.getDuration("searchTime"));
+				}
+			}
+			Set<Long> stepped = new HashSet<Long>();
+			for (RecordedEvent step : steps)
+			{
+				long search = step.getLong("searchId");
+				if (searches.contains(search) && overlaps(step, start, end))
+				{
+					stepped.add(search);
+					time = time.plus(step.getDuration());
+				}
+			}
+			this.queries = count + stepped.size();
+			this.searchTime = time;
+		}
+
+	}
+
+}
@@ -0,0 +1,594 @@
+package game.astar;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A plain A* search that runs a few expansions at a time, so a long search can
+ * be spread over several game ticks instead of stalling one of them.
+ * <p>
+ * Each running search keeps its state in a {@link SearchContext} of its own,
+ * so any number of them can be in progress side by side on the same thread.
+ * A context holds several arrays as large as the map, so searches are best
+ * started through {@link SearchScheduler#start(Map, int, int, int, int)},
+ * which lends them contexts from a bounded pool and takes them back as soon
+ * as they are done. A finished search keeps only its path. Until it is done,
+ * the search can hand out the path to the node it got closest to the goal so
+ * far, for an agent that should start walking right away. If the map changes
+ * before the search is done in a way that affects it, the search starts over
+ * on its next step: when a node it opened or closed changed, or a node next to
+ * a closed one. Changes elsewhere, which it would only run into later, are
+ * taken into account as the search gets there. A finished search is not
+ * affected.
+ * <p>
+ * If the map has {@link SearchStatistics}, a search is recorded once it found
+ * its path or failed, with the time spent in its steps as its latency. Slow
+ * searches are also recorded by Java Flight Recorder as
+ * {@code game.astar.PathQuery} events, from their start to the step they
+ * finished in, and each of their steps as a {@code game.astar.PathSearchStep}
+ * event.
+ */
+public class PathSearch
+{
+
+	/**
+	 * The last ID handed to a search recorded by the flight recorder.
+	 */
+	private static final AtomicLong lastSearchId = new AtomicLong();
+
+	/**
+	 * The progress of a search.
+	 */
+	public enum State
+	{
+
+		/**
+		 * The search needs more steps.
+		 */
+		RUNNING,
+
+		/**
+		 * The goal was reached, the path is complete.
+		 */
+		FOUND,
+
+		/**
+		 * No path exists.
+		 */
+		FAILED,
+
+		/**
+		 * The search was cancelled before it was done.
+		 */
+		CANCELLED
+
+	}
+
+	/**
+	 * The map being searched.
+	 */
+	private final Map map;
+
+	/**
+	 * The scratch state of the search, holding the parents the path is read
+	 * from, or null while the search waits for one or once it is done.
+	 */
+	private SearchContext context;
+
+	/**
+	 * The scheduler the context was borrowed from, or null if it was given by
+	 * the caller.
+	 */
+	private final SearchScheduler owner;
+
+	/**
+	 * The path from the start to the goal, once it was found.
+	 */
+	private Path result;
+
+	/**
+	 * The index of the start node.
+	 */
+	private final int start;
+
+	/**
+	 * The index of the goal node.
+	 */
+	private final int goal;
+
+	/**
+	 * The progress of the search.
+	 */
+	private State state;
+
+	/**
+	 * The map's modification count up to which its changes were checked, so
+	 * further changes can be noticed.
+	 */
+	private int modifications;
+
+	/**
+	 * The map's lowest node cost when the search started, which scales its
+	 * heuristic.
+	 */
+	private int minCost;
+
+	/**
+	 * The map's cost span when the search started, which the open list was
+	 * set up for.
+	 */
+	private int costSpan;
+
+	/**
+	 * If the heuristic used landmark tables when the search started.
+	 */
+	private boolean landmarks;
+
+	/**
+	 * The closed node with the lowest H score, ties broken by the lowest G
+	 * score. The end of the partial path.
+	 */
+	private int closest;
+
+	/**
+	 * How many nodes the search expanded over all of its steps, including
+	 * those lost when it had to start over.
+	 */
+	private int expandedNodes;
+
+	/**
+	 * The time spent in the steps of the search while the map's statistics or
+	 * the flight recorder were recording, in nanoseconds.
+	 */
+	private long searchTime;
+
+	/**
+	 * The flight recorder event of the search, begun when it started, or null
+	 * if the event is not being recorded or was already committed.
+	 */
+	private PathQueryEvent event;
+
+	/**
+	 * The ID linking the event of the search to the events of its steps.
+	 */
+	private long searchId;
+
+	/**
+	 * Starts a search keeping its state in the given context. The context must
+	 * not be used by anything else until the search is done.
+	 *
+	 * @param map
+	 *            The map to search.
+	 * @param context
+	 *            The scratch state for this search.
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 */
+	public PathSearch(Map map, SearchContext context, int startX, int startY, int goalX, int goalY)
+	{
+		if (context.size() != map.getWidth() * map.getHeight())
+		{
+			throw new IllegalArgumentException("Search context was created for a map of a different size");
+		}
+		this.map = map;
+		this.context = context;
+		this.owner = null;
+		this.start = map.indexOf(startX, startY);
+		this.goal = map.indexOf(goalX, goalY);
+		beginEvent();
+		restart();
+	}
+
+	/**
+	 * Creates a search that waits for a context from a scheduler, unless it
+	 * is done without searching.
+	 */
+	PathSearch(Map map, SearchScheduler owner, int startX, int startY, int goalX, int goalY)
+	{
+		this.map = map;
+		this.owner = owner;
+		this.start = map.indexOf(startX, startY);
+		this.goal = map.indexOf(goalX, goalY);
+		beginEvent();
+		restart();
+	}
+
+	/**
+	 * Gives a waiting search the context to run in.
+	 */
+	void attach(SearchContext context)
+	{
+		this.context = context;
+		restart();
+		if (state != State.RUNNING)
+		{
+			finish();
+		}
+	}
+
+	/**
+	 * @return True if the search still needs a context to run in.
+	 */
+	boolean isWaiting()
+	{
+		return state == State.RUNNING && context == null;
+	}
+
+	/**
+	 * @return The map being searched.
+	 */
+	Map getMap()
+	{
+		return map;
+	}
+
+	private void beginEvent()
+	{
+		if (PathQueryEvent.isRecorded())
+		{
+			event = new PathQueryEvent();
+			searchId = lastSearchId.incrementAndGet();
+			event.begin();
+		}
+	}
+
+	/**
+	 * Forgets everything searched so far and opens the start node again.
+	 */
+	private void restart()
+	{
+		modifications = map.getModifications();
+		minCost = map.getMinCost();
+		costSpan = map.getCostSpan();
+		landmarks = map.usesLandmarks();
+		closest = start;
+		if (start == goal)
+		{
+			state = State.FOUND;
+			return;
+		}
+		// If the goal is walled off from the start, don't even search.
+		int width = map.getWidth();
+		if (!map.isReachable(start % width, start / width, goal % width, goal / width))
+		{
+			state = State.FAILED;
+			return;
+		}
+		state = State.RUNNING;
+		if (context != null)
+		{
+			context.reset(map.getCostSpan());
+			context.open(start, 0, map.heuristic(start, goal), -1);
+		}
+	}
+
+	/**
+	 * Expands up to the given number of nodes, or fewer if the search is done
+	 * before that.
+	 *
+	 * @param maxExpansions
+	 *            The most nodes to expand.
+	 * @return How many nodes were expanded.
+	 */
+	public int step(int maxExpansions)
+	{
+		if (state != State.RUNNING || context == null)
+		{
+			return 0;
+		}
+		if (isAffectedByChanges())
+		{
+			restart();
+			if (state != State.RUNNING)
+			{
+				finish();
+				return 0;
+			}
+		}
+
+		SearchStatistics statistics = map.getStatistics();
+		boolean recording = statistics != null && statistics.isEnabled();
+		boolean timed = recording || event != null;
+		PathSearchStepEvent stepEvent = null;
+		if (event != null)
+		{
+			stepEvent = new PathSearchStepEvent();
+			stepEvent.begin();
+		}
+		long started = timed ? System.nanoTime() : 0;
+		int expanded = 0;
+		int[] adjacentNodes = context.adjacent;
+		while (expanded < maxExpansions)
+		{
+			if (context.isOpenListEmpty())
+			{
+				state = State.FAILED;
+				break;
+			}
+			int current = context.close();
+			expanded++;
+			if (current == goal)
+			{
+				closest = goal;
+				state = State.FOUND;
+				break;
+			}
+			int h = context.getH(current);
+			int closestH = context.getH(closest);
+			if (h < closestH || h == closestH && context.getG(current) < context.getG(closest))
+			{
+				closest = current;
+			}
+
+			int count = map.getAdjacent(current, context, adjacentNodes);
+			for (int i = 0; i < count; i++)
+			{
+				int adjacent = adjacentNodes[i];
+				int g = context.getG(current) + map.cost(adjacent);
+				if (context.getState(adjacent) == SearchContext.UNVISITED)
+				{
+					context.open(adjacent, g, map.heuristic(adjacent, goal), current);
+				}
+				else if (g < context.getG(adjacent))
+				{
+					context.decrease(adjacent, g, current);
+				}
+			}
+		}
+		expandedNodes += expanded;
+		if (state == State.FOUND)
+		{
+			result = new Path();
+			map.tracePath(context, start, goal, result);
+		}
+		if (timed)
+		{
+			searchTime += System.nanoTime() - started;
+		}
+		if (stepEvent != null)
+		{
+			stepEvent.end();
+			if (stepEvent.shouldCommit())
+			{
+				stepEvent.searchId = searchId;
+				stepEvent.expandedNodes = expanded;
+				stepEvent.commit();
+			}
+		}
+		if (recording && state != State.RUNNING)
+		{
+			statistics.record(context, result != null ? result.size() : 0, searchTime);
+		}
+		if (state != State.RUNNING)
+		{
+			finish();
+		}
+		return expanded;
+	}
+
+	/**
+	 * Lets go of the context of a search that is done, giving it back to the
+	 * scheduler it was borrowed from, and commits its event unless it was
+	 * cancelled.
+	 */
+	private void finish()
+	{
+		if (owner != null && context != null)
+		{
+			owner.release(context);
+		}
+		context = null;
+
+		if (event != null && state != State.CANCELLED)
+		{
+			event.end();
+			if (searchTime >= PathQueryEvent.MIN_SEARCH_TIME && event.shouldCommit())
+			{
+				event.startX = getStartX();
+				event.startY = getStartY();
+				event.goalX = goal % map.getWidth();
+				event.goalY = goal / map.getWidth();
+				event.mode = SearchMode.ASTAR.name();
+				event.expandedNodes = expandedNodes;
+				event.pathLength = result != null ? result.size() : 0;
+				event.searchTime = searchTime;
+				event.searchId = searchId;
+				event.commit();
+			}
+		}
+		event = null;
+	}
+
+	/**
+	 * Stops the search. It will not expand any more nodes, and its context
+	 * may be reused right away.
+	 */
+	public void cancel()
+	{
+		if (state == State.RUNNING)
+		{
+			state = State.CANCELLED;
+			finish();
+		}
+	}
+
+	/**
+	 * @return The X coordinate of the start position.
+	 */
+	public int getStartX()
+	{
+		return start % map.getWidth();
+	}
+
+	/**
+	 * @return The Y coordinate of the start position.
+	 */
+	public int getStartY()
+	{
+		return start / map.getWidth();
+	}
+
+	/**
+	 * @return The progress of the search.
+	 */
+	public State getState()
+	{
+		return state;
+	}
+
+	/**
+	 * @return True if the search found a path, failed or was cancelled.
+	 */
+	public boolean isDone()
+	{
+		return state != State.RUNNING;
+	}
+
+	/**
+	 * @return How many nodes the search expanded over all of its steps.
+	 */
+	public int getExpandedNodes()
+	{
+		return expandedNodes;
+	}
+
+	/**
+	 * Writes the path found into a path the caller keeps around.
+	 *
+	 * @param buffer
+	 *            The path to overwrite with the result, or null to create a
+	 *            new one.
+	 * @return The path from the start (exclusive) to the goal if it was found,
+	 *         an empty path otherwise.
+	 */
+	public Path getPath(Path buffer)
+	{
+		Path path = buffer != null ? buffer : new Path();
+		if (state == State.FOUND)
+		{
+			copyResult(path);
+		}
+		else
+		{
+			path.reset(map, 0);
+		}
+		return path;
+	}
+
+	/**
+	 * Writes the best path known so far into a path the caller keeps around:
+	 * the complete path once the goal was found, otherwise the path to the
+	 * node the search got closest to the goal. Only valid while the search is
+	 * running or after it found the goal.
+	 *
+	 * @param buffer
+	 *            The path to overwrite with the result, or null to create a
+	 *            new one.
+	 * @return The path from the start (exclusive) to the closest node, empty
+	 *         if the search did not get any closer than the start.
+	 */
+	public Path getPartialPath(Path buffer)
+	{
+		Path path = buffer != null ? buffer : new Path();
+		if (state == State.FOUND)
+		{
+			copyResult(path);
+		}
+		else if (state == State.RUNNING && context != null && !isAffectedByChanges())
+		{
+			trace(path, closest);
+		}
+		else
+		{
+			path.reset(map, 0);
+		}
+		return path;
+	}
+
+	/**
+	 * Checks the changes to the map since the last check.
+	 *
+	 * @return True if they make the search's scores or parents wrong, so it
+	 *         has to start over.
+	 */
+	private boolean isAffectedByChanges()
+	{
+		int current = map.getModifications();
+		if (current == modifications)
+		{
+			return false;
+		}
+		// Tables describing the old map, or changed bounds of the heuristic or
+		// the open list, spoil every score.
+		if (landmarks || minCost != map.getMinCost() || costSpan != map.getCostSpan())
+		{
+			return true;
+		}
+		if (current - modifications > Map.CHANGE_LOG_SIZE)
+		{
+			return true;
+		}
+		for (int modification = modifications; modification != current; modification++)
+		{
+			if (touchesSearch(map.getChangedNode(modification)))
+			{
+				return true;
+			}
+		}
+		// Changes made while reading may have overwritten the ones read.
+		if (map.getModifications() - modifications > Map.CHANGE_LOG_SIZE)
+		{
+			return true;
+		}
+		modifications = current;
+		return false;
+	}
+
+	/**
+	 * @return True if the node was opened or closed by the search, so its
+	 *         scores may be wrong now, or is next to a closed node, which
+	 *         missed it or counted on it when it was expanded.
+	 */
+	private boolean touchesSearch(int node)
+	{
+		if (context.getState(node) != SearchContext.UNVISITED)
+		{
+			return true;
+		}
+		int width = map.getWidth();
+		int x = node % width;
+		int y = node / width;
+		return x > 0 && context.getState(node - 1) == SearchContext.CLOSED
+				|| x < width - 1 && context.getState(node + 1) == SearchContext.CLOSED
+				|| y > 0 && context.getState(node - width) == SearchContext.CLOSED
+				|| y < map.getHeight() - 1 && context.getState(node + width) == SearchContext.CLOSED;
+	}
+
+	private void copyResult(Path path)
+	{
+		int length = result != null ? result.size() : 0;
+		path.reset(map, length);
+		for (int step = 0; step < length; step++)
+		{
+			path.set(step, result.index(step));
+		}
+	}
+
+	private void trace(Path path, int end)
+	{
+		if (end == start)
+		{
+			path.reset(map, 0);
+		}
+		else
+		{
+			map.tracePath(context, start, end, path);
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package game.astar;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Java Flight Recorder event for one step of a {@link PathSearch}, so
+ * {@link PathQueryReport} can charge each game tick only for the steps of a
+ * search that ran during it. Steps are recorded while {@link PathQueryEvent}
+ * is, and linked to the query event of their search by its search ID.
+ */
+@Name(PathSearchStepEvent.NAME)
+@Label("Path Search Step")
+@Category({ "Game", "Pathfinding" })
+@Description("A step of a path search spread over several calls")
+@Threshold("0 ms")
+@StackTrace(false)
+final class PathSearchStepEvent extends Event
+{
+
+	/**
+	 * The name of the event in recordings.
+	 */
+	static final String NAME = "game.astar.PathSearchStep";
+
+	@Label("Search ID")
+	@Description("The search ID of the path query this step belongs to")
+	long searchId;
+
+	@Label("Expanded Nodes")
+	@Description("How many nodes the step moved to the closed list")
+	int expandedNodes;
+
+}
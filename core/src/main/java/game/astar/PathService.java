@@ -0,0 +1,337 @@
+package game.astar;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Searches for paths on worker threads and hands the results out as futures,
+ * so neither the event dispatch thread nor the game loop ever waits for a
+ * search.
+ * <p>
+ * Requests can be made on behalf of an agent. A newer request of the same
+ * agent cancels the older one, so an agent that keeps changing its mind only
+ * ever gets the answer to its latest request. Cancellation is cooperative: a
+ * search that already started checks for it every few hundred expansions and
+ * gives up, instead of finishing work nobody will read. Each worker thread
+ * reuses its own search context.
+ * <p>
+ * The service counts the requests waiting for a worker and measures the time
+ * from each request to its completion.
+ */
+public class PathService
+{
+
+	/**
+	 * How many nodes a search expands between checks for cancellation.
+	 */
+	private static final int EXPANSIONS_PER_CHECK = 256;
+
+	/**
+	 * The map searched by every request.
+	 */
+	private final Map map;
+
+	/**
+	 * The threads running the searches.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * If the executor was created by this service, and has to be shut down
+	 * with it.
+	 */
+	private final boolean ownsExecutor;
+
+	/**
+	 * The search contexts of the worker threads.
+	 */
+	private final ThreadLocal<SearchContext> contexts = new ThreadLocal<SearchContext>();
+
+	/**
+	 * The latest request of each agent that is not done yet.
+	 */
+	private final ConcurrentHashMap<Object, CompletableFuture<Path>> latest = new ConcurrentHashMap<Object, CompletableFuture<Path>>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	/**
+	 * Creates a service with its own pool of daemon worker threads.
+	 *
+	 * @param map
+	 *            The map searched by every request.
+	 * @param threads
+	 *            The number of worker threads.
+	 */
+	public PathService(Map map, int threads)
+	{
+		this(map, Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "path-service-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		}), true);
+	}
+
+	/**
+	 * Creates a service running its searches on the given executor, which is
+	 * left running when the service is shut down.
+	 *
+	 * @param map
+	 *            The map searched by every request.
+	 * @param executor
+	 *            The threads running the searches.
+	 */
+	public PathService(Map map, ExecutorService executor)
+	{
+		this(map, executor, false);
+	}
+
+	private PathService(Map map, ExecutorService executor, boolean ownsExecutor)
+	{
+		this.map = map;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Cancels every pending request and, if the service created its worker
+	 * threads, stops them.
+	 */
+	public void shutdown()
+	{
+		for (CompletableFuture<Path> future : latest.values())
+		{
+			future.cancel(false);
+		}
+		if (ownsExecutor)
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Requests a path that is not tied to any agent.
+	 *
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return A future completed with the path, empty if there is no
+	 *         solution.
+	 */
+	public CompletableFuture<Path> findPath(int startX, int startY, int goalX, int goalY)
+	{
+		return findPath(null, startX, startY, goalX, goalY);
+	}
+
+	/**
+	 * Requests a path on behalf of an agent, cancelling the agent's previous
+	 * request if it is not done yet.
+	 *
+	 * @param agent
+	 *            The agent the path is for, compared by
+	 *            {@link Object#equals(Object)}, or null.
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return A future completed with the path, empty if there is no
+	 *         solution, or cancelled if a newer request of the agent came
+	 *         first.
+	 */
+	public CompletableFuture<Path> findPath(final Object agent, final int startX, final int startY, final int goalX,
+			final int goalY)
+	{
+		final CompletableFuture<Path> future = new CompletableFuture<Path>();
+		final long requested = System.nanoTime();
+		if (agent != null)
+		{
+			CompletableFuture<Path> previous = latest.put(agent, future);
+			if (previous != null)
+			{
+				previous.cancel(false);
+			}
+		}
+		future.whenComplete(new BiConsumer<Path, Throwable>()
+		{
+
+			@Override
+			public void accept(Path path, Throwable failure)
+			{
+				if (agent != null)
+				{
+					latest.remove(agent, future);
+				}
+				record(future, System.nanoTime() - requested);
+			}
+
+		});
+
+		queued.incrementAndGet();
+		try
+		{
+			executor.execute(new Runnable()
+			{
+
+				@Override
+				public void run()
+				{
+					queued.decrementAndGet();
+					search(future, startX, startY, goalX, goalY);
+				}
+
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			queued.decrementAndGet();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Runs a search a few expansions at a time, giving up as soon as its
+	 * future is cancelled.
+	 */
+	private void search(CompletableFuture<Path> future, int startX, int startY, int goalX, int goalY)
+	{
+		if (future.isDone())
+		{
+			return;
+		}
+		try
+		{
+			PathSearch search = new PathSearch(map, context(), startX, startY, goalX, goalY);
+			while (!search.isDone())
+			{
+				if (future.isCancelled())
+				{
+					search.cancel();
+					return;
+				}
+				search.step(EXPANSIONS_PER_CHECK);
+			}
+			future.complete(search.getPath(null));
+		}
+		catch (RuntimeException e)
+		{
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * @return The search context owned by the calling worker thread.
+	 */
+	private SearchContext context()
+	{
+		SearchContext context = contexts.get();
+		if (context == null)
+		{
+			context = new SearchContext(map);
+			contexts.set(context);
+		}
+		return context;
+	}
+
+	private void record(CompletableFuture<Path> future, long latency)
+	{
+		if (future.isCancelled())
+		{
+			cancelled.incrementAndGet();
+			return;
+		}
+		if (future.isCompletedExceptionally())
+		{
+			failed.incrementAndGet();
+			return;
+		}
+		completed.incrementAndGet();
+		totalLatency.addAndGet(latency);
+		long max = maxLatency.get();
+		while (latency > max && !maxLatency.compareAndSet(max, latency))
+		{
+			max = maxLatency.get();
+		}
+	}
+
+	/**
+	 * @return How many requests are waiting for a worker thread.
+	 */
+	public int getQueueDepth()
+	{
+		return queued.get();
+	}
+
+	/**
+	 * @return How many requests were answered with a path.
+	 */
+	public long getCompleted()
+	{
+		return completed.get();
+	}
+
+	/**
+	 * @return How many requests were cancelled, by their caller or by a newer
+	 *         request of the same agent.
+	 */
+	public long getCancelled()
+	{
+		return cancelled.get();
+	}
+
+	/**
+	 * @return How many requests failed with an exception.
+	 */
+	public long getFailed()
+	{
+		return failed.get();
+	}
+
+	/**
+	 * @return The average time from a request to its answer, over the
+	 *         answered requests, in nanoseconds.
+	 */
+	public long getAverageLatency()
+	{
+		long count = completed.get();
+		return count == 0 ? 0 : totalLatency.get() / count;
+	}
+
+	/**
+	 * @return The longest time from a request to its answer, in nanoseconds.
+	 */
+	public long getMaxLatency()
+	{
+		return maxLatency.get();
+	}
+
+}
@@ -0,0 +1,194 @@
+package game.astar;
+
+/**
+ * Shrinks paths down to the nodes an agent actually has to aim for.
+ * <p>
+ * {@link #compress(int, int, Path, Path)} keeps only the nodes where a path
+ * turns, plus the goal. Walking straight from one waypoint to the next along
+ * its row or column covers exactly the nodes of the original path, so it suits
+ * agents moving one node at a time like the player.
+ * <p>
+ * {@link #smooth(int, int, Path, Path)} also drops every turn that can be cut
+ * short: from each waypoint kept, it skips ahead to the farthest turn still in
+ * line of sight. The resulting waypoints have to be walked in straight, any
+ * angle lines, which touch only walkable nodes but are not on the grid.
+ * <p>
+ * Both work in place when the output buffer is the path itself.
+ */
+public final class PathSmoother
+{
+
+	private PathSmoother()
+	{
+	}
+
+	/**
+	 * Collapses the straight runs of a path into waypoints.
+	 * 
+	 * @param startX
+	 *            The X coordinate of the start position the path was found
+	 *            from.
+	 * @param startY
+	 *            The Y coordinate of the start position the path was found
+	 *            from.
+	 * @param path
+	 *            The path, with every node on it.
+	 * @param buffer
+	 *            The path to overwrite with the waypoints, which may be the
+	 *            input path itself, or null to create a new one.
+	 * @return The nodes where the path turns, followed by the goal.
+	 */
+	public static Path compress(int startX, int startY, Path path, Path buffer)
+	{
+		Path waypoints = prepare(path, buffer);
+		int length = path.size();
+		if (length == 0)
+		{
+			return waypoints;
+		}
+		int width = path.getMap().getWidth();
+
+		int count = 0;
+		int previous = startY * width + startX;
+		for (int i = 0; i < length - 1; i++)
+		{
+			int node = path.index(i);
+			// A node is a turn if the steps onto it and off it differ.
+			if (node - previous != path.index(i + 1) - node)
+			{
+				waypoints.set(count++, node);
+			}
+			previous = node;
+		}
+		waypoints.set(count++, path.index(length - 1));
+		waypoints.truncate(count);
+		return waypoints;
+	}
+
+	/**
+	 * Collapses the straight runs of a path into waypoints, then skips every
+	 * waypoint the agent can walk past in a straight line.
+	 * 
+	 * @param startX
+	 *            The X coordinate of the start position the path was found
+	 *            from.
+	 * @param startY
+	 *            The Y coordinate of the start position the path was found
+	 *            from.
+	 * @param path
+	 *            The path, with every node on it or already compressed.
+	 * @param buffer
+	 *            The path to overwrite with the waypoints, which may be the
+	 *            input path itself, or null to create a new one.
+	 * @return The waypoints, each in line of sight of the one before it, the
+	 *         first one in line of sight of the start.
+	 */
+	public static Path smooth(int startX, int startY, Path path, Path buffer)
+	{
+		Path waypoints = compress(startX, startY, path, buffer);
+		int length = waypoints.size();
+		if (length == 0)
+		{
+			return waypoints;
+		}
+		Map map = waypoints.getMap();
+		int width = map.getWidth();
+
+		int count = 0;
+		int anchorX = startX;
+		int anchorY = startY;
+		for (int i = 0; i < length - 1; i++)
+		{
+			int next = waypoints.index(i + 1);
+			if (!hasLineOfSight(map, anchorX, anchorY, next % width, next / width))
+			{
+				// The next waypoint can't be reached directly: keep this one.
+				int node = waypoints.index(i);
+				waypoints.set(count++, node);
+				anchorX = node % width;
+				anchorY = node / width;
+			}
+		}
+		waypoints.set(count++, waypoints.index(length - 1));
+		waypoints.truncate(count);
+		return waypoints;
+	}
+
+	/**
+	 * Tells if the straight line between the centers of two nodes only
+	 * touches walkable nodes. Where the line passes exactly through a corner,
+	 * both nodes next to the corner have to be walkable.
+	 * 
+	 * @param map
+	 *            The map to check.
+	 * @param x0
+	 *            The X coordinate of the first node.
+	 * @param y0
+	 *            The Y coordinate of the first node.
+	 * @param x1
+	 *            The X coordinate of the second node.
+	 * @param y1
+	 *            The Y coordinate of the second node.
+	 * @return True if an agent can walk straight from one node to the other.
+	 */
+	public static boolean hasLineOfSight(Map map, int x0, int y0, int x1, int y1)
+	{
+		int dx = Math.abs(x1 - x0);
+		int dy = Math.abs(y1 - y0);
+		int stepX = x1 > x0 ? 1 : -1;
+		int stepY = y1 > y0 ? 1 : -1;
+		int x = x0;
+		int y = y0;
+
+		// Walks the nodes the line crosses, one node border at a time. The
+		// error tells which border the line crosses next: positive for a
+		// vertical one, negative for a horizontal one, zero for a corner.
+		int error = dx - dy;
+		dx *= 2;
+		dy *= 2;
+		for (int n = dx / 2 + dy / 2; n > 0; n--)
+		{
+			if (!map.isPassable(x, y))
+			{
+				return false;
+			}
+			if (error > 0)
+			{
+				x += stepX;
+				error -= dy;
+			}
+			else if (error < 0)
+			{
+				y += stepY;
+				error += dx;
+			}
+			else
+			{
+				if (!map.isPassable(x + stepX, y) || !map.isPassable(x, y + stepY))
+				{
+					return false;
+				}
+				x += stepX;
+				y += stepY;
+				error += dx - dy;
+				n--;
+			}
+		}
+		return map.isPassable(x, y);
+	}
+
+	/**
+	 * @return The buffer to write the result into, with room for every node of
+	 *         the path.
+	 */
+	private static Path prepare(Path path, Path buffer)
+	{
+		Path result = buffer != null ? buffer : new Path();
+		if (result != path)
+		{
+			result.reset(path.getMap(), path.size());
+		}
+		return result;
+	}
+
+}
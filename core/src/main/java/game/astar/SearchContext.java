@@ -0,0 +1,423 @@
+package game.astar;
+
+import java.util.Arrays;
+
+/**
+ * The scratch state of a single path search: G and H scores, parents, open and
+ * closed list membership and the open list itself, all stored by node index.
+ * <p>
+ * Keeping this state out of the nodes lets any number of threads search the
+ * same {@link Map} at once, as long as each of them uses its own context. A
+ * context can be reused for any number of searches on maps of the same size,
+ * so callers that run many queries are free to pool them.
+ * <p>
+ * Every entry is stamped with the generation of the search that wrote it, and
+ * only counts as valid while that generation is the current one. Starting a
+ * new search just moves on to the next generation, so it costs O(1) instead of
+ * clearing arrays as big as the map, and each search only touches the nodes it
+ * actually visits.
+ */
+public final class SearchContext
+{
+
+	/**
+	 * Search state of a node that has not been discovered yet.
+	 */
+	static final byte UNVISITED = 0;
+
+	/**
+	 * Search state of a node that is in the open list.
+	 */
+	static final byte OPEN = 1;
+
+	/**
+	 * Search state of a node that is in the closed list.
+	 */
+	static final byte CLOSED = 2;
+
+	/**
+	 * The number of nodes this context can hold.
+	 */
+	private final int size;
+
+	/**
+	 * The cost of getting from the first node to each node.
+	 */
+	private final int[] g;
+
+	/**
+	 * The estimated cost of getting from each node to the goal.
+	 */
+	private final int[] h;
+
+	/**
+	 * The index of the node prior to each node, or -1 for the first node.
+	 */
+	private final int[] parent;
+
+	/**
+	 * Open and closed list membership of each node.
+	 */
+	private final byte[] state;
+
+	/**
+	 * The generation of the search that last wrote each node's entries.
+	 */
+	private final int[] stamp;
+
+	/**
+	 * The generation of the current search. Entries stamped with any other
+	 * generation are treated as unvisited.
+	 */
+	private int generation;
+
+	/**
+	 * How many nodes the current search has moved to the closed list.
+	 */
+	private int expandedNodes;
+
+	/**
+	 * How many nodes helper searches left in their open lists. Every other
+	 * node added to an open list was expanded or is still in this one.
+	 */
+	private int helperOpenNodes;
+
+	/**
+	 * How many times the current search has lowered the G score of an open
+	 * node.
+	 */
+	private int decreasedKeys;
+
+	/**
+	 * The most nodes the open list of the current search held when a node was
+	 * expanded.
+	 */
+	private int maxOpenListSize;
+
+	/**
+	 * The set of currently discovered nodes still to be visited, ordered by
+	 * their F score. Either {@link #heap} or {@link #buckets}.
+	 */
+	private OpenList openList;
+
+	/**
+	 * The open list of searches whose F scores can jump arbitrarily far, like
+	 * Jump Point Search.
+	 */
+	private final NodeHeap heap;
+
+	/**
+	 * The open list of searches moving one node at a time, created the first
+	 * time it is needed.
+	 */
+	private BucketQueue buckets;
+
+	/**
+	 * Buffer receiving the adjacent nodes of the node being expanded.
+	 */
+	final int[] adjacent;
+
+	/**
+	 * The context of the backward half of bidirectional searches, created
+	 * the first time it is needed.
+	 */
+	private SearchContext reverse;
+
+	/**
+	 * Creates a context that can be used for searches on the given map, or on
+	 * any other map of the same size.
+	 *
+	 * @param map
+	 *            The map this context will be used with.
+	 */
+	public SearchContext(Map map)
+	{
+		this(map.getWidth() * map.getHeight());
+	}
+
+	/**
+	 * @param size
+	 *            The number of nodes on the map.
+	 */
+	SearchContext(int size)
+	{
+		this.size = size;
+		g = new int[size];
+		h = new int[size];
+		parent = new int[size];
+		state = new byte[size];
+		stamp = new int[size];
+		generation = 0;
+		heap = new NodeHeap(size, g, h);
+		openList = heap;
+		adjacent = new int[4];
+	}
+
+	/**
+	 * @return The number of nodes this context can hold.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Forgets everything about the previous search, in constant time, and
+	 * uses a binary heap as the open list.
+	 */
+	void reset()
+	{
+		reset(0);
+	}
+
+	/**
+	 * Forgets everything about the previous search, in constant time, and
+	 * picks the open list for the next one.
+	 *
+	 * @param span
+	 *            The largest difference between the F scores of two open nodes
+	 *            when the next search uses a bucket queue, or 0 to use a binary
+	 *            heap. A bucket queue needs a consistent heuristic.
+	 */
+	void reset(int span)
+	{
+		if (span <= 0)
+		{
+			openList = heap;
+		}
+		else
+		{
+			if (buckets == null || buckets.getSpan() < span)
+			{
+				buckets = new BucketQueue(size, g, h, span);
+			}
+			openList = buckets;
+		}
+		generation++;
+		expandedNodes = 0;
+		helperOpenNodes = 0;
+		decreasedKeys = 0;
+		maxOpenListSize = 0;
+		if (generation == 0)
+		{
+			// The stamps wrapped around, so old entries could look current.
+			clear();
+		}
+		openList.clear();
+	}
+
+	/**
+	 * Forgets everything about every previous search by wiping all stamps,
+	 * which takes time proportional to the size of the map. Only needed when
+	 * the generation counter wraps around.
+	 */
+	void clear()
+	{
+		Arrays.fill(stamp, 0);
+		generation = 1;
+		openList.clear();
+	}
+
+	/**
+	 * Adds a newly discovered node to the open list.
+	 *
+	 * @param node
+	 *            The node's index.
+	 * @param g
+	 *            The cost of getting from the first node to this node.
+	 * @param h
+	 *            The estimated cost of getting from this node to the goal.
+	 * @param parent
+	 *            The index of the node prior to this one, or -1.
+	 */
+	void open(int node, int g, int h, int parent)
+	{
+		this.g[node] = g;
+		this.h[node] = h;
+		this.parent[node] = parent;
+		state[node] = OPEN;
+		stamp[node] = generation;
+		openList.add(node);
+	}
+
+	/**
+	 * Lowers the G score of a node already in the open list and moves it up
+	 * the open list in place.
+	 *
+	 * @param node
+	 *            The node's index.
+	 * @param g
+	 *            The new, cheaper, G score.
+	 * @param parent
+	 *            The index of the node prior to this one on the cheaper path.
+	 */
+	void decrease(int node, int g, int parent)
+	{
+		this.g[node] = g;
+		this.parent[node] = parent;
+		openList.decreaseKey(node);
+		decreasedKeys++;
+	}
+
+	/**
+	 * Removes the node with the lowest F score from the open list and adds it
+	 * to the closed list.
+	 *
+	 * @return The index of that node.
+	 */
+	int close()
+	{
+		// Nodes are only opened between closes, so the list is at its largest
+		// right before one.
+		int size = openList.size();
+		if (size > maxOpenListSize)
+		{
+			maxOpenListSize = size;
+		}
+		int node = openList.poll();
+		state[node] = CLOSED;
+		expandedNodes++;
+		return node;
+	}
+
+	/**
+	 * @return How many nodes the last search using this context expanded,
+	 *         that is moved from the open list to the closed list.
+	 */
+	public int getExpandedNodes()
+	{
+		return expandedNodes;
+	}
+
+	/**
+	 * @return A number that changes every time the context is reset, so a
+	 *         caller can tell if a search ran in it.
+	 */
+	int getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * @return How many nodes the last search using this context added to the
+	 *         open list.
+	 */
+	public int getPushedNodes()
+	{
+		return expandedNodes + openList.size() + helperOpenNodes;
+	}
+
+	/**
+	 * @return How many times the last search using this context lowered the G
+	 *         score of a node already in the open list.
+	 */
+	public int getDecreasedKeys()
+	{
+		return decreasedKeys;
+	}
+
+	/**
+	 * @return The most nodes the open list of the last search using this
+	 *         context held at once.
+	 */
+	public int getMaxOpenListSize()
+	{
+		return maxOpenListSize;
+	}
+
+	/**
+	 * @return The lowest F score in the open list. The open list must not be
+	 *         empty.
+	 */
+	int getLowestF()
+	{
+		int node = openList.peek();
+		return g[node] + h[node];
+	}
+
+	/**
+	 * @return How many nodes are in the open list.
+	 */
+	int getOpenListSize()
+	{
+		return openList.size();
+	}
+
+	/**
+	 * Adds the counts of a helper search, like the backward half of a
+	 * bidirectional search, to this search's counts. The open lists of both
+	 * searches exist at the same time, so their largest sizes add up too.
+	 *
+	 * @param helper
+	 *            The context of the helper search.
+	 */
+	void addCounts(SearchContext helper)
+	{
+		expandedNodes += helper.expandedNodes;
+		helperOpenNodes += helper.openList.size() + helper.helperOpenNodes;
+		decreasedKeys += helper.decreasedKeys;
+		maxOpenListSize += helper.maxOpenListSize;
+	}
+
+	/**
+	 * @return A second context of the same size, owned by this one, for the
+	 *         backward half of bidirectional searches.
+	 */
+	SearchContext reverse()
+	{
+		if (reverse == null)
+		{
+			reverse = new SearchContext(size);
+		}
+		return reverse;
+	}
+
+	/**
+	 * @return True if there are no nodes left in the open list.
+	 */
+	boolean isOpenListEmpty()
+	{
+		return openList.isEmpty();
+	}
+
+	/**
+	 * @param node
+	 *            The node's index.
+	 * @return The node's open or closed list membership.
+	 */
+	byte getState(int node)
+	{
+		return stamp[node] == generation ? state[node] : UNVISITED;
+	}
+
+	/**
+	 * @param node
+	 *            The node's index.
+	 * @return The cost of getting from the first node to this node.
+	 */
+	int getG(int node)
+	{
+		return g[node];
+	}
+
+	/**
+	 * @param node
+	 *            The node's index.
+	 * @return The estimated cost of getting from this node to the goal.
+	 */
+	int getH(int node)
+	{
+		return h[node];
+	}
+
+	/**
+	 * @param node
+	 *            The node's index.
+	 * @return The index of the node prior to this one, or -1.
+	 */
+	int getParent(int node)
+	{
+		return parent[node];
+	}
+
+}
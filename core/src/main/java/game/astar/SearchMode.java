@@ -0,0 +1,29 @@
+package game.astar;
+
+/**
+ * The ways a {@link Map} can search for a path. Every mode returns a path of
+ * the same, optimal, length.
+ */
+public enum SearchMode
+{
+
+	/**
+	 * Plain A*, expanding every node it reaches.
+	 */
+	ASTAR,
+
+	/**
+	 * Jump Point Search. Skips over runs of nodes that any optimal path would
+	 * pass straight through, so it expands far fewer nodes on open, uniform
+	 * cost grids. Maps with terrain costs are searched with plain A* instead.
+	 */
+	JUMP_POINT,
+
+	/**
+	 * Bidirectional A*. Searches from the start and from the goal at the same
+	 * time, so long paths grow two small frontiers instead of one huge one.
+	 * Always uses the Manhattan distance as its heuristic.
+	 */
+	BIDIRECTIONAL
+
+}
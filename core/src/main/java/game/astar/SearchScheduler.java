@@ -0,0 +1,299 @@
+package game.astar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steps any number of {@link PathSearch}es once per game tick, sharing a fixed
+ * budget of node expansions between them, so the time spent searching per
+ * tick stays bounded however many agents are looking for a path.
+ * <p>
+ * Every running search gets an equal share of the budget. A search that is
+ * done before using up its share leaves the rest to the others, in further
+ * rounds, until the budget is spent or every search is done. The search
+ * served first moves on by one every tick, so the remainder of an uneven split
+ * does not always go to the same search. Finished searches are dropped, and
+ * their owners find out by polling them.
+ * <p>
+ * Searches started by the scheduler borrow their {@link SearchContext} from a
+ * pool of at most a given number of contexts, and give it back as soon as
+ * they are done or cancelled. A context holds about 35 bytes per node of the
+ * map, so the pool bounds the memory of any number of searches. Searches that
+ * find no free context wait for one in the order they were started.
+ */
+public class SearchScheduler
+{
+
+	/**
+	 * The most nodes all searches together expand per tick.
+	 */
+	private final int budget;
+
+	/**
+	 * The searches still running, in the order they were added.
+	 */
+	private final List<PathSearch> searches = new ArrayList<PathSearch>();
+
+	/**
+	 * The position in {@link #searches} of the search served first next tick.
+	 */
+	private int first;
+
+	/**
+	 * How many nodes the last tick expanded.
+	 */
+	private int lastExpansions;
+
+	/**
+	 * The most contexts the scheduler creates for its searches.
+	 */
+	private final int maxContexts;
+
+	/**
+	 * How many contexts the scheduler created and still keeps track of.
+	 */
+	private int createdContexts;
+
+	/**
+	 * The contexts no search is using.
+	 */
+	private final List<SearchContext> freeContexts = new ArrayList<SearchContext>();
+
+	/**
+	 * Searches started by the scheduler that wait for a context, in the order
+	 * they were started.
+	 */
+	private final ArrayDeque<PathSearch> waiting = new ArrayDeque<PathSearch>();
+
+	/**
+	 * Creates a scheduler that runs one of the searches it starts at a time.
+	 *
+	 * @param budget
+	 *            The most nodes all searches together expand per tick.
+	 */
+	public SearchScheduler(int budget)
+	{
+		this(budget, 1);
+	}
+
+	/**
+	 * @param budget
+	 *            The most nodes all searches together expand per tick.
+	 * @param maxContexts
+	 *            The most searches started by the scheduler that run at the
+	 *            same time, each with a context of its own.
+	 */
+	public SearchScheduler(int budget, int maxContexts)
+	{
+		if (budget < 1)
+		{
+			throw new IllegalArgumentException("Budget must be at least 1");
+		}
+		if (maxContexts < 1)
+		{
+			throw new IllegalArgumentException("At least one context is needed");
+		}
+		this.budget = budget;
+		this.maxContexts = maxContexts;
+	}
+
+	/**
+	 * Starts a search with a context from the scheduler's pool, to be stepped
+	 * from the next tick on. If all contexts are in use, it waits for one.
+	 *
+	 * @param map
+	 *            The map to search.
+	 * @param startX
+	 *            The X coordinate of the start position.
+	 * @param startY
+	 *            The Y coordinate of the start position.
+	 * @param goalX
+	 *            The X coordinate of the goal position.
+	 * @param goalY
+	 *            The Y coordinate of the goal position.
+	 * @return The search, already done if the start is the goal or the goal
+	 *         cannot be reached.
+	 */
+	public PathSearch start(Map map, int startX, int startY, int goalX, int goalY)
+	{
+		PathSearch search = new PathSearch(map, this, startX, startY, goalX, goalY);
+		if (!search.isDone())
+		{
+			waiting.add(search);
+		}
+		return search;
+	}
+
+	/**
+	 * Adds a search to be stepped from the next tick on.
+	 *
+	 * @param search
+	 *            The search to step.
+	 */
+	public void add(PathSearch search)
+	{
+		if (search.isWaiting())
+		{
+			throw new IllegalArgumentException("Search is waiting for a context of its scheduler");
+		}
+		if (!search.isDone())
+		{
+			searches.add(search);
+		}
+	}
+
+	/**
+	 * Cancels a search and stops stepping it.
+	 *
+	 * @param search
+	 *            The search to cancel.
+	 */
+	public void cancel(PathSearch search)
+	{
+		search.cancel();
+		searches.remove(search);
+		waiting.remove(search);
+	}
+
+	/**
+	 * Spends the tick's budget on the running searches.
+	 *
+	 * @return How many nodes were expanded.
+	 */
+	public int tick()
+	{
+		int remaining = budget;
+		admit();
+		while (remaining > 0 && !searches.isEmpty())
+		{
+			int count = searches.size();
+			int share = Math.max(1, remaining / count);
+			if (first >= count)
+			{
+				first = 0;
+			}
+			for (int i = 0; i < count && remaining > 0; i++)
+			{
+				PathSearch search = searches.get((first + i) % count);
+				remaining -= search.step(Math.min(share, remaining));
+			}
+			removeDone();
+			admit();
+		}
+		first++;
+		lastExpansions = budget - remaining;
+		return lastExpansions;
+	}
+
+	private void removeDone()
+	{
+		for (int i = searches.size() - 1; i >= 0; i--)
+		{
+			if (searches.get(i).isDone())
+			{
+				searches.remove(i);
+				if (i < first)
+				{
+					first--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands free contexts to waiting searches.
+	 */
+	private void admit()
+	{
+		while (!waiting.isEmpty())
+		{
+			PathSearch search = waiting.peek();
+			if (search.isDone())
+			{
+				waiting.poll();
+				continue;
+			}
+			SearchContext context = takeContext(search.getMap());
+			if (context == null)
+			{
+				return;
+			}
+			waiting.poll();
+			search.attach(context);
+			if (!search.isDone())
+			{
+				searches.add(search);
+			}
+		}
+	}
+
+	/**
+	 * @return A context for a search of the map, or null if all of them are
+	 *         in use.
+	 */
+	private SearchContext takeContext(Map map)
+	{
+		int size = map.getWidth() * map.getHeight();
+		for (int i = freeContexts.size() - 1; i >= 0; i--)
+		{
+			if (freeContexts.get(i).size() == size)
+			{
+				return freeContexts.remove(i);
+			}
+		}
+		if (createdContexts < maxContexts)
+		{
+			createdContexts++;
+			return new SearchContext(map);
+		}
+		if (!freeContexts.isEmpty())
+		{
+			// Only contexts for maps of other sizes are free; replace one.
+			freeContexts.remove(freeContexts.size() - 1);
+			return new SearchContext(map);
+		}
+		return null;
+	}
+
+	/**
+	 * Takes back the context of a search that is done.
+	 */
+	void release(SearchContext context)
+	{
+		freeContexts.add(context);
+	}
+
+	/**
+	 * @return How many searches are still running or waiting for a context.
+	 */
+	public int size()
+	{
+		int count = searches.size();
+		for (PathSearch search : waiting)
+		{
+			if (!search.isDone())
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return The most nodes all searches together expand per tick.
+	 */
+	public int getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * @return How many nodes the last tick expanded.
+	 */
+	public int getLastExpansions()
+	{
+		return lastExpansions;
+	}
+
+}
@@ -0,0 +1,137 @@
+package game.astar;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts the work done by the searches on a map and how long they take:
+ * expanded and pushed nodes, decrease-key operations, the largest open list,
+ * path lengths and a latency histogram.
+ * <p>
+ * Attach it with {@link Map#setStatistics(SearchStatistics)}; it then records
+ * every call to {@link Map#findPath(int, int, int, int)} and its overloads and
+ * every {@link PathSearch} that finds a path or fails. Recording can be turned
+ * on and off at any time, also through JMX after {@link #register()}. While it
+ * is off, or no statistics are attached, a search only pays for reading one
+ * field. Any number of threads may record searches at the same time.
+ */
+public class SearchStatistics implements SearchStatisticsMXBean
+{
+
+	/**
+	 * The name the statistics are registered under by {@link #register()}.
+	 */
+	public static final String OBJECT_NAME = "game.astar:type=SearchStatistics";
+
+	private volatile boolean enabled = true;
+
+	private final LongAdder queries = new LongAdder();
+	private final LongAdder expandedNodes = new LongAdder();
+	private final LongAdder pushedNodes = new LongAdder();
+	private final LongAdder decreasedKeys = new LongAdder();
+	private final LongAdder pathNodes = new LongAdder();
+	private final LongAdder totalTime = new LongAdder();
+	private final AtomicLong maxOpenListSize = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	/**
+	 * Registers the statistics with the platform MBean server under
+	 * {@link #OBJECT_NAME}, replacing any statistics registered there before.
+	 *
+	 * @throws IllegalStateException
+	 *             If the MBean server refuses the statistics.
+	 */
+	public void register()
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try
+		{
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		}
+		catch (JMException e)
+		{
+			throw new IllegalStateException("Could not register search statistics", e);
+		}
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	@Override
+	public SearchStatisticsSnapshot getSnapshot()
+	{
+		return new SearchStatisticsSnapshot(queries.sum(), expandedNodes.sum(), pushedNodes.sum(), decreasedKeys.sum(),
+				maxOpenListSize.get(), pathNodes.sum(), totalTime.sum(), maxLatency.get(), latencies);
+	}
+
+	@Override
+	public void reset()
+	{
+		queries.reset();
+		expandedNodes.reset();
+		pushedNodes.reset();
+		decreasedKeys.reset();
+		pathNodes.reset();
+		totalTime.reset();
+		maxOpenListSize.set(0);
+		maxLatency.set(0);
+		latencies.reset();
+	}
+
+	/**
+	 * Counts one search.
+	 *
+	 * @param context
+	 *            The context the search ran in, or null if it was answered
+	 *            without searching.
+	 * @param pathLength
+	 *            The number of nodes on the path found, 0 if there is none.
+	 * @param time
+	 *            How long the search took, in nanoseconds.
+	 */
+	void record(SearchContext context, int pathLength, long time)
+	{
+		queries.increment();
+		if (context != null)
+		{
+			expandedNodes.add(context.getExpandedNodes());
+			pushedNodes.add(context.getPushedNodes());
+			decreasedKeys.add(context.getDecreasedKeys());
+			updateMax(maxOpenListSize, context.getMaxOpenListSize());
+		}
+		pathNodes.add(pathLength);
+		totalTime.add(time);
+		updateMax(maxLatency, time);
+		latencies.record(time);
+	}
+
+	private static void updateMax(AtomicLong max, long value)
+	{
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value))
+		{
+			current = max.get();
+		}
+	}
+
+}
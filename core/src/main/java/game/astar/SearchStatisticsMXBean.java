@@ -0,0 +1,34 @@
+package game.astar;
+
+/**
+ * The management interface of {@link SearchStatistics}, for JConsole, Java
+ * Mission Control or any other JMX client.
+ */
+public interface SearchStatisticsMXBean
+{
+
+	/**
+	 * @return True if searches are being recorded.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Starts or stops recording searches. Counts recorded so far are kept.
+	 *
+	 * @param enabled
+	 *            True to record searches.
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return The counts and latencies recorded since the statistics were
+	 *         created or last reset.
+	 */
+	SearchStatisticsSnapshot getSnapshot();
+
+	/**
+	 * Forgets every search recorded so far.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,157 @@
+package game.astar;
+
+/**
+ * The counts and latencies of {@link SearchStatistics} at one point in time.
+ * Through JMX, a snapshot is shown as a composite value with one item per
+ * getter. Latencies are in nanoseconds; the percentiles are accurate to about
+ * 3%.
+ */
+public final class SearchStatisticsSnapshot
+{
+
+	private final long queries;
+	private final long expandedNodes;
+	private final long pushedNodes;
+	private final long decreasedKeys;
+	private final long maxOpenListSize;
+	private final long pathNodes;
+	private final long totalTime;
+	private final long maxLatency;
+	private final long medianLatency;
+	private final long latency90;
+	private final long latency99;
+	private final long latency999;
+
+	SearchStatisticsSnapshot(long queries, long expandedNodes, long pushedNodes, long decreasedKeys,
+			long maxOpenListSize, long pathNodes, long totalTime, long maxLatency, LatencyHistogram latencies)
+	{
+		this.queries = queries;
+		this.expandedNodes = expandedNodes;
+		this.pushedNodes = pushedNodes;
+		this.decreasedKeys = decreasedKeys;
+		this.maxOpenListSize = maxOpenListSize;
+		this.pathNodes = pathNodes;
+		this.totalTime = totalTime;
+		this.maxLatency = maxLatency;
+		this.medianLatency = latencies.getPercentile(50);
+		this.latency90 = latencies.getPercentile(90);
+		this.latency99 = latencies.getPercentile(99);
+		this.latency999 = latencies.getPercentile(99.9);
+	}
+
+	/**
+	 * @return The number of searches recorded.
+	 */
+	public long getQueries()
+	{
+		return queries;
+	}
+
+	/**
+	 * @return The number of nodes moved to the closed list, over all
+	 *         searches.
+	 */
+	public long getExpandedNodes()
+	{
+		return expandedNodes;
+	}
+
+	/**
+	 * @return The number of nodes added to the open list, over all searches.
+	 */
+	public long getPushedNodes()
+	{
+		return pushedNodes;
+	}
+
+	/**
+	 * @return How many times the G score of a node in the open list was
+	 *         lowered, over all searches.
+	 */
+	public long getDecreasedKeys()
+	{
+		return decreasedKeys;
+	}
+
+	/**
+	 * @return The most nodes the open list of any single search held at once.
+	 */
+	public long getMaxOpenListSize()
+	{
+		return maxOpenListSize;
+	}
+
+	/**
+	 * @return The number of nodes on all of the paths found.
+	 */
+	public long getPathNodes()
+	{
+		return pathNodes;
+	}
+
+	/**
+	 * @return The time spent searching, over all searches.
+	 */
+	public long getTotalTime()
+	{
+		return totalTime;
+	}
+
+	/**
+	 * @return The average time of a search, or 0 if none were recorded.
+	 */
+	public long getMeanLatency()
+	{
+		return queries != 0 ? totalTime / queries : 0;
+	}
+
+	/**
+	 * @return The time of the slowest search.
+	 */
+	public long getMaxLatency()
+	{
+		return maxLatency;
+	}
+
+	/**
+	 * @return The time half of the searches took at most.
+	 */
+	public long getMedianLatency()
+	{
+		return medianLatency;
+	}
+
+	/**
+	 * @return The time 90% of the searches took at most.
+	 */
+	public long getLatency90()
+	{
+		return latency90;
+	}
+
+	/**
+	 * @return The time 99% of the searches took at most.
+	 */
+	public long getLatency99()
+	{
+		return latency99;
+	}
+
+	/**
+	 * @return The time 99.9% of the searches took at most.
+	 */
+	public long getLatency999()
+	{
+		return latency999;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "queries=" + queries + ", expanded=" + expandedNodes + ", pushed=" + pushedNodes + ", decreased="
+				+ decreasedKeys + ", maxOpen=" + maxOpenListSize + ", pathNodes=" + pathNodes + ", mean="
+				+ getMeanLatency() + "ns, p50=" + medianLatency + "ns, p90=" + latency90 + "ns, p99=" + latency99
+				+ "ns, p99.9=" + latency999 + "ns, max=" + maxLatency + "ns";
+	}
+
+}
@@ -0,0 +1,65 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link BatchPathfinder} answers every query of a batch, in
+ * order, with a shortest path.
+ */
+class BatchPathfinderTest
+{
+
+	@Test
+	void answersEveryQueryInOrder()
+	{
+		Random random = new Random(10);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			for (int trial = 0; trial < 10; trial++)
+			{
+				boolean costs = trial % 2 == 1;
+				Map map = ReferenceDijkstra.randomMap(random, 10 + random.nextInt(40), 10 + random.nextInt(40),
+						random.nextInt(35), costs);
+				PathQuery[] queries = new PathQuery[1 + random.nextInt(100)];
+				for (int i = 0; i < queries.length; i++)
+				{
+					queries[i] = new PathQuery(random.nextInt(map.getWidth()), random.nextInt(map.getHeight()),
+							random.nextInt(map.getWidth()), random.nextInt(map.getHeight()));
+				}
+				for (SearchMode mode : SearchMode.values())
+				{
+					List<List<Node>> paths = new BatchPathfinder(map, pool).findPaths(queries, mode);
+					assertEquals(queries.length, paths.size());
+					for (int i = 0; i < queries.length; i++)
+					{
+						PathQuery query = queries[i];
+						int expected = ReferenceDijkstra.distancesFrom(map, query.getStartX(),
+								query.getStartY())[map.indexOf(query.getGoalX(), query.getGoalY())];
+						if (expected == ReferenceDijkstra.UNREACHABLE || expected == 0)
+						{
+							assertTrue(paths.get(i).isEmpty(), mode + " query " + i);
+						}
+						else
+						{
+							assertEquals(expected, ReferenceDijkstra.pathCost(map, query.getStartX(),
+									query.getStartY(), paths.get(i)), mode + " query " + i);
+						}
+					}
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+}
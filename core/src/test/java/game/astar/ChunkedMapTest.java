@@ -0,0 +1,189 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the searches of a {@link ChunkedMap} against a reference Dijkstra
+ * search on the same walls, and how its chunks are evicted, saved and loaded
+ * again.
+ */
+class ChunkedMapTest
+{
+
+	@TempDir
+	File directory;
+
+	@Test
+	void pathsAcrossChunksAreShortest()
+	{
+		Random random = new Random(21);
+		// Nodes -70 to 69 each way, crossing the chunk borders at -64, 0 and
+		// 64, with walls all around so the search can not leave.
+		int size = 140;
+		int offset = 70;
+		int[][] walls = new int[size][size];
+		for (int y = 0; y < size; y++)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				boolean border = x == 0 || y == 0 || x == size - 1 || y == size - 1;
+				walls[y][x] = border || random.nextInt(100) < 25 ? 1 : 0;
+			}
+		}
+		// A budget of a few chunks, so searches keep evicting and reloading.
+		ChunkedMap chunked = new ChunkedMap(new MemoryChunkStore(), 2000);
+		for (int y = 0; y < size; y++)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				chunked.setWalkable(x - offset, y - offset, walls[y][x] == 0);
+			}
+		}
+		Map map = new Map(walls);
+		assertTrue(chunked.getEvictions() > 0);
+
+		for (int i = 0; i < 40; i++)
+		{
+			int startX = 1 + random.nextInt(size - 2);
+			int startY = 1 + random.nextInt(size - 2);
+			int goalX = 1 + random.nextInt(size - 2);
+			int goalY = 1 + random.nextInt(size - 2);
+			String query = "from " + startX + "," + startY + " to " + goalX + "," + goalY;
+			int expected = ReferenceDijkstra.distancesFrom(map, startX, startY)[map.indexOf(goalX, goalY)];
+			List<Node> path = chunked.findPath(startX - offset, startY - offset, goalX - offset, goalY - offset,
+					size * size);
+			if (expected == ReferenceDijkstra.UNREACHABLE || startX == goalX && startY == goalY)
+			{
+				assertTrue(path.isEmpty(), query);
+				continue;
+			}
+			int x = startX - offset;
+			int y = startY - offset;
+			for (Node node : path)
+			{
+				assertEquals(1, Math.abs(node.getX() - x) + Math.abs(node.getY() - y), query);
+				x = node.getX();
+				y = node.getY();
+				assertTrue(map.isWalkable(x + offset, y + offset), query);
+			}
+			assertEquals(goalX - offset, x, query);
+			assertEquals(goalY - offset, y, query);
+			assertEquals(expected, path.size() * Node.MOVEMENT_COST, query);
+		}
+	}
+
+	@Test
+	void searchesStopAtTheExpansionLimit() throws IOException
+	{
+		ChunkedMap chunked = new ChunkedMap(new DirectoryChunkStore(directory), 1 << 20);
+		// A goal walled in on every side.
+		chunked.setWalkable(9, 10, false);
+		chunked.setWalkable(11, 10, false);
+		chunked.setWalkable(10, 9, false);
+		chunked.setWalkable(10, 11, false);
+		assertTrue(chunked.findPath(0, 0, 10, 10, 1000).isEmpty());
+		assertEquals(1000, chunked.getExpandedNodes());
+
+		// A goal in open space, farther than the limit allows.
+		assertTrue(chunked.findPath(0, 0, -300, 0, 100).isEmpty());
+		assertEquals(100, chunked.getExpandedNodes());
+		assertEquals(300, chunked.findPath(0, 0, -300, 0, 10000).size());
+	}
+
+	@Test
+	void evictedChunksAreSavedAndLoadedAgain() throws IOException
+	{
+		DirectoryChunkStore store = new DirectoryChunkStore(directory);
+		// Too small for any chunk, so only the last one used stays loaded.
+		ChunkedMap chunked = new ChunkedMap(store, 0);
+		chunked.setWalkable(5, 5, false);
+		assertEquals(0, chunked.getSaves());
+		assertTrue(chunked.isWalkable(100, 5));
+		assertEquals(1, chunked.getLoadedChunks());
+		assertEquals(1, chunked.getEvictions());
+		assertEquals(1, chunked.getSaves());
+		assertTrue(new File(directory, "0_0.chunk").isFile());
+
+		assertFalse(chunked.isWalkable(5, 5));
+		assertTrue(chunked.isWalkable(6, 5));
+		assertEquals(3, chunked.getLoads());
+
+		// A chunk that is all walkable again needs no file.
+		chunked.setWalkable(5, 5, true);
+		chunked.isWalkable(100, 5);
+		assertEquals(2, chunked.getSaves());
+		assertFalse(new File(directory, "0_0.chunk").exists());
+		// Chunks that did not change are not saved.
+		chunked.isWalkable(5, 5);
+		chunked.isWalkable(100, 5);
+		assertEquals(2, chunked.getSaves());
+	}
+
+	@Test
+	void flushedChunksSurviveTheMap() throws IOException
+	{
+		DirectoryChunkStore store = new DirectoryChunkStore(directory);
+		ChunkedMap chunked = new ChunkedMap(store, 1 << 20);
+		chunked.setWalkable(-1, -1, false);
+		// A chunk that is all wall, far from the first.
+		for (int y = 0; y < ChunkedMap.CHUNK_SIZE; y++)
+		{
+			for (int x = 0; x < ChunkedMap.CHUNK_SIZE; x++)
+			{
+				chunked.setWalkable(1024 + x, 1024 + y, false);
+			}
+		}
+		chunked.flush();
+		assertEquals(2, chunked.getSaves());
+		chunked.flush();
+		assertEquals(2, chunked.getSaves());
+		assertEquals(0, chunked.getEvictions());
+
+		ChunkedMap reloaded = new ChunkedMap(store, 1 << 20);
+		assertFalse(reloaded.isWalkable(-1, -1));
+		assertTrue(reloaded.isWalkable(-2, -1));
+		long mixed = reloaded.getLoadedBytes();
+		assertFalse(reloaded.isWalkable(1024, 1024));
+		assertFalse(reloaded.isWalkable(1087, 1087));
+		// A uniform chunk is kept as a flag, far smaller than its rows.
+		assertTrue(reloaded.getLoadedBytes() - mixed < mixed / 2, reloaded.getLoadedBytes() + " bytes");
+		assertTrue(reloaded.isWalkable(1088, 1024));
+	}
+
+	/**
+	 * Keeps chunks in memory, copied so the map can not change them behind
+	 * the store's back.
+	 */
+	private static final class MemoryChunkStore implements ChunkStore
+	{
+
+		private final HashMap<String, long[]> chunks = new HashMap<String, long[]>();
+
+		@Override
+		public long[] load(int chunkX, int chunkY)
+		{
+			long[] rows = chunks.get(chunkX + "," + chunkY);
+			return rows != null ? Arrays.copyOf(rows, rows.length) : null;
+		}
+
+		@Override
+		public void save(int chunkX, int chunkY, long[] rows)
+		{
+			chunks.put(chunkX + "," + chunkY, rows != null ? Arrays.copyOf(rows, rows.length) : null);
+		}
+
+	}
+
+}
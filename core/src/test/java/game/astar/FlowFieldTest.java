@@ -0,0 +1,81 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the distances and steps of a {@link FlowField} against a reference
+ * Dijkstra search while the field repairs itself after every change.
+ */
+class FlowFieldTest
+{
+
+	@Test
+	void repairedFieldMatchesReference()
+	{
+		Random random = new Random(11);
+		for (int trial = 0; trial < 30; trial++)
+		{
+			boolean costs = trial % 2 == 1;
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(36), 5 + random.nextInt(36),
+					random.nextInt(35), costs);
+			int[] goalXs = new int[1 + random.nextInt(3)];
+			int[] goalYs = new int[goalXs.length];
+			for (int i = 0; i < goalXs.length; i++)
+			{
+				goalXs[i] = random.nextInt(map.getWidth());
+				goalYs[i] = random.nextInt(map.getHeight());
+			}
+			FlowField field = new FlowField(map, goalXs, goalYs);
+			for (int round = 0; round < 30; round++)
+			{
+				check(map, field, goalXs, goalYs);
+				for (int edit = random.nextInt(4); edit >= 0; edit--)
+				{
+					ReferenceDijkstra.randomEdit(random, map, costs);
+				}
+			}
+			check(map, field, goalXs, goalYs);
+			field.dispose();
+		}
+	}
+
+	private static void check(Map map, FlowField field, int[] goalXs, int[] goalYs)
+	{
+		// The distance to the closest goal.
+		int[] expected = ReferenceDijkstra.distancesTo(map, goalXs[0], goalYs[0]);
+		for (int i = 1; i < goalXs.length; i++)
+		{
+			int[] distance = ReferenceDijkstra.distancesTo(map, goalXs[i], goalYs[i]);
+			for (int node = 0; node < expected.length; node++)
+			{
+				if (distance[node] != ReferenceDijkstra.UNREACHABLE
+						&& (expected[node] == ReferenceDijkstra.UNREACHABLE || distance[node] < expected[node]))
+				{
+					expected[node] = distance[node];
+				}
+			}
+		}
+		for (int y = 0; y < map.getHeight(); y++)
+		{
+			for (int x = 0; x < map.getWidth(); x++)
+			{
+				int distance = field.getDistance(x, y);
+				assertEquals(expected[map.indexOf(x, y)], distance, "distance of " + x + "," + y);
+				if (distance > 0)
+				{
+					// The step leads to a node one step's cost closer.
+					int nextX = field.getNextX(x, y);
+					int nextY = field.getNextY(x, y);
+					assertEquals(1, Math.abs(nextX - x) + Math.abs(nextY - y), "step from " + x + "," + y);
+					assertEquals(distance, field.getDistance(nextX, nextY) + map.getCost(nextX, nextY),
+							"step from " + x + "," + y);
+				}
+			}
+		}
+	}
+
+}
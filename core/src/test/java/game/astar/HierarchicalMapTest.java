@@ -0,0 +1,57 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the paths of a {@link HierarchicalMap} against a reference Dijkstra
+ * search while walls change and clusters are rebuilt.
+ */
+class HierarchicalMapTest
+{
+
+	@Test
+	void pathsAreWalkableAndFoundWheneverOneExists()
+	{
+		Random random = new Random(7);
+		for (int trial = 0; trial < 30; trial++)
+		{
+			// Cost changes leave the clusters alone, but must not hide the
+			// wall changes around them.
+			boolean costs = trial % 2 == 1;
+			Map map = ReferenceDijkstra.randomMap(random, 8 + random.nextInt(40), 8 + random.nextInt(40),
+					random.nextInt(35), costs);
+			HierarchicalMap hierarchy = new HierarchicalMap(map, 4 + random.nextInt(8));
+			for (int i = 0; i < 60; i++)
+			{
+				int startX = random.nextInt(map.getWidth());
+				int startY = random.nextInt(map.getHeight());
+				int goalX = random.nextInt(map.getWidth());
+				int goalY = random.nextInt(map.getHeight());
+				String query = "from " + startX + "," + startY + " to " + goalX + "," + goalY;
+				int expected = ReferenceDijkstra.distancesFrom(map, startX, startY)[map.indexOf(goalX, goalY)];
+				List<Node> path = hierarchy.findPath(startX, startY, goalX, goalY);
+				if (expected == ReferenceDijkstra.UNREACHABLE || startX == goalX && startY == goalY)
+				{
+					assertTrue(path.isEmpty(), query);
+				}
+				else
+				{
+					// Close to the shortest path, but never shorter.
+					long cost = ReferenceDijkstra.pathCost(map, startX, startY, path);
+					assertTrue(cost >= expected, query + " costs " + cost + ", the shortest " + expected);
+				}
+				for (int edit = random.nextInt(3); edit > 0; edit--)
+				{
+					ReferenceDijkstra.randomEdit(random, map, costs);
+				}
+			}
+			hierarchy.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the plans of an {@link IncrementalPlanner} against a reference
+ * Dijkstra search while the agent walks and the map keeps changing.
+ */
+class IncrementalPlannerTest
+{
+
+	@Test
+	void repairedPlansAreShortest()
+	{
+		Random random = new Random(9);
+		for (int trial = 0; trial < 40; trial++)
+		{
+			boolean costs = trial % 2 == 1;
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(36), 5 + random.nextInt(36),
+					random.nextInt(35), costs);
+			int x = random.nextInt(map.getWidth());
+			int y = random.nextInt(map.getHeight());
+			int goalX = random.nextInt(map.getWidth());
+			int goalY = random.nextInt(map.getHeight());
+			map.setWalkable(x, y, true);
+			IncrementalPlanner planner = new IncrementalPlanner(map, x, y, goalX, goalY);
+			for (int i = 0; i < 40; i++)
+			{
+				String query = "from " + x + "," + y + " to " + goalX + "," + goalY;
+				List<Node> path = planner.findPath();
+				int expected = ReferenceDijkstra.distancesFrom(map, x, y)[map.indexOf(goalX, goalY)];
+				if (expected == ReferenceDijkstra.UNREACHABLE || x == goalX && y == goalY)
+				{
+					assertTrue(path.isEmpty(), query);
+				}
+				else
+				{
+					assertEquals(expected, ReferenceDijkstra.pathCost(map, x, y, path), query);
+					// Take the first step of the plan, as an agent would.
+					x = path.get(0).getX();
+					y = path.get(0).getY();
+					planner.moveStart(x, y);
+				}
+				for (int edit = random.nextInt(4); edit > 0; edit--)
+				{
+					ReferenceDijkstra.randomEdit(random, map, costs);
+				}
+				// The agent can not stand in a wall.
+				map.setWalkable(x, y, true);
+			}
+			planner.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bucket boundaries and percentile ranks of a
+ * {@link LatencyHistogram}.
+ */
+class LatencyHistogramTest
+{
+
+	@Test
+	void smallValuesAreCountedExactly()
+	{
+		for (long value = 0; value < 64; value++)
+		{
+			assertEquals(value, only(value));
+		}
+		assertEquals(0, only(-5), "negative values count as zero");
+	}
+
+	@Test
+	void bucketsAreWithinThreePercentAndDoNotOverlap()
+	{
+		Random random = new Random(23);
+		for (int bits = 6; bits < 63; bits++)
+		{
+			long power = 1L << bits;
+			long[] values = { power, power + 1, power - 1, power + random.nextLong(power >>> 1),
+					power + (power >>> 1) + random.nextLong(power >>> 1), power * 2 - 1 };
+			for (long value : values)
+			{
+				long highest = only(value);
+				assertTrue(highest >= value, value + " counted up to " + highest);
+				assertTrue(highest - value < Math.max(1, value / 32 + 1), value + " counted up to " + highest);
+				// The highest value of a bucket is in it, the next one is not.
+				assertEquals(highest, only(highest), "bucket of " + value);
+				if (highest < Long.MAX_VALUE)
+				{
+					long next = only(highest + 1);
+					assertTrue(next > highest, "bucket after " + value);
+					assertTrue(next - (highest + 1) < Math.max(1, (highest + 1) / 32 + 1), "bucket after " + value);
+				}
+			}
+		}
+		assertEquals(Long.MAX_VALUE, only(Long.MAX_VALUE));
+	}
+
+	@Test
+	void percentilesPickTheValueOfTheirRank()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50), "empty");
+		for (long value = 1; value <= 60; value++)
+		{
+			histogram.record(value);
+		}
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(1, histogram.getPercentile(1));
+		assertEquals(2, histogram.getPercentile(2));
+		assertEquals(30, histogram.getPercentile(50));
+		assertEquals(54, histogram.getPercentile(90));
+		assertEquals(60, histogram.getPercentile(99.9));
+		assertEquals(60, histogram.getPercentile(100));
+		assertEquals(60, histogram.getPercentile(150));
+
+		histogram.reset();
+		assertEquals(0, histogram.getPercentile(100), "after reset");
+		histogram.record(1000000);
+		histogram.record(7);
+		assertEquals(7, histogram.getPercentile(50));
+		assertTrue(Math.abs(histogram.getPercentile(51) - 1000000) <= 1000000 / 32);
+	}
+
+	/**
+	 * @return The value a histogram holding only the given value reports for
+	 *         every percentile: the highest value of the value's bucket.
+	 */
+	private static long only(long value)
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(value);
+		long highest = histogram.getPercentile(100);
+		assertEquals(highest, histogram.getPercentile(0));
+		return highest;
+	}
+
+}
@@ -0,0 +1,203 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes maps to files and loads them back, and checks that damaged files and
+ * bad arrays are rejected.
+ */
+class MapFileTest
+{
+
+	@TempDir
+	File directory;
+
+	@Test
+	void loadedMapsMatchTheWrittenOnes() throws IOException
+	{
+		Random random = new Random(11);
+		// Widths around the 64 nodes of a walkability word.
+		int[] widths = { 1, 63, 64, 65, 130 };
+		for (int width : widths)
+		{
+			for (int costs = 0; costs < 2; costs++)
+			{
+				Map map = ReferenceDijkstra.randomMap(random, width, 1 + random.nextInt(9), 30, costs == 1);
+				File file = new File(directory, width + "-" + costs + ".map");
+				MapFile.write(map, file);
+				assertSameNodes(map, MapFile.load(file), file.getName());
+			}
+		}
+	}
+
+	@Test
+	void writtenArraysMatchTheMapTheyDescribe() throws IOException
+	{
+		Random random = new Random(12);
+		int[][] walls = new int[7][70];
+		int[][] costs = new int[7][70];
+		for (int y = 0; y < 7; y++)
+		{
+			for (int x = 0; x < 70; x++)
+			{
+				walls[y][x] = random.nextInt(4) == 0 ? 1 : 0;
+				costs[y][x] = 1 + random.nextInt(Map.MAX_COST);
+			}
+		}
+		File file = new File(directory, "arrays.map");
+		MapFile.write(walls, costs, file);
+		assertSameNodes(new Map(walls, costs), MapFile.load(file), "with costs");
+		MapFile.write(walls, null, file);
+		assertSameNodes(new Map(walls), MapFile.load(file), "without costs");
+	}
+
+	@Test
+	void badArraysLeaveTheFileUntouched() throws IOException
+	{
+		File file = new File(directory, "kept.map");
+		MapFile.write(new int[3][3], null, file);
+		byte[] before = Files.readAllBytes(file.toPath());
+
+		assertWriteRejected(file, new int[][] { { 0, 0 }, { 0 } }, null);
+		assertWriteRejected(file, new int[2][2], new int[][] { { 1, 1 }, { 1 } });
+		assertWriteRejected(file, new int[2][2], new int[3][2]);
+		assertWriteRejected(file, new int[2][2], new int[][] { { 1, 1 }, { 1, 0 } });
+		assertWriteRejected(file, new int[2][2], new int[][] { { 1, Map.MAX_COST + 1 }, { 1, 1 } });
+		assertWriteRejected(file, new int[0][0], null);
+		assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	void damagedFilesAreRejected() throws IOException
+	{
+		int[][] costs = new int[4][4];
+		for (int[] row : costs)
+		{
+			Arrays.fill(row, 5);
+		}
+		File file = new File(directory, "damaged.map");
+
+		assertLoadRejected(file, new byte[10], "too short for a header");
+
+		MapFile.write(new int[4][4], costs, file);
+		byte[] good = Files.readAllBytes(file.toPath());
+		assertLoadRejected(file, withInt(good, 0, 0x12345678), "magic number");
+		assertLoadRejected(file, withInt(good, 4, 2), "version");
+		assertLoadRejected(file, withInt(good, 8, 0), "width");
+		assertLoadRejected(file, withInt(good, 12, -1), "height");
+		assertLoadRejected(file, withInt(withInt(good, 8, 1 << 16), 12, 1 << 16), "size overflow");
+		assertLoadRejected(file, Arrays.copyOf(good, good.length - 1), "truncated");
+		// Cost counts follow the header, one per cost from 0.
+		assertLoadRejected(file, withInt(good, 64, 1), "nodes costing 0");
+		assertLoadRejected(file, withInt(good, 64 + 4 * 5, 15), "counts not adding up");
+		assertLoadRejected(file, withInt(withInt(good, 64 + 4 * 5, 17), 64 + 4 * 6, -1), "negative count");
+
+		Files.write(file.toPath(), good);
+		assertEquals(5, MapFile.load(file).getCost(3, 3));
+	}
+
+	@Test
+	void textGridsArePaddedWithWalls() throws IOException
+	{
+		File text = new File(directory, "grid.txt");
+		Files.write(text.toPath(), ".#0\n \n..x.\n".getBytes(StandardCharsets.US_ASCII));
+		File file = new File(directory, "grid.map");
+		MapFile.convertText(text, file);
+		Map map = MapFile.load(file);
+		assertEquals(4, map.getWidth());
+		assertEquals(3, map.getHeight());
+		String[] expected = { "o#o#", "o###", "oo#o" };
+		for (int y = 0; y < 3; y++)
+		{
+			for (int x = 0; x < 4; x++)
+			{
+				assertEquals(expected[y].charAt(x) == 'o', map.isWalkable(x, y), "node " + x + "," + y);
+			}
+		}
+
+		Files.write(text.toPath(), new byte[0]);
+		assertThrows(IOException.class, new Executable()
+		{
+			@Override
+			public void execute() throws IOException
+			{
+				MapFile.convertText(new File(directory, "grid.txt"), new File(directory, "empty.map"));
+			}
+		});
+	}
+
+	private static void assertSameNodes(Map expected, Map actual, String message)
+	{
+		assertEquals(expected.getWidth(), actual.getWidth(), message);
+		assertEquals(expected.getHeight(), actual.getHeight(), message);
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				String node = message + ", node " + x + "," + y;
+				assertEquals(expected.isWalkable(x, y), actual.isWalkable(x, y), node);
+				assertEquals(expected.getCost(x, y), actual.getCost(x, y), node);
+			}
+		}
+		// Loaded maps find the same paths.
+		if (expected.isWalkable(0, 0))
+		{
+			assertEquals(expected.findPath(0, 0, expected.getWidth() - 1, expected.getHeight() - 1).size(),
+					actual.findPath(0, 0, actual.getWidth() - 1, actual.getHeight() - 1).size(), message);
+		}
+	}
+
+	private static void assertWriteRejected(final File file, final int[][] map, final int[][] costs)
+	{
+		assertThrows(IllegalArgumentException.class, new Executable()
+		{
+			@Override
+			public void execute() throws IOException
+			{
+				MapFile.write(map, costs, file);
+			}
+		});
+	}
+
+	private static void assertLoadRejected(final File file, byte[] content, String message) throws IOException
+	{
+		Files.write(file.toPath(), content);
+		IOException e = assertThrows(IOException.class, new Executable()
+		{
+			@Override
+			public void execute() throws IOException
+			{
+				MapFile.load(file);
+			}
+		}, message);
+		assertTrue(e.getMessage().endsWith(file.toString()), e.getMessage());
+	}
+
+	/**
+	 * @return A copy of a file's content with a little endian integer
+	 *         replaced.
+	 */
+	private static byte[] withInt(byte[] content, int offset, int value)
+	{
+		byte[] copy = content.clone();
+		ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return copy;
+	}
+
+}
@@ -0,0 +1,95 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link MapRenderer} draws only the visible nodes, and only
+ * redraws its cached background when the view moves or a wall changes.
+ */
+class MapRendererTest
+{
+
+	private static final int TILE = 32;
+
+	@Test
+	void drawsTheNodesInsideTheClip()
+	{
+		Map map = new Map(new int[8][8]);
+		map.setWalkable(3, 2, false);
+		MapRenderer renderer = new MapRenderer(map);
+		BufferedImage image = new BufferedImage(8 * TILE, 8 * TILE, BufferedImage.TYPE_INT_ARGB);
+
+		// Nodes 2 to 4 across, 1 to 2 down.
+		draw(renderer, image, 2 * TILE, TILE, 3 * TILE, 2 * TILE, map.findPath(0, 1, 7, 1));
+		assertEquals(Color.WHITE, pixel(image, 3, 2), "wall in view");
+		assertEquals(Color.BLACK, pixel(image, 2, 2), "floor in view");
+		assertEquals(Color.YELLOW, pixel(image, 4, 1), "path in view");
+		assertEquals(Color.GRAY.getRGB(), image.getRGB(2 * TILE, TILE + 5), "grid line in view");
+		// Outside the clip nothing is drawn, not even the path.
+		assertEquals(0, image.getRGB(TILE + 5, TILE + 5), "path out of view");
+		assertEquals(0, image.getRGB(5 * TILE + 5, 2 * TILE + 5), "floor out of view");
+	}
+
+	@Test
+	void redrawsOnlyWhenTheViewMovesOrAWallChanges()
+	{
+		Map map = new Map(new int[8][8]);
+		MapRenderer renderer = new MapRenderer(map);
+		BufferedImage image = new BufferedImage(8 * TILE, 8 * TILE, BufferedImage.TYPE_INT_ARGB);
+
+		draw(renderer, image, 0, 0, 4 * TILE, 4 * TILE, null);
+		draw(renderer, image, 0, 0, 4 * TILE, 4 * TILE, null);
+		assertEquals(1, renderer.getBackgroundDraws(), "same view");
+
+		// A clip inside the same nodes keeps the cache.
+		draw(renderer, image, 5, 5, 4 * TILE - 10, 4 * TILE - 10, null);
+		assertEquals(1, renderer.getBackgroundDraws(), "clip within the same nodes");
+
+		draw(renderer, image, TILE, 0, 4 * TILE, 4 * TILE, null);
+		assertEquals(2, renderer.getBackgroundDraws(), "view moved");
+
+		map.setCost(2, 2, 50);
+		draw(renderer, image, TILE, 0, 4 * TILE, 4 * TILE, null);
+		assertEquals(2, renderer.getBackgroundDraws(), "cost changed");
+
+		map.setWalkable(2, 2, false);
+		draw(renderer, image, TILE, 0, 4 * TILE, 4 * TILE, null);
+		assertEquals(3, renderer.getBackgroundDraws(), "wall placed");
+		assertEquals(Color.WHITE, pixel(image, 2, 2), "new wall");
+
+		// Nothing visible, nothing drawn.
+		draw(renderer, image, 8 * TILE, 0, TILE, TILE, null);
+		assertEquals(3, renderer.getBackgroundDraws(), "view off the map");
+	}
+
+	private static void draw(MapRenderer renderer, BufferedImage image, int x, int y, int width, int height,
+			List<Node> path)
+	{
+		Graphics g = image.getGraphics();
+		try
+		{
+			g.setClip(x, y, width, height);
+			renderer.draw(g, path);
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+
+	/**
+	 * @return The color inside a node's grid lines.
+	 */
+	private static Color pixel(BufferedImage image, int x, int y)
+	{
+		return new Color(image.getRGB(x * TILE + TILE / 2, y * TILE + TILE / 2));
+	}
+
+}
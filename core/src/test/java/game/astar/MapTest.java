@@ -0,0 +1,200 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the searches of {@link Map} against a reference Dijkstra search on
+ * random maps, while walls and costs keep changing between queries.
+ */
+class MapTest
+{
+
+	private static final SearchMode[] MODES = SearchMode.values();
+
+	@Test
+	void pathsAreShortestInEveryMode()
+	{
+		Random random = new Random(1);
+		for (int trial = 0; trial < 40; trial++)
+		{
+			boolean costs = trial % 2 == 1;
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(36), 5 + random.nextInt(36),
+					random.nextInt(40), costs);
+			for (int round = 0; round < 5; round++)
+			{
+				for (int query = 0; query < 10; query++)
+				{
+					checkQuery(random, map);
+				}
+				for (int edit = random.nextInt(8); edit >= 0; edit--)
+				{
+					ReferenceDijkstra.randomEdit(random, map, costs);
+				}
+			}
+		}
+	}
+
+	@Test
+	void reachabilityFollowsWallChanges()
+	{
+		Random random = new Random(2);
+		for (int trial = 0; trial < 20; trial++)
+		{
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(30), 5 + random.nextInt(30),
+					20 + random.nextInt(30), false);
+			for (int edit = 0; edit < 100; edit++)
+			{
+				ReferenceDijkstra.randomEdit(random, map, false);
+				int startX = random.nextInt(map.getWidth());
+				int startY = random.nextInt(map.getHeight());
+				int[] distance = ReferenceDijkstra.distancesFrom(map, startX, startY);
+				for (int i = 0; i < 10; i++)
+				{
+					int goalX = random.nextInt(map.getWidth());
+					int goalY = random.nextInt(map.getHeight());
+					boolean reachable = map.isWalkable(goalX, goalY)
+							&& distance[map.indexOf(goalX, goalY)] != ReferenceDijkstra.UNREACHABLE;
+					assertEquals(reachable, map.isReachable(startX, startY, goalX, goalY),
+							"reachability of " + goalX + "," + goalY + " from " + startX + "," + startY);
+				}
+			}
+		}
+	}
+
+	@Test
+	void reachabilityStaysConsistentWhileAnotherThreadChangesWalls() throws InterruptedException
+	{
+		// The top row is never touched, so its nodes stay connected however
+		// the walls below it change and get relabeled.
+		final int size = 24;
+		final Map map = new Map(new int[size][size]);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread reader = new Thread()
+		{
+
+			@Override
+			public void run()
+			{
+				Random random = new Random(4);
+				while (!done.get())
+				{
+					int x = random.nextInt(size);
+					if (!map.isReachable(x, 0, (x + 5) % size, 0))
+					{
+						wrong.incrementAndGet();
+					}
+				}
+			}
+
+		};
+		map.isReachable(0, 0, 1, 1);
+		reader.start();
+		Random random = new Random(5);
+		try
+		{
+			for (int edit = 0; edit < 200000; edit++)
+			{
+				int x = random.nextInt(size);
+				int y = 2 + random.nextInt(size - 2);
+				map.setWalkable(x, y, !map.isWalkable(x, y));
+			}
+		}
+		finally
+		{
+			done.set(true);
+			reader.join();
+		}
+		assertEquals(0, wrong.get());
+	}
+
+	@Test
+	void landmarksKeepPathsShortest()
+	{
+		Random random = new Random(3);
+		for (int trial = 0; trial < 20; trial++)
+		{
+			boolean costs = trial % 2 == 1;
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(36), 5 + random.nextInt(36),
+					random.nextInt(35), costs);
+			// Uniform costs are stored in units of the movement cost, so they
+			// fit 16 bit tables.
+			LandmarkHeuristic landmarks = new LandmarkHeuristic(map, 1 + random.nextInt(4), !costs);
+			map.setHeuristic(landmarks);
+			for (int round = 0; round < 4; round++)
+			{
+				for (int query = 0; query < 10; query++)
+				{
+					checkQuery(random, map);
+					checkEstimates(random, map, landmarks);
+				}
+				int modifications = map.getModifications();
+				for (int edit = random.nextInt(5); edit >= 0; edit--)
+				{
+					ReferenceDijkstra.randomEdit(random, map, costs);
+				}
+				// An edit setting a node's cost to the one it had changes
+				// nothing.
+				assertEquals(map.getModifications() != modifications, landmarks.isStale(), "tables after edits");
+				for (int query = 0; query < 5; query++)
+				{
+					checkQuery(random, map);
+				}
+				landmarks.rebuild();
+			}
+		}
+	}
+
+	private static void checkQuery(Random random, Map map)
+	{
+		int startX = random.nextInt(map.getWidth());
+		int startY = random.nextInt(map.getHeight());
+		int goalX = random.nextInt(map.getWidth());
+		int goalY = random.nextInt(map.getHeight());
+		int[] distance = ReferenceDijkstra.distancesFrom(map, startX, startY);
+		int expected = distance[map.indexOf(goalX, goalY)];
+		boolean trivial = startX == goalX && startY == goalY;
+		for (SearchMode mode : MODES)
+		{
+			String query = mode + " from " + startX + "," + startY + " to " + goalX + "," + goalY;
+			List<Node> path = map.findPath(startX, startY, goalX, goalY, mode);
+			if (trivial || expected == ReferenceDijkstra.UNREACHABLE)
+			{
+				assertTrue(path.isEmpty(), query);
+			}
+			else
+			{
+				assertEquals(expected, ReferenceDijkstra.pathCost(map, startX, startY, path), query);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the landmark estimate of up to date tables never exceeds
+	 * the actual cost.
+	 */
+	private static void checkEstimates(Random random, Map map, LandmarkHeuristic landmarks)
+	{
+		int goalX = random.nextInt(map.getWidth());
+		int goalY = random.nextInt(map.getHeight());
+		int[] distance = ReferenceDijkstra.distancesTo(map, goalX, goalY);
+		int goal = map.indexOf(goalX, goalY);
+		for (int node = 0; node < distance.length; node++)
+		{
+			if (distance[node] != ReferenceDijkstra.UNREACHABLE)
+			{
+				int estimate = landmarks.estimate(node, goal);
+				assertTrue(estimate <= distance[node], "estimate " + estimate + " of cost " + distance[node]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link PathCache} never hands out a path the map no longer
+ * allows, while walls and costs change between queries.
+ */
+class PathCacheTest
+{
+
+	@Test
+	void cachedPathsStayWalkable()
+	{
+		Random random = new Random(4);
+		for (int trial = 0; trial < 30; trial++)
+		{
+			boolean costs = trial % 2 == 1;
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(36), 5 + random.nextInt(36),
+					random.nextInt(30), costs);
+			PathCache cache = new PathCache(map, 200 + random.nextInt(2000));
+			int[][] queries = randomQueries(random, map, 12);
+			for (int i = 0; i < 300; i++)
+			{
+				int[] query = queries[random.nextInt(queries.length)];
+				List<Node> path = cache.findPath(query[0], query[1], query[2], query[3]);
+				int expected = ReferenceDijkstra.distancesFrom(map, query[0], query[1])[map.indexOf(query[2], query[3])];
+				String name = "from " + query[0] + "," + query[1] + " to " + query[2] + "," + query[3];
+				if (expected == ReferenceDijkstra.UNREACHABLE || query[0] == query[2] && query[1] == query[3])
+				{
+					assertTrue(path.isEmpty(), name);
+				}
+				else
+				{
+					// Opening a wall may leave a longer path cached, but it
+					// must still be walkable.
+					long cost = ReferenceDijkstra.pathCost(map, query[0], query[1], path);
+					assertTrue(cost >= expected, name + " costs " + cost + ", the shortest " + expected);
+				}
+				ReferenceDijkstra.randomEdit(random, map, costs);
+			}
+			assertTrue(cache.getHits() > 0, "hits");
+			cache.dispose();
+			assertEquals(0, cache.getCachedNodes());
+		}
+	}
+
+	@Test
+	void cachedPathsStayShortestWhileTheMapOnlyGetsHarder()
+	{
+		Random random = new Random(5);
+		for (int trial = 0; trial < 30; trial++)
+		{
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(36), 5 + random.nextInt(36),
+					random.nextInt(20), true);
+			PathCache cache = new PathCache(map, 100000);
+			int[][] queries = randomQueries(random, map, 8);
+			for (int i = 0; i < 200; i++)
+			{
+				int[] query = queries[random.nextInt(queries.length)];
+				List<Node> path = cache.findPath(query[0], query[1], query[2], query[3]);
+				int expected = ReferenceDijkstra.distancesFrom(map, query[0], query[1])[map.indexOf(query[2], query[3])];
+				if (expected != ReferenceDijkstra.UNREACHABLE && (query[0] != query[2] || query[1] != query[3]))
+				{
+					assertEquals(expected, ReferenceDijkstra.pathCost(map, query[0], query[1], path));
+				}
+				// New walls and higher costs can only make a path invalid or
+				// leave it the shortest.
+				int x = random.nextInt(map.getWidth());
+				int y = random.nextInt(map.getHeight());
+				if (random.nextBoolean())
+				{
+					map.setWalkable(x, y, false);
+				}
+				else
+				{
+					map.setCost(x, y, Math.min(Map.MAX_COST, map.getCost(x, y) + 1 + random.nextInt(20)));
+				}
+			}
+		}
+	}
+
+	@Test
+	void evictsToStayWithinCapacity()
+	{
+		Random random = new Random(6);
+		Map map = ReferenceDijkstra.randomMap(random, 60, 60, 10, false);
+		PathCache cache = new PathCache(map, 1000);
+		for (int i = 0; i < 300; i++)
+		{
+			cache.findPath(random.nextInt(60), random.nextInt(60), random.nextInt(60), random.nextInt(60));
+			assertTrue(cache.getCachedNodes() <= 1000, "cached nodes " + cache.getCachedNodes());
+		}
+		assertTrue(cache.getEvictions() > 0, "evictions");
+	}
+
+	private static int[][] randomQueries(Random random, Map map, int count)
+	{
+		int[][] queries = new int[count][];
+		for (int i = 0; i < count; i++)
+		{
+			queries[i] = new int[] { random.nextInt(map.getWidth()), random.nextInt(map.getHeight()),
+					random.nextInt(map.getWidth()), random.nextInt(map.getHeight()) };
+		}
+		return queries;
+	}
+
+}
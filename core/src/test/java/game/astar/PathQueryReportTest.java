@@ -0,0 +1,237 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.Timespan;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records path query, step and tick events, and checks how
+ * {@link PathQueryReport} sorts the queries and charges the ticks.
+ */
+class PathQueryReportTest
+{
+
+	private static final Comparator<RecordedEvent> EARLIEST_FIRST = new Comparator<RecordedEvent>()
+	{
+
+		@Override
+		public int compare(RecordedEvent a, RecordedEvent b)
+		{
+			return a.getStartTime().compareTo(b.getStartTime());
+		}
+
+	};
+
+	@TempDir
+	File directory;
+
+	@Test
+	void ticksAreOnlyChargedForTheStepsTheyRan() throws Exception
+	{
+		File file = new File(directory, "ticks.jfr");
+		Recording recording = startRecording();
+		try
+		{
+			// A search spread over two ticks, and a single call in the second.
+			PathQueryEvent spread = new PathQueryEvent();
+			spread.begin();
+			TickEvent first = new TickEvent();
+			first.begin();
+			step(42, 3);
+			end(first);
+			TickEvent second = new TickEvent();
+			second.begin();
+			step(42, 1);
+			// A step of a search too fast to be recorded.
+			step(99, 1);
+			PathQueryEvent single = new PathQueryEvent();
+			single.begin();
+			Thread.sleep(2);
+			single.end();
+			single.searchTime = Duration.ofMillis(5).toNanos();
+			single.commit();
+			end(second);
+			spread.end();
+			spread.searchId = 42;
+			spread.searchTime = Duration.ofMillis(4).toNanos();
+			spread.commit();
+		}
+		finally
+		{
+			recording.stop();
+		}
+		recording.dump(file.toPath());
+		recording.close();
+
+		List<RecordedEvent> queries = new ArrayList<RecordedEvent>();
+		List<RecordedEvent> steps = new ArrayList<RecordedEvent>();
+		List<RecordedEvent> ticks = new ArrayList<RecordedEvent>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath()))
+		{
+			String name = event.getEventType().getName();
+			if (name.equals(PathQueryEvent.NAME))
+			{
+				queries.add(event);
+			}
+			else if (name.equals(PathSearchStepEvent.NAME))
+			{
+				steps.add(event);
+			}
+			else
+			{
+				ticks.add(event);
+			}
+		}
+		assertEquals(2, queries.size());
+		assertEquals(3, steps.size());
+		assertEquals(2, ticks.size());
+		Collections.sort(steps, EARLIEST_FIRST);
+		Collections.sort(ticks, EARLIEST_FIRST);
+
+		Set<Long> searches = Collections.singleton(Long.valueOf(42));
+		PathQueryReport.TickSearches firstTick = new PathQueryReport.TickSearches(ticks.get(0), queries, steps,
+				searches);
+		assertEquals(1, firstTick.queries);
+		assertEquals(steps.get(0).getDuration(), firstTick.searchTime, "only the first step");
+
+		PathQueryReport.TickSearches secondTick = new PathQueryReport.TickSearches(ticks.get(1), queries, steps,
+				searches);
+		assertEquals(2, secondTick.queries);
+		assertEquals(steps.get(1).getDuration().plus(Duration.ofMillis(5)), secondTick.searchTime,
+				"the second step and the single call");
+
+		// The single call searched longer, though the spread search took longer.
+		String report = report(file);
+		String[] lines = report.split("\n");
+		int header = 0;
+		while (!lines[header].startsWith("Slowest path queries"))
+		{
+			header++;
+		}
+		assertTrue(lines[header + 2].trim().startsWith("5.000"), report);
+		assertTrue(lines[header + 3].trim().startsWith("4.000"), report);
+		assertTrue(report.startsWith("2 slow path queries searching for 9.000 ms, 2 slow ticks"), report);
+	}
+
+	@Test
+	void queriesSearchingLessThanTheMinimumAreNotRecorded() throws Exception
+	{
+		Map map = new Map(new int[8][8]);
+		SearchContext context = new SearchContext(map);
+		// Load and compile what the searches use before they are timed.
+		for (int i = 0; i < 1000; i++)
+		{
+			map.findPath(context, 0, 0, 7, 7, SearchMode.ASTAR, null);
+		}
+
+		File file = new File(directory, "fast.jfr");
+		Recording recording = startRecording();
+		try
+		{
+			map.findPath(context, 0, 0, 7, 7, SearchMode.ASTAR, null);
+			PathSearch search = new PathSearch(map, context, 0, 0, 7, 7);
+			while (search.getState() == PathSearch.State.RUNNING)
+			{
+				search.step(4);
+			}
+		}
+		finally
+		{
+			recording.stop();
+		}
+		recording.dump(file.toPath());
+		recording.close();
+
+		int queries = 0;
+		int steps = 0;
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath()))
+		{
+			String name = event.getEventType().getName();
+			queries += name.equals(PathQueryEvent.NAME) ? 1 : 0;
+			steps += name.equals(PathSearchStepEvent.NAME) ? 1 : 0;
+		}
+		assertEquals(0, queries);
+		assertTrue(steps > 1, steps + " steps");
+	}
+
+	private static Recording startRecording()
+	{
+		Recording recording = new Recording();
+		recording.enable(PathQueryEvent.NAME).withThreshold(Duration.ZERO);
+		recording.enable(PathSearchStepEvent.NAME).withThreshold(Duration.ZERO);
+		recording.enable(PathQueryReport.TICK_EVENT).withThreshold(Duration.ZERO);
+		recording.start();
+		return recording;
+	}
+
+	private static void step(long searchId, int millis) throws InterruptedException
+	{
+		PathSearchStepEvent step = new PathSearchStepEvent();
+		step.begin();
+		Thread.sleep(millis);
+		step.end();
+		step.searchId = searchId;
+		step.commit();
+	}
+
+	private static void end(TickEvent tick)
+	{
+		tick.end();
+		tick.updates = 1;
+		tick.commit();
+	}
+
+	private static String report(File file) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes, true, "UTF-8");
+		PathQueryReport.report(file, 10, out);
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8).replace("\r", "");
+	}
+
+	/**
+	 * The game loop's tick event, which lives in the demo.
+	 */
+	@Name(PathQueryReport.TICK_EVENT)
+	static final class TickEvent extends Event
+	{
+
+		@Label("Updates")
+		int updates;
+
+		@Label("Update Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long updateTime;
+
+		@Label("Render Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long renderTime;
+
+		@Label("Frames")
+		int frames;
+
+	}
+
+}
@@ -0,0 +1,118 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the searches of a {@link SearchScheduler} against a reference
+ * Dijkstra search while the map changes between their steps.
+ */
+class PathSearchTest
+{
+
+	@Test
+	void searchesSpreadOverTicksFindShortestPaths()
+	{
+		Random random = new Random(12);
+		for (int trial = 0; trial < 30; trial++)
+		{
+			boolean costs = trial % 2 == 1;
+			Map map = ReferenceDijkstra.randomMap(random, 10 + random.nextInt(40), 10 + random.nextInt(40),
+					random.nextInt(35), costs);
+			SearchScheduler scheduler = new SearchScheduler(20 + random.nextInt(200), 1 + random.nextInt(3));
+			List<PathSearch> searches = new ArrayList<PathSearch>();
+			List<int[]> goals = new ArrayList<int[]>();
+			for (int i = 0; i < 8; i++)
+			{
+				int goalX = random.nextInt(map.getWidth());
+				int goalY = random.nextInt(map.getHeight());
+				searches.add(scheduler.start(map, random.nextInt(map.getWidth()), random.nextInt(map.getHeight()),
+						goalX, goalY));
+				goals.add(new int[] { goalX, goalY });
+			}
+			// A search to an unreachable goal is done as soon as it starts,
+			// and can not be cancelled any more.
+			PathSearch cancelled = searches.get(random.nextInt(searches.size()));
+			boolean running = !cancelled.isDone();
+			scheduler.cancel(cancelled);
+
+			int ticks = 0;
+			List<PathSearch> checked = new ArrayList<PathSearch>();
+			while (checked.size() < searches.size())
+			{
+				assertTrue(ticks++ < 10000, "searches never finished");
+				scheduler.tick();
+				// A finished search keeps its path, so it is checked against
+				// the map as it was when it finished.
+				for (int i = 0; i < searches.size(); i++)
+				{
+					PathSearch search = searches.get(i);
+					if (search.isDone() && !checked.contains(search))
+					{
+						checked.add(search);
+						if (search != cancelled || !running)
+						{
+							check(map, search, goals.get(i)[0], goals.get(i)[1]);
+						}
+					}
+				}
+				if (random.nextInt(3) == 0)
+				{
+					ReferenceDijkstra.randomEdit(random, map, costs);
+				}
+			}
+			assertEquals(running, cancelled.getState() == PathSearch.State.CANCELLED);
+			assertEquals(0, scheduler.size());
+		}
+	}
+
+	@Test
+	void searchWithItsOwnContextFindsShortestPath()
+	{
+		Random random = new Random(13);
+		for (int trial = 0; trial < 30; trial++)
+		{
+			Map map = ReferenceDijkstra.randomMap(random, 10 + random.nextInt(30), 10 + random.nextInt(30),
+					random.nextInt(35), true);
+			SearchContext context = new SearchContext(map);
+			int goalX = random.nextInt(map.getWidth());
+			int goalY = random.nextInt(map.getHeight());
+			PathSearch search = new PathSearch(map, context, random.nextInt(map.getWidth()),
+					random.nextInt(map.getHeight()), goalX, goalY);
+			while (!search.isDone())
+			{
+				search.step(1 + random.nextInt(30));
+				if (!search.isDone() && random.nextBoolean())
+				{
+					ReferenceDijkstra.randomEdit(random, map, true);
+				}
+			}
+			check(map, search, goalX, goalY);
+		}
+	}
+
+	private static void check(Map map, PathSearch search, int goalX, int goalY)
+	{
+		int startX = search.getStartX();
+		int startY = search.getStartY();
+		String query = "from " + startX + "," + startY + " to " + goalX + "," + goalY;
+		int expected = ReferenceDijkstra.distancesFrom(map, startX, startY)[map.indexOf(goalX, goalY)];
+		if (expected == ReferenceDijkstra.UNREACHABLE)
+		{
+			assertEquals(PathSearch.State.FAILED, search.getState(), query);
+		}
+		else
+		{
+			assertEquals(PathSearch.State.FOUND, search.getState(), query);
+			List<Node> path = search.getPath(null).asList();
+			assertEquals(expected, ReferenceDijkstra.pathCost(map, startX, startY, path), query);
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks which requests of a {@link PathService} are answered and which are
+ * cancelled, and that a cancelled search stops right away.
+ */
+class PathServiceTest
+{
+
+	@Test
+	void onlyTheLatestRequestOfAnAgentIsAnswered() throws Exception
+	{
+		Map map = ReferenceDijkstra.randomMap(new Random(19), 30, 30, 20, true);
+		ManualExecutor executor = new ManualExecutor();
+		PathService service = new PathService(map, executor);
+
+		CompletableFuture<Path> first = service.findPath("a", 0, 0, 29, 29);
+		CompletableFuture<Path> second = service.findPath("a", 0, 0, 29, 0);
+		CompletableFuture<Path> other = service.findPath("b", 0, 0, 29, 29);
+		CompletableFuture<Path> anonymous = service.findPath(0, 0, 29, 29);
+		CompletableFuture<Path> alsoAnonymous = service.findPath(0, 0, 0, 29);
+		assertTrue(first.isCancelled());
+		assertFalse(second.isDone());
+		assertEquals(5, service.getQueueDepth());
+
+		// The cancelled request leaving must not unregister its successor.
+		CompletableFuture<Path> third = service.findPath("a", 0, 0, 0, 29);
+		assertTrue(second.isCancelled());
+
+		executor.runAll();
+		assertEquals(0, service.getQueueDepth());
+		assertFalse(third.isCancelled());
+		assertFalse(other.isCancelled());
+		assertShortest(map, 0, 29, third.get());
+		assertShortest(map, 29, 29, other.get());
+		assertShortest(map, 29, 29, anonymous.get());
+		assertShortest(map, 0, 29, alsoAnonymous.get());
+		assertEquals(4, service.getCompleted());
+		assertEquals(2, service.getCancelled());
+		assertEquals(0, service.getFailed());
+		assertTrue(service.getMaxLatency() >= service.getAverageLatency());
+
+		// A request made after the last one was answered cancels nothing.
+		CompletableFuture<Path> fourth = service.findPath("a", 0, 0, 29, 29);
+		assertFalse(third.isCancelled());
+		service.shutdown();
+		assertTrue(fourth.isCancelled());
+		executor.runAll();
+		assertEquals(3, service.getCancelled());
+		assertEquals(4, service.getCompleted());
+	}
+
+	@Test
+	void cancelledSearchesStopAtTheNextCheck()
+	{
+		// A wall with a gap at the far end: the search has to fill half the
+		// map before getting around it.
+		int[][] walls = new int[200][200];
+		for (int y = 0; y < 199; y++)
+		{
+			walls[y][100] = 1;
+		}
+		Map map = new Map(walls);
+		final ManualExecutor executor = new ManualExecutor();
+		PathService service = new PathService(map, executor);
+		final CompletableFuture<Path> request = service.findPath(0, 0, 199, 0);
+
+		// Each step of the search reads this, so the request is cancelled
+		// during the first one.
+		final int[] steps = new int[1];
+		map.setStatistics(new SearchStatistics()
+		{
+
+			@Override
+			public boolean isEnabled()
+			{
+				steps[0]++;
+				request.cancel(false);
+				return true;
+			}
+
+		});
+		executor.runAll();
+		assertEquals(1, steps[0]);
+		assertEquals(0, map.getStatistics().getSnapshot().getQueries());
+		assertEquals(1, service.getCancelled());
+		assertEquals(0, service.getCompleted());
+	}
+
+	@Test
+	void workerThreadsAnswerEveryAgent() throws Exception
+	{
+		Random random = new Random(20);
+		Map map = ReferenceDijkstra.randomMap(random, 60, 60, 25, true);
+		PathService service = new PathService(map, 2);
+		List<CompletableFuture<Path>> latest = new ArrayList<CompletableFuture<Path>>();
+		List<int[]> goals = new ArrayList<int[]>();
+		int requests = 0;
+		for (int agent = 0; agent < 8; agent++)
+		{
+			CompletableFuture<Path> future = null;
+			int[] goal = null;
+			for (int i = 0; i < 5; i++)
+			{
+				goal = new int[] { random.nextInt(60), random.nextInt(60) };
+				future = service.findPath(Integer.valueOf(agent), 0, 0, goal[0], goal[1]);
+				requests++;
+			}
+			latest.add(future);
+			goals.add(goal);
+		}
+		for (int agent = 0; agent < latest.size(); agent++)
+		{
+			Path path = latest.get(agent).get(10, TimeUnit.SECONDS);
+			assertShortest(map, goals.get(agent)[0], goals.get(agent)[1], path);
+		}
+		service.shutdown();
+		// Every request was either answered or cancelled by its successor.
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (service.getCompleted() + service.getCancelled() < requests && System.nanoTime() < deadline)
+		{
+			Thread.sleep(1);
+		}
+		assertEquals(requests, service.getCompleted() + service.getCancelled());
+		assertEquals(0, service.getFailed());
+	}
+
+	/**
+	 * Checks a path from 0,0 against the reference search: walkable, and the
+	 * shortest, or empty if the goal can not be reached.
+	 */
+	private static void assertShortest(Map map, int goalX, int goalY, Path path)
+	{
+		String query = "to " + goalX + "," + goalY;
+		int expected = ReferenceDijkstra.distancesFrom(map, 0, 0)[map.indexOf(goalX, goalY)];
+		if (expected == ReferenceDijkstra.UNREACHABLE || goalX == 0 && goalY == 0)
+		{
+			assertTrue(path.isEmpty(), query);
+			return;
+		}
+		assertEquals(expected, ReferenceDijkstra.pathCost(map, 0, 0, path.asList()), query);
+	}
+
+	/**
+	 * Runs the submitted tasks on the test thread, only when asked to.
+	 */
+	private static final class ManualExecutor extends AbstractExecutorService
+	{
+
+		private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+		void runAll()
+		{
+			while (!tasks.isEmpty())
+			{
+				tasks.removeFirst().run();
+			}
+		}
+
+		@Override
+		public void execute(Runnable command)
+		{
+			tasks.add(command);
+		}
+
+		@Override
+		public void shutdown()
+		{
+		}
+
+		@Override
+		public List<Runnable> shutdownNow()
+		{
+			return new ArrayList<Runnable>();
+		}
+
+		@Override
+		public boolean isShutdown()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit)
+		{
+			return false;
+		}
+
+	}
+
+}
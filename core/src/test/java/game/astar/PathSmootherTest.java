@@ -0,0 +1,67 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link PathSmoother} keeps paths walkable on random maps.
+ */
+class PathSmootherTest
+{
+
+	@Test
+	void waypointsLeadAlongThePath()
+	{
+		Random random = new Random(14);
+		for (int trial = 0; trial < 200; trial++)
+		{
+			Map map = ReferenceDijkstra.randomMap(random, 5 + random.nextInt(36), 5 + random.nextInt(36),
+					random.nextInt(35), trial % 2 == 1);
+			int startX = random.nextInt(map.getWidth());
+			int startY = random.nextInt(map.getHeight());
+			Path path = map.findPath(startX, startY, random.nextInt(map.getWidth()), random.nextInt(map.getHeight()),
+					(Path) null);
+
+			// Walking straight from waypoint to waypoint covers the path.
+			Path waypoints = PathSmoother.compress(startX, startY, path, null);
+			int x = startX;
+			int y = startY;
+			int step = 0;
+			for (int i = 0; i < waypoints.size(); i++)
+			{
+				while (x != waypoints.getX(i) || y != waypoints.getY(i))
+				{
+					x += Integer.signum(waypoints.getX(i) - x);
+					y += Integer.signum(waypoints.getY(i) - y);
+					assertEquals(path.getX(step), x, "step " + step);
+					assertEquals(path.getY(step), y, "step " + step);
+					step++;
+				}
+			}
+			assertEquals(path.size(), step);
+
+			// Every smoothed waypoint is in line of sight of the one before.
+			Path smoothed = PathSmoother.smooth(startX, startY, path, null);
+			assertEquals(path.isEmpty(), smoothed.isEmpty());
+			x = startX;
+			y = startY;
+			for (int i = 0; i < smoothed.size(); i++)
+			{
+				assertTrue(PathSmoother.hasLineOfSight(map, x, y, smoothed.getX(i), smoothed.getY(i)),
+						"waypoint " + i);
+				x = smoothed.getX(i);
+				y = smoothed.getY(i);
+			}
+			if (!path.isEmpty())
+			{
+				assertEquals(path.getX(path.size() - 1), x);
+				assertEquals(path.getY(path.size() - 1), y);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+package game.astar;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * A plain Dijkstra search, written to be obviously right rather than fast, for
+ * the tests to check the real searches against, and the random maps and edits
+ * they run on.
+ */
+final class ReferenceDijkstra
+{
+
+	/**
+	 * The distance of nodes that can not be reached.
+	 */
+	static final int UNREACHABLE = -1;
+
+	private ReferenceDijkstra()
+	{
+	}
+
+	/**
+	 * @return The cost of the cheapest path from a node to every node, by node
+	 *         index, where moving onto a node costs that node's cost.
+	 */
+	static int[] distancesFrom(Map map, int x, int y)
+	{
+		return search(map, x, y, true);
+	}
+
+	/**
+	 * @return The cost of the cheapest path from every node to a node, by
+	 *         node index, where moving onto a node costs that node's cost.
+	 */
+	static int[] distancesTo(Map map, int x, int y)
+	{
+		return search(map, x, y, false);
+	}
+
+	private static int[] search(Map map, int x, int y, boolean forward)
+	{
+		int width = map.getWidth();
+		int[] distance = new int[width * map.getHeight()];
+		Arrays.fill(distance, UNREACHABLE);
+		if (!map.isWalkable(x, y))
+		{
+			return distance;
+		}
+		PriorityQueue<Long> open = new PriorityQueue<Long>();
+		distance[map.indexOf(x, y)] = 0;
+		open.add((long) map.indexOf(x, y));
+		while (!open.isEmpty())
+		{
+			long entry = open.poll();
+			int node = (int) entry;
+			int cost = (int) (entry >>> 32);
+			if (cost != distance[node])
+			{
+				continue;
+			}
+			int nodeX = node % width;
+			int nodeY = node / width;
+			for (int step = 0; step < 4; step++)
+			{
+				int nextX = nodeX + (step == 0 ? -1 : step == 1 ? 1 : 0);
+				int nextY = nodeY + (step == 2 ? -1 : step == 3 ? 1 : 0);
+				if (nextX < 0 || nextX >= width || nextY < 0 || nextY >= map.getHeight()
+						|| !map.isWalkable(nextX, nextY))
+				{
+					continue;
+				}
+				// Forwards the step costs the node moved onto, backwards the
+				// node moved off.
+				int next = map.indexOf(nextX, nextY);
+				int through = cost + (forward ? map.getCost(nextX, nextY) : map.getCost(nodeX, nodeY));
+				if (distance[next] == UNREACHABLE || through < distance[next])
+				{
+					distance[next] = through;
+					open.add((long) through << 32 | next);
+				}
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * @return The cost of walking a path from a start position, or -1 if a
+	 *         step of it is not onto an adjacent, walkable node.
+	 */
+	static long pathCost(Map map, int startX, int startY, List<Node> path)
+	{
+		long cost = 0;
+		int x = startX;
+		int y = startY;
+		for (Node node : path)
+		{
+			if (Math.abs(node.getX() - x) + Math.abs(node.getY() - y) != 1 || !map.isWalkable(node.getX(), node.getY()))
+			{
+				return -1;
+			}
+			x = node.getX();
+			y = node.getY();
+			cost += map.getCost(x, y);
+		}
+		return cost;
+	}
+
+	/**
+	 * @return A map of the given size with random walls, and random node
+	 *         costs if asked for.
+	 */
+	static Map randomMap(Random random, int width, int height, int wallPercent, boolean costs)
+	{
+		int[][] walls = new int[height][width];
+		int[][] nodeCosts = new int[height][width];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				walls[y][x] = random.nextInt(100) < wallPercent ? 1 : 0;
+				nodeCosts[y][x] = costs ? 1 + random.nextInt(20) : Node.MOVEMENT_COST;
+			}
+		}
+		return new Map(walls, nodeCosts);
+	}
+
+	/**
+	 * Toggles a random node between wall and floor, or gives it a random cost
+	 * if costs may change.
+	 */
+	static void randomEdit(Random random, Map map, boolean costs)
+	{
+		int x = random.nextInt(map.getWidth());
+		int y = random.nextInt(map.getHeight());
+		if (costs && random.nextBoolean())
+		{
+			map.setCost(x, y, 1 + random.nextInt(20));
+		}
+		else
+		{
+			map.setWalkable(x, y, !map.isWalkable(x, y));
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package game.astar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks what {@link SearchStatistics} count for the searches of a map, and
+ * the latencies of their snapshots.
+ */
+class SearchStatisticsTest
+{
+
+	@Test
+	void searchesOfTheMapAreCounted()
+	{
+		int[][] walls = new int[20][20];
+		for (int y = 0; y < 19; y++)
+		{
+			walls[y][10] = 1;
+		}
+		Map map = new Map(walls);
+		SearchStatistics statistics = new SearchStatistics();
+		map.setStatistics(statistics);
+		SearchContext context = new SearchContext(map);
+
+		Path path = map.findPath(context, 0, 0, 19, 0, SearchMode.ASTAR, null);
+		SearchStatisticsSnapshot snapshot = statistics.getSnapshot();
+		assertEquals(1, snapshot.getQueries());
+		assertEquals(context.getExpandedNodes(), snapshot.getExpandedNodes());
+		assertEquals(context.getPushedNodes(), snapshot.getPushedNodes());
+		assertEquals(context.getMaxOpenListSize(), snapshot.getMaxOpenListSize());
+		assertEquals(path.size(), snapshot.getPathNodes());
+		assertEquals(snapshot.getTotalTime(), snapshot.getMaxLatency());
+
+		// Answered without searching: counted, but adds no nodes.
+		map.findPath(context, 3, 3, 3, 3, SearchMode.ASTAR, null);
+		assertEquals(2, statistics.getSnapshot().getQueries());
+		assertEquals(snapshot.getExpandedNodes(), statistics.getSnapshot().getExpandedNodes());
+
+		// A search spread over steps counts once, when done.
+		PathSearch search = new PathSearch(map, context, 0, 0, 19, 0);
+		while (search.getState() == PathSearch.State.RUNNING)
+		{
+			search.step(10);
+			assertEquals(search.isDone() ? 3 : 2, statistics.getSnapshot().getQueries());
+		}
+		assertEquals(2 * snapshot.getExpandedNodes(), statistics.getSnapshot().getExpandedNodes());
+
+		statistics.setEnabled(false);
+		map.findPath(context, 0, 0, 19, 0, SearchMode.ASTAR, null);
+		assertEquals(3, statistics.getSnapshot().getQueries(), "while disabled");
+
+		statistics.reset();
+		SearchStatisticsSnapshot empty = statistics.getSnapshot();
+		assertEquals(0, empty.getQueries());
+		assertEquals(0, empty.getExpandedNodes());
+		assertEquals(0, empty.getMaxOpenListSize());
+		assertEquals(0, empty.getMeanLatency());
+		assertEquals(0, empty.getMedianLatency());
+	}
+
+	@Test
+	void snapshotsReportLatencyPercentiles()
+	{
+		SearchStatistics statistics = new SearchStatistics();
+		for (int i = 0; i < 989; i++)
+		{
+			statistics.record(null, 2, 1000);
+		}
+		for (int i = 0; i < 10; i++)
+		{
+			statistics.record(null, 2, 50000);
+		}
+		statistics.record(null, 2, 2000000);
+		SearchStatisticsSnapshot snapshot = statistics.getSnapshot();
+		assertEquals(1000, snapshot.getQueries());
+		assertEquals(2000, snapshot.getPathNodes());
+		assertEquals(989 * 1000L + 10 * 50000L + 2000000L, snapshot.getTotalTime());
+		assertEquals(snapshot.getTotalTime() / 1000, snapshot.getMeanLatency());
+		assertEquals(2000000, snapshot.getMaxLatency());
+		assertWithinThreePercent(1000, snapshot.getMedianLatency());
+		assertWithinThreePercent(1000, snapshot.getLatency90());
+		assertWithinThreePercent(50000, snapshot.getLatency99());
+		assertWithinThreePercent(50000, snapshot.getLatency999());
+		assertTrue(snapshot.toString().contains("queries=1000"), snapshot.toString());
+	}
+
+	private static void assertWithinThreePercent(long expected, long actual)
+	{
+		assertTrue(actual >= expected && actual - expected <= expected * 3 / 100, actual + " for " + expected);
+	}
+
+}
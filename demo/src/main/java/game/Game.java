@@ -3,22 +3,33 @@ package game;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.List;
-
 import javax.swing.JPanel;
 
 import game.astar.Map;
-import game.astar.Node;
+import game.astar.Path;
+import game.astar.PathSearch;
+import game.astar.PathSmoother;
+import game.astar.SearchScheduler;
 import game.entity.Player;
 
 public class Game extends JPanel implements MouseListener
 {
 
+	/**
+	 * The most nodes the path searches may expand per tick.
+	 */
+	private static final int SEARCH_BUDGET = 2000;
+
 	private Map map;
 	private Player player;
-	private List<Node> path;
+	private Path path = new Path();
+	private Path waypoints = new Path();
+	private SearchScheduler scheduler = new SearchScheduler(SEARCH_BUDGET);
+	private PathSearch search;
+	private volatile Point target;
 
 	int[][] m0 = { //
 			{ 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }, //
@@ -53,22 +64,42 @@ public class Game extends JPanel implements MouseListener
 
 	public void update()
 	{
+		// Clicks only set the target; searches are started and stepped here,
+		// spread over as many ticks as they need.
+		Point target = this.target;
+		if (target != null)
+		{
+			this.target = null;
+			if (search != null)
+			{
+				scheduler.cancel(search);
+			}
+			// The search may take several ticks, so the player waits on its
+			// tile instead of walking away from the start of the new path.
+			player.stop();
+			path = new Path();
+			search = scheduler.start(map, player.getX(), player.getY(), target.x, target.y);
+		}
+		scheduler.tick();
+		if (search != null && search.isDone())
+		{
+			// Only a path starting where the player stands can be followed.
+			if (player.getX() == search.getStartX() && player.getY() == search.getStartY())
+			{
+				path = search.getPath(path);
+				waypoints = PathSmoother.compress(search.getStartX(), search.getStartY(), path, waypoints);
+				player.followPath(waypoints);
+			}
+			search = null;
+		}
 		player.update();
 	}
 
 	public void render(Graphics2D g)
 	{
-		map.drawMap(g, path);
-		g.setColor(Color.GRAY);
-		for (int x = 0; x < getWidth(); x += 32)
-		{
-			g.drawLine(x, 0, x, getHeight());
-		}
-		for (int y = 0; y < getHeight(); y += 32)
-		{
-			g.drawLine(0, y, getWidth(), y);
-		}
-		
+		// The map draws its own grid, only where it is visible.
+		map.drawMap(g, path, player.getPathStep());
+
 		g.setColor(Color.RED);
 		g.fillRect(player.getX() * 32 + player.getSx(), player.getY() * 32 + player.getSy(), 32, 32);
 	}
@@ -93,10 +124,9 @@ public class Game extends JPanel implements MouseListener
 	{
 		int mx = e.getX() / 32;
 		int my = e.getY() / 32;
-		if (map.getNode(mx, my).isWalkable())
+		if (map.isReachable(player.getX(), player.getY(), mx, my))
 		{
-			path = map.findPath(player.getX(), player.getY(), mx, my);
-			player.followPath(path);
+			target = new Point(mx, my);
 		}
 		else
 		{
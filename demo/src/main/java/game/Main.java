@@ -25,6 +25,8 @@ public class Main
 		image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
 		g = (Graphics2D) image.getGraphics();
 		g.setBackground(Color.BLACK);
+		// Lets the map draw only the part of it that fits in the image.
+		g.setClip(0, 0, WIDTH, HEIGHT);
 
 		game = new Game();
 	}
@@ -41,7 +43,6 @@ public class Main
 
 	public static void run()
 	{
-		@SuppressWarnings("unused")
 		int frames = 0;
 
 		double unprocessedSeconds = 0;
@@ -61,12 +62,21 @@ public class Main
 
 			unprocessedSeconds += passedTime / 1000000000.0;
 
+			// Passes that only sleep are never recorded.
+			TickEvent event = null;
+			if (unprocessedSeconds > secondsPerTick && TickEvent.isRecorded())
+			{
+				event = new TickEvent();
+				event.begin();
+			}
 			boolean ticked = false;
+			int updates = 0;
 			while (unprocessedSeconds > secondsPerTick)
 			{
 				game.update();
 				unprocessedSeconds -= secondsPerTick;
 				ticked = true;
+				updates++;
 
 				tickCount++;
 				if (tickCount % 60 == 0)
@@ -79,6 +89,7 @@ public class Main
 
 			if (ticked)
 			{
+				long rendering = System.nanoTime();
 				game.render(g);
 
 				Graphics gg = game.getGraphics();
@@ -86,6 +97,20 @@ public class Main
 				gg.dispose();
 
 				frames++;
+
+				long rendered = System.nanoTime();
+				if (event != null)
+				{
+					event.end();
+					if (event.shouldCommit())
+					{
+						event.updates = updates;
+						event.updateTime = rendering - now;
+						event.renderTime = rendered - rendering;
+						event.frames = frames;
+						event.commit();
+					}
+				}
 			}
 			else
 			{
@@ -0,0 +1,70 @@
+package game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for one pass of the game loop that updated and
+ * rendered the game. Only passes longer than a frame at 60 FPS are recorded,
+ * so path queries recorded during a spike can be matched with it.
+ */
+@Name("game.Tick")
+@Label("Game Tick")
+@Category("Game")
+@Description("A pass of the game loop that took longer than one frame")
+@Threshold("17 ms")
+@StackTrace(false)
+final class TickEvent extends Event
+{
+
+	/**
+	 * The type of the event, looked up once the flight recorder is running.
+	 */
+	private static volatile EventType type;
+
+	@Label("Updates")
+	@Description("How many times the game was updated to catch up")
+	int updates;
+
+	@Label("Update Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long updateTime;
+
+	@Label("Render Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long renderTime;
+
+	@Label("Frames")
+	@Description("Frames rendered since the start of the current second")
+	int frames;
+
+	/**
+	 * Checked before creating an event, so the game loop allocates nothing
+	 * while no recording wants it.
+	 *
+	 * @return True if the event is enabled in a running recording.
+	 */
+	static boolean isRecorded()
+	{
+		if (!FlightRecorder.isInitialized())
+		{
+			return false;
+		}
+		EventType type = TickEvent.type;
+		if (type == null)
+		{
+			type = EventType.getEventType(TickEvent.class);
+			TickEvent.type = type;
+		}
+		return type.isEnabled();
+	}
+
+}
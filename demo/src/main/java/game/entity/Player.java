@@ -1,9 +1,7 @@
 package game.entity;
 
-import java.util.LinkedList;
-import java.util.List;
-
-import game.astar.Node;
+import game.astar.Path;
+import game.astar.PathCursor;
 
 public class Player
 {
@@ -17,7 +15,8 @@ public class Player
 
 	private boolean walking;
 	private boolean fixing;
-	private List<Node> path;
+	private final PathCursor path;
+	private int pathStep;
 
 	public Player(int x, int y)
 	{
@@ -29,7 +28,7 @@ public class Player
 
 		walking = false;
 		fixing = false;
-		path = null;
+		path = new PathCursor();
 	}
 
 	public void update()
@@ -44,10 +43,11 @@ public class Player
 		}
 	}
 
-	public void followPath(List<Node> path)
+	public void followPath(Path path)
 	{
-		this.path = path;
-		if (walking)
+		this.path.follow(path);
+		pathStep = 0;
+		if (walking || fixing)
 		{
 			fixing = true;
 			walking = false;
@@ -58,6 +58,18 @@ public class Player
 		}
 	}
 
+	public void stop()
+	{
+		// Drop the path and slide back onto the current tile.
+		path.follow(null);
+		pathStep = 0;
+		if (walking || fixing)
+		{
+			fixing = true;
+			walking = false;
+		}
+	}
+
 	private void fix()
 	{
 		if (sx > 0)
@@ -101,44 +113,50 @@ public class Player
 	
 	private void walk()
 	{
-		if (path == null)
+		if (!path.hasNext())
 		{
 			walking = false;
+			path.follow(null);
 			return;
 		}
-		if (path.size() <= 0)
+		// The next node may be a waypoint further down the row or column.
+		int nextX = path.getNextX();
+		int nextY = path.getNextY();
+		if (nextX != x)
 		{
-			walking = false;
-			path = null;
-			return;
-		}
-		Node next = ((LinkedList<Node>) path).getFirst();
-		if (next.getX() != x)
-		{
-			sx += (next.getX() < x ? -speed : speed);
+			sx += (nextX < x ? -speed : speed);
 			if (sx % 32 == 0)
 			{
-				((LinkedList<Node>) path).removeFirst();
 				if (sx > 0)
 					x++;
 				else
 					x--;
 				sx %= 32;
+				pathStep++;
 			}
 		}
-		else if (next.getY() != y)
+		else if (nextY != y)
 		{
-			sy += (next.getY() < y ? -speed : speed);
+			sy += (nextY < y ? -speed : speed);
 			if (sy % 32 == 0)
 			{
-				((LinkedList<Node>) path).removeFirst();
 				if (sy > 0)
 					y++;
 				else
 					y--;
 				sy %= 32;
+				pathStep++;
 			}
 		}
+		if (x == nextX && y == nextY)
+		{
+			path.advance();
+		}
+	}
+
+	public int getPathStep()
+	{
+		return pathStep;
 	}
 
 	public int getX()